@@ -0,0 +1,29 @@
+package com.example.cloudvault.demo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+// Class proxies, UserDetailServiceImpl is injected by its own type for the cached principal lookup
+@EnableCaching(proxyTargetClass = true)
+public class CachingConfig {
+
+    public static final String USERS = "users";
+    public static final String PRINCIPALS = "principals";
+
+    // Bounded and short-lived; changes through UserService also evict explicitly
+    @Value("${cloudvault.user-cache.spec:maximumSize=10000,expireAfterWrite=10m}")
+    private String userCacheSpec;
+
+    @Bean
+    public CacheManager cacheManager() {
+        // Fixed cache names, a typo in an annotation fails instead of quietly creating another cache
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(USERS, PRINCIPALS);
+        cacheManager.setCacheSpecification(userCacheSpec);
+        return cacheManager;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.cloudvault.demo.config;
+
+import com.example.cloudvault.demo.services.PasswordHasher;
+import com.example.cloudvault.demo.services.TransferBulkhead;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.aop.ObservedAspect;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    // @Observed methods are always measured, not only with management.observations.annotations.enabled
+    @Bean
+    public ObservedAspect observedAspect(ObservationRegistry observationRegistry) {
+        return new ObservedAspect(observationRegistry);
+    }
+
+    // Uploads and downloads holding a bulkhead slot, the ones queued for one, and those turned away
+    @Bean
+    public MeterBinder transferBulkheadMetrics(TransferBulkhead transferBulkhead) {
+        return registry -> {
+            Gauge.builder("cloudvault.transfers.in.flight", transferBulkhead, TransferBulkhead::inFlight)
+                    .register(registry);
+            Gauge.builder("cloudvault.transfers.waiting", transferBulkhead, TransferBulkhead::waiting)
+                    .register(registry);
+            FunctionCounter.builder("cloudvault.transfers.rejected", transferBulkhead, TransferBulkhead::rejected)
+                    .register(registry);
+        };
+    }
+
+    // BCrypt work running and waiting on the hashing pool, and sign-ins shed because it was full
+    @Bean
+    public MeterBinder passwordHasherMetrics(PasswordHasher passwordHasher) {
+        return registry -> {
+            Gauge.builder("cloudvault.auth.hashing.active", passwordHasher, PasswordHasher::active)
+                    .register(registry);
+            Gauge.builder("cloudvault.auth.hashing.queued", passwordHasher, PasswordHasher::queued)
+                    .register(registry);
+            FunctionCounter.builder("cloudvault.auth.hashing.rejected", passwordHasher, PasswordHasher::rejected)
+                    .register(registry);
+        };
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.cloudvault.demo.config;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.RetryInterceptorBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.retry.RejectAndDontRequeueRecoverer;
+import org.springframework.amqp.support.converter.JacksonJsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// Topology for cloudvault.processing.transport=rabbit
+@Configuration
+@ConditionalOnProperty(name = "cloudvault.processing.transport", havingValue = "rabbit")
+public class RabbitConfig {
+
+    public static final String UPLOADS_EXCHANGE = "cloudvault.uploads";
+    public static final String PROCESS_ROUTING_KEY = "upload.completed";
+    public static final String PROCESS_QUEUE = "cloudvault.uploads.process";
+    public static final String DEAD_LETTER_EXCHANGE = "cloudvault.uploads.dlx";
+    public static final String DEAD_LETTER_QUEUE = "cloudvault.uploads.process.dlq";
+    public static final String LISTENER_CONTAINER_FACTORY = "uploadListenerContainerFactory";
+
+    @Value("${cloudvault.processing.workers:2}")
+    private int workers;
+
+    @Value("${cloudvault.processing.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${cloudvault.processing.retry-backoff:2s}")
+    private Duration retryBackoff;
+
+    @Bean
+    public DirectExchange uploadsExchange() {
+        return new DirectExchange(UPLOADS_EXCHANGE);
+    }
+
+    // Rejected messages are routed to the dead-letter exchange instead of being dropped
+    @Bean
+    public Queue processQueue() {
+        return QueueBuilder.durable(PROCESS_QUEUE)
+                .deadLetterExchange(DEAD_LETTER_EXCHANGE)
+                .deadLetterRoutingKey(PROCESS_ROUTING_KEY)
+                .build();
+    }
+
+    @Bean
+    public Binding processBinding() {
+        return BindingBuilder.bind(processQueue()).to(uploadsExchange()).with(PROCESS_ROUTING_KEY);
+    }
+
+    @Bean
+    public DirectExchange deadLetterExchange() {
+        return new DirectExchange(DEAD_LETTER_EXCHANGE);
+    }
+
+    @Bean
+    public Queue deadLetterQueue() {
+        return QueueBuilder.durable(DEAD_LETTER_QUEUE).build();
+    }
+
+    @Bean
+    public Binding deadLetterBinding() {
+        return BindingBuilder.bind(deadLetterQueue()).to(deadLetterExchange()).with(PROCESS_ROUTING_KEY);
+    }
+
+    // Picked up by the auto-configured RabbitTemplate as well
+    @Bean
+    public MessageConverter messageConverter() {
+        return new JacksonJsonMessageConverter();
+    }
+
+    @Bean(LISTENER_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory uploadListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                               MessageConverter messageConverter) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        factory.setConcurrentConsumers(workers);
+        // Each event is a whole-object download, so don't let one consumer hoard a backlog
+        factory.setPrefetchCount(1);
+        factory.setDefaultRequeueRejected(false);
+        // Retries in the consumer with backoff, then rejects without requeue, which dead-letters the message
+        factory.setAdviceChain(RetryInterceptorBuilder.stateless()
+                .maxRetries(maxAttempts - 1)
+                .backOffOptions(retryBackoff.toMillis(), 2.0, retryBackoff.toMillis() * 8)
+                .recoverer(new RejectAndDontRequeueRecoverer())
+                .build());
+        return factory;
+    }
+}
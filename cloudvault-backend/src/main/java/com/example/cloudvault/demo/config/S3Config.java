@@ -1,29 +1,47 @@
 package com.example.cloudvault.demo.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.util.StringUtils;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3BaseClientBuilder;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.net.URI;
 
 @Configuration
+@ConditionalOnProperty(name = "cloudvault.storage.backend", havingValue = "s3", matchIfMissing = true)
 public class S3Config {
 
 
     @Value("${cloud.aws.region.static}")
     private String region;
 
+    // S3-compatible endpoint instead of AWS (MinIO, LocalStack, the load test's stub), addressed path-style
+    @Value("${cloud.aws.s3.endpoint:}")
+    private String endpoint;
+
+    // Upper bound on pooled connections used by the parallel transfer engine
+    @Value("${cloudvault.transfer.max-connections:64}")
+    private int maxConnections;
+
     ///  Always set one as local and one as dev profile
     @Bean("s3Client")
     @Profile("dev")
     public S3Client s3Client(@Value("${cloud.aws.credentials.access-key}") String accessKey,
                              @Value("${cloud.aws.credentials.secret-key}") String secretKey){
         AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create(accessKey,secretKey);
-        return S3Client.builder()
+        return endpoint(S3Client.builder())
                 .region(Region.of(region))
                 .credentialsProvider(StaticCredentialsProvider.create(awsBasicCredentials))
                 .build();
@@ -33,9 +51,66 @@ public class S3Config {
     @Bean("s3Client")
     @Profile("prod")
     public S3Client s3ClientDev(){
-        return S3Client.builder()
+        return endpoint(S3Client.builder())
                 .region(Region.of(region))
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .build();
     }
-}
\ No newline at end of file
+
+    @Bean("s3AsyncClient")
+    @Profile("dev")
+    public S3AsyncClient s3AsyncClient(@Value("${cloud.aws.credentials.access-key}") String accessKey,
+                                       @Value("${cloud.aws.credentials.secret-key}") String secretKey){
+        AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create(accessKey,secretKey);
+        return endpoint(S3AsyncClient.builder())
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(awsBasicCredentials))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections))
+                .build();
+    }
+
+    @Bean("s3AsyncClient")
+    @Profile("prod")
+    public S3AsyncClient s3AsyncClientProd(){
+        return endpoint(S3AsyncClient.builder())
+                .region(Region.of(region))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(maxConnections))
+                .build();
+    }
+
+    @Bean("s3Presigner")
+    @Profile("dev")
+    public S3Presigner s3Presigner(@Value("${cloud.aws.credentials.access-key}") String accessKey,
+                                   @Value("${cloud.aws.credentials.secret-key}") String secretKey){
+        AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create(accessKey,secretKey);
+        return endpoint(S3Presigner.builder())
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(awsBasicCredentials))
+                .build();
+    }
+
+    @Bean("s3Presigner")
+    @Profile("prod")
+    public S3Presigner s3PresignerProd(){
+        return endpoint(S3Presigner.builder())
+                .region(Region.of(region))
+                .credentialsProvider(DefaultCredentialsProvider.create())
+                .build();
+    }
+
+    private <B extends S3BaseClientBuilder<B, ?>> B endpoint(B builder) {
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder;
+    }
+
+    private S3Presigner.Builder endpoint(S3Presigner.Builder builder) {
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint))
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return builder;
+    }
+}
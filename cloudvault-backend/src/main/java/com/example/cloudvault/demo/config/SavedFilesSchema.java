@@ -0,0 +1,73 @@
+package com.example.cloudvault.demo.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Schema details of the folder model that JPA cannot express. Folder listings, subtree pages and moves
+ * are range scans on path prefixes, which only line up with the index when paths compare byte by byte,
+ * so the path columns get the "C" collation. Files saved before folders existed also get their size,
+ * type and date copied over from their blob.
+ */
+@Slf4j
+@Component
+public class SavedFilesSchema {
+
+    private static final List<String[]> PATH_COLUMNS = List.of(
+            new String[]{"saved_files", "folder_path"},
+            new String[]{"folders", "path"},
+            new String[]{"folders", "parent_path"}
+    );
+
+    private static final String BACKFILL = "UPDATE saved_files f SET size = b.size, content_type = b.content_type, " +
+            "created_at = coalesce(f.created_at, b.created_at), updated_at = coalesce(f.updated_at, b.created_at) " +
+            "FROM stored_blobs b WHERE f.blob_id = b.id AND f.size IS NULL";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Off where the schema is managed elsewhere
+    @Value("${cloudvault.files.schema.enabled:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (!enabled || !isPostgres()) {
+            return;
+        }
+        try {
+            for (String[] column : PATH_COLUMNS) {
+                String collation = jdbcTemplate.queryForObject(
+                        "SELECT coalesce(collation_name, '') FROM information_schema.columns " +
+                                "WHERE table_schema = current_schema() AND table_name = ? AND column_name = ?",
+                        String.class, column[0], column[1]);
+                if (!"C".equals(collation)) {
+                    jdbcTemplate.execute("ALTER TABLE " + column[0] + " ALTER COLUMN " + column[1] +
+                            " TYPE varchar(1024) COLLATE \"C\"");
+                    log.info("Set collation of {}.{} to C", column[0], column[1]);
+                }
+            }
+            int backfilled = jdbcTemplate.update(BACKFILL);
+            if (backfilled > 0) {
+                log.info("Backfilled size and type of {} saved files", backfilled);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not update the saved files schema, folder listings may scan more rows: {}", e.getMessage());
+        }
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equals(product);
+    }
+}
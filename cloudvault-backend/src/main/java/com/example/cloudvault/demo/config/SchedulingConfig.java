@@ -0,0 +1,10 @@
+package com.example.cloudvault.demo.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Background jobs such as the storage usage reconciliation in StorageQuotaService
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
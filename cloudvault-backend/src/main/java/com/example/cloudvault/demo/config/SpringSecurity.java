@@ -5,6 +5,7 @@ package com.example.cloudvault.demo.config;
 import com.example.cloudvault.demo.services.UserDetailServiceImpl;
 import com.example.cloudvault.demo.utils.JwtAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -38,6 +39,8 @@ public class SpringSecurity {
         return http.authorizeHttpRequests(request -> request
                         .requestMatchers("/api/public/**", "/api/guest/**","/api/auth/**","/api/files/**","/api/s3/**").permitAll()
                         .requestMatchers(HttpMethod.POST, "/api/auth/register","/api/s3/**").permitAll()
+                        // Scraped by Prometheus; keep them off the public port with management.server.port
+                        .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
                         .requestMatchers("/api/user/**").authenticated()
                         .requestMatchers("/admin/**").hasRole("ADMIN")
                         .anyRequest().authenticated())
@@ -60,9 +63,13 @@ public class SpringSecurity {
 
 
 
+    // Raising it rehashes each user's password at their next login (UserService.login)
+    @Value("${cloudvault.auth.bcrypt-strength:10}")
+    private int bcryptStrength;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
 }
\ No newline at end of file
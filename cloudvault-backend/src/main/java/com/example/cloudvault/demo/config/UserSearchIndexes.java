@@ -0,0 +1,47 @@
+package com.example.cloudvault.demo.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Trigram indexes behind the user search in UserRepository. JPA cannot declare expression or GIN
+ * indexes, so they are created here once the schema is in place. Without them search still works,
+ * it just scans the table.
+ */
+@Slf4j
+@Component
+public class UserSearchIndexes {
+
+    private static final List<String> STATEMENTS = List.of(
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+            "CREATE INDEX IF NOT EXISTS idx_users_username_trgm ON users USING gin (lower(username) gin_trgm_ops)",
+            "CREATE INDEX IF NOT EXISTS idx_users_email_trgm ON users USING gin (lower(email) gin_trgm_ops)"
+    );
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Off where the schema is managed elsewhere or the role may not create extensions
+    @Value("${cloudvault.users.search-indexes.enabled:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            STATEMENTS.forEach(jdbcTemplate::execute);
+        } catch (DataAccessException e) {
+            log.warn("Could not create user search indexes, search will scan the users table: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.cloudvault.demo.controllers;
+
+import com.example.cloudvault.demo.services.ObjectCache;
+import com.example.cloudvault.demo.services.PasswordHasher;
+import com.example.cloudvault.demo.services.TransferBulkhead;
+import com.example.cloudvault.demo.services.UploadQueue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    @Autowired
+    private ObjectCache objectCache;
+
+    @Autowired
+    private UploadQueue uploadQueue;
+
+    @Autowired
+    private TransferBulkhead transferBulkhead;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    // Hit/miss/eviction counters of the download cache since startup
+    @GetMapping("/cache/stats")
+    public ResponseEntity<?> cacheStats() {
+        return ResponseEntity.ok(Map.of("status", true, "cache", objectCache.stats()));
+    }
+
+    // Post-upload processing counters and, for the in-process queue, recent dead letters
+    @GetMapping("/processing/stats")
+    public ResponseEntity<?> processingStats() {
+        return ResponseEntity.ok(Map.of("status", true, "processing", uploadQueue.stats()));
+    }
+
+    // Uploads/downloads holding a bulkhead slot right now, and how many were turned away
+    @GetMapping("/transfers/stats")
+    public ResponseEntity<?> transferStats() {
+        return ResponseEntity.ok(Map.of("status", true, "transfers", transferBulkhead.stats()));
+    }
+
+    // BCrypt work on the hashing pool and sign-ins shed with 429 because it was full
+    @GetMapping("/auth/hashing/stats")
+    public ResponseEntity<?> hashingStats() {
+        return ResponseEntity.ok(Map.of("status", true, "hashing", passwordHasher.stats()));
+    }
+}
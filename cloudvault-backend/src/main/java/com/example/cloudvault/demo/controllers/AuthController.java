@@ -4,17 +4,13 @@ package com.example.cloudvault.demo.controllers;
 import com.example.cloudvault.demo.entities.RequestBodyEntities.RegisterRequest;
 import com.example.cloudvault.demo.entities.UserCredentials;
 import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.services.PasswordHashingBusyException;
 import com.example.cloudvault.demo.services.UserService;
 import com.example.cloudvault.demo.utils.JwtUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -33,38 +29,27 @@ public class AuthController {
     @Autowired
     private UserService userService;// User Service to get info and details
     @Autowired
-    private AuthenticationManager authenticationManager;  // For Authentication the Jwt auth Tokens
-    @Autowired
     private JwtUtil jwtUtil; // JWT Auth token Main Service
-     @Autowired
-     private PasswordEncoder passwordEncoder;
 
     @PostMapping("/login")
     public ResponseEntity<?> loginPost(@RequestBody UserCredentials userCredentials) {
         if (userCredentials.getEmail() == null || userCredentials.getPassword() == null) {
             return new ResponseEntity<>(Map.of("status", false, "message", "Email or password is required"), HttpStatus.BAD_REQUEST);
         }
-        try{
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(userCredentials.getEmail(), userCredentials.getPassword()));
-            final UserEntity userEntity = userService.findByEmail(userCredentials.getEmail());
-            if(userEntity == null) {
-                return new ResponseEntity<>(Map.of("status", false, "message", "Wrong Email or Password "), HttpStatus.NOT_FOUND);
-            }else{
-                String jwtToken = jwtUtil.generateToken(userEntity.getEmail());
-                return new ResponseEntity<>(Map.of("status", true, "data",Map.of(
-                        "token", jwtToken,
-                        "status", "true",
-                        "data", userEntity
-                )), HttpStatus.OK);
-
-            }
-        }catch (AuthenticationException e){
-            log.error("Exception occurred while createAuthenticationToken", e);
+        // One lookup and one BCrypt check on the hashing pool; a full pool answers 429 via GlobalExceptionHandler
+        final UserEntity userEntity = userService.login(userCredentials);
+        if (userEntity == null) {
             return new ResponseEntity<>(Map.of(
                     "status", false,
                     "message", "Invalid email or password"
             ), HttpStatus.UNAUTHORIZED);
         }
+        String jwtToken = jwtUtil.generateToken(userEntity.getEmail());
+        return new ResponseEntity<>(Map.of("status", true, "data",Map.of(
+                "token", jwtToken,
+                "status", "true",
+                "data", userEntity
+        )), HttpStatus.OK);
     }
 
 //@PostMapping(value = "/register", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -90,6 +75,8 @@ public ResponseEntity<?> registerPost(
         userService.register(user);
         return ResponseEntity.ok(Map.of("status", true, "message", "User created successfully"));
 
+    } catch (PasswordHashingBusyException e) {
+        throw e;
     } catch (Exception e) {
         e.printStackTrace();
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,146 @@
+package com.example.cloudvault.demo.controllers;
+
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.entities.FolderListing;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.FolderMoveRequest;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.FolderRequest;
+import com.example.cloudvault.demo.entities.SubtreePage;
+import com.example.cloudvault.demo.services.CacheValidator;
+import com.example.cloudvault.demo.services.FolderService;
+import com.example.cloudvault.demo.services.SavedFilesService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Folders are addressed by path, "/" or "/a/b/"; a missing leading or trailing slash is added
+@RestController
+@RequestMapping("/api/folders")
+public class FolderController {
+
+    @Autowired
+    private FolderService folderService;
+
+    @Autowired
+    private SavedFilesService savedFilesService;
+
+    // Subfolders and files of one folder; files are paged by ?after=<nextCursor>&limit=
+    @GetMapping
+    public ResponseEntity<?> list(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(required = false) String path,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        try {
+            String folderPath = FolderService.normalize(path);
+            CacheValidator validator = savedFilesService.listingValidator(user.getUserId(), "folder", folderPath, after, limit);
+            ResponseEntity<?> notModified = ListingResponses.notModified(validator, ifNoneMatch);
+            if (notModified != null) {
+                return notModified;
+            }
+            FolderListing listing = folderService.list(user.getUserId(), folderPath, after, limit)
+                    .orElse(null);
+            if (listing == null) {
+                return folderNotFound();
+            }
+            // nextCursor is null on the last page, which Map.of does not allow
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", true);
+            body.put("path", listing.path());
+            body.put("folders", listing.folders());
+            body.put("files", listing.files());
+            body.put("nextCursor", listing.nextCursor());
+            return ListingResponses.ok(validator, body);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    // Every file under a folder at any depth, paged by ?cursor=<nextCursor>&limit=
+    @GetMapping("/tree")
+    public ResponseEntity<?> listTree(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(required = false) String path,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        try {
+            String folderPath = FolderService.normalize(path);
+            CacheValidator validator = savedFilesService.listingValidator(user.getUserId(), "tree", folderPath, cursor, limit);
+            ResponseEntity<?> notModified = ListingResponses.notModified(validator, ifNoneMatch);
+            if (notModified != null) {
+                return notModified;
+            }
+            SubtreePage page = folderService.listSubtree(user.getUserId(), folderPath, cursor, limit);
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", true);
+            body.put("files", page.files());
+            body.put("nextCursor", page.nextCursor());
+            return ListingResponses.ok(validator, body);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    // Creates the folder and any missing parents; creating one that exists is not an error
+    @PostMapping
+    public ResponseEntity<?> create(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestBody FolderRequest request) {
+        try {
+            String path = FolderService.normalize(request.getPath());
+            if (path.equals(FolderService.ROOT)) {
+                return ResponseEntity.badRequest().body(Map.of("status", false, "message", "path is required"));
+            }
+            folderService.ensure(user.getUserId(), path);
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("status", true, "path", path));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    // Move or rename a folder with all it contains; 409 if the target exists
+    @PostMapping("/move")
+    public ResponseEntity<?> move(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestBody FolderMoveRequest request) {
+        try {
+            String to = FolderService.normalize(request.getTo());
+            if (!folderService.move(user.getUserId(), FolderService.normalize(request.getFrom()), to)) {
+                return folderNotFound();
+            }
+            return ResponseEntity.ok(Map.of("status", true, "path", to));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    // Only empty folders can be deleted, 409 otherwise
+    @DeleteMapping
+    public ResponseEntity<?> delete(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam String path) {
+        try {
+            if (!folderService.delete(user.getUserId(), FolderService.normalize(path))) {
+                return folderNotFound();
+            }
+            return ResponseEntity.ok(Map.of("status", true, "message", "Deleted"));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    private static ResponseEntity<?> folderNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("status", false, "message", "Folder not found"));
+    }
+
+    private static ResponseEntity<?> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("status", false, "message", e.getMessage()));
+    }
+}
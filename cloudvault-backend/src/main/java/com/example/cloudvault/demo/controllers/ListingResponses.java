@@ -0,0 +1,38 @@
+package com.example.cloudvault.demo.controllers;
+
+import com.example.cloudvault.demo.services.CacheValidator;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+// Listings carry the owner's files version, mixed with what was asked for, as their ETag, so a refresh
+// with nothing changed is a 304
+final class ListingResponses {
+
+    // Per user, so never in a shared cache, and always revalidated
+    private static final CacheControl CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    private ListingResponses() {
+    }
+
+    // The 304 to send instead of the listing, or null when it has to be built
+    static ResponseEntity<?> notModified(CacheValidator validator, String ifNoneMatch) {
+        if (!validator.notModified(ifNoneMatch, null)) {
+            return null;
+        }
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(validator.eTag())
+                .cacheControl(CACHE_CONTROL)
+                .varyBy(HttpHeaders.AUTHORIZATION)
+                .build();
+    }
+
+    static ResponseEntity<?> ok(CacheValidator validator, Object body) {
+        return ResponseEntity.ok()
+                .eTag(validator.eTag())
+                .cacheControl(CACHE_CONTROL)
+                .varyBy(HttpHeaders.AUTHORIZATION)
+                .body(body);
+    }
+}
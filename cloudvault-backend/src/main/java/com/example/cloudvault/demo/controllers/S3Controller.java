@@ -1,21 +1,57 @@
 package com.example.cloudvault.demo.controllers;
 
 
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.entities.FileDeleteResult;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.BulkDeleteRequest;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.PresignCompleteRequest;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.PresignUploadRequest;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.ZipDownloadRequest;
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.services.CacheValidator;
+import com.example.cloudvault.demo.services.ContentCodec;
+import com.example.cloudvault.demo.services.FolderService;
+import com.example.cloudvault.demo.services.ImageDerivative;
+import com.example.cloudvault.demo.services.ImageDerivativeService;
+import com.example.cloudvault.demo.services.ObjectCache;
+import com.example.cloudvault.demo.services.RangeNotSatisfiableException;
 import com.example.cloudvault.demo.services.S3Service;
 import com.example.cloudvault.demo.services.SavedFilesService;
-import com.example.cloudvault.demo.services.UserService;
+import com.example.cloudvault.demo.services.StorageBackend;
+import com.example.cloudvault.demo.services.StorageObjectNotFoundException;
+import com.example.cloudvault.demo.services.StorageQuotaService;
+import com.example.cloudvault.demo.services.StoredBlobService;
+import com.example.cloudvault.demo.services.StoredObject;
+import com.example.cloudvault.demo.services.TransferBulkhead;
+import com.example.cloudvault.demo.services.ZipArchiveService;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 //@RestController
 //@RequestMapping("/api/s3")
@@ -44,54 +80,285 @@ import java.util.Map;
 @RequestMapping("/api/s3")
 public class S3Controller {
 
+    // Kept by the browser only, and revalidated on every use, which the validators make a 304 at most
+    private static final CacheControl DOWNLOAD_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
+    // Derivative keys change with the content, so what is under one never does
+    private static final CacheControl DERIVATIVE_CACHE_CONTROL =
+            CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+
+    @Autowired
+    private StorageBackend storageBackend;
+
     @Autowired
+    private ObjectCache objectCache;
+
+    // Only present with the s3 backend, which is the one that can hand out presigned URLs
+    @Autowired(required = false)
     private S3Service s3Service;
 
     @Autowired
     private SavedFilesService savedFilesService;
 
     @Autowired
-    private UserService userService;
+    private StoredBlobService storedBlobService;
+
+    @Autowired
+    private TransferBulkhead transferBulkhead;
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Autowired
+    private StorageQuotaService storageQuotaService;
+
+    @Autowired
+    private ZipArchiveService zipArchiveService;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    // Bounds the IN lists and the storage batch of one bulk delete
+    @Value("${cloudvault.files.bulk-delete.max-ids:10000}")
+    private int maxBulkDeleteIds;
+
+    @Value("${cloudvault.download.zip.max-files:1000}")
+    private int maxZipFiles;
 
     @PostMapping("/upload")
     public ResponseEntity<?> upload(
             @RequestParam("file") MultipartFile file,
-            @AuthenticationPrincipal UserDetails userDetails
+            @RequestParam(value = "folder", required = false) String folder,
+            @AuthenticationPrincipal AuthenticatedUser user
     ) throws IOException {
-        log.info("Uploading file " + file.getOriginalFilename());
-        // Upload to S3
-        String url = s3Service.uploadFile(file);
-        log.info("Uploaded file " + url);
-        // Save in DB
-        Long userId = userService.findByEmail(userDetails.getUsername()).getUserId();
-        log.info("User id " + userId);
-        savedFilesService.saveFile(userId, url);
-        log.info("Saved file " + url);
-        return ResponseEntity.status(HttpStatus.CREATED)
-                .body(Map.of("status", true, "url", url));
+        Long userId = user.getUserId();
+        String folderPath;
+        try {
+            folderPath = FolderService.normalize(folder);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", false, "message", e.getMessage()));
+        }
+        // Before any bytes go to storage; saving the file is what actually counts it
+        storageQuotaService.check(userId, file.getSize());
+        log.debug("Uploading file {} for user {}", file.getOriginalFilename(), userId);
+        return Observation.createNotStarted("cloudvault.upload", observationRegistry)
+                .contextualName("upload")
+                .observeChecked(() -> {
+                    // The part is already spooled by the container, the slot covers the transfer to storage
+                    try (TransferBulkhead.Permit permit = stage("bulkhead", () -> transferBulkhead.acquire(userId))) {
+                        // Upload to S3, unless the same content is already stored
+                        StoredBlob blob = stage("store", () -> storedBlobService.store(file));
+                        String url = storageBackend.getUrl(blob.getStorageKey());
+                        // Save in DB
+                        stage("save", () -> saveFile(userId, url, file.getOriginalFilename(), blob, folderPath));
+                        log.debug("Saved file {}", url);
+                        return ResponseEntity.status(HttpStatus.CREATED)
+                                .body(Map.of("status", true, "url", url));
+                    }
+                });
     }
 
     @GetMapping("/download/{filename}")
-    public ResponseEntity<byte[]> download(@PathVariable String filename) {
-        byte[] data = s3Service.downloadFile(filename);
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename)
-                .body(data);
+    public ResponseEntity<StreamingResponseBody> download(
+            @PathVariable String filename,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) String ifModifiedSince,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) throws IOException {
+        // Only a single byte range is served, multi-range requests get the whole object
+        if (range != null && (!range.startsWith("bytes=") || range.contains(","))) {
+            range = null;
+        }
+        // A revalidation is answered from the object's metadata, before a transfer slot or the body is touched
+        boolean conditional = ifNoneMatch != null || ifModifiedSince != null;
+        if (conditional) {
+            CacheValidator validator;
+            try {
+                validator = objectCache.validator(filename);
+            } catch (StorageObjectNotFoundException e) {
+                return ResponseEntity.notFound().build();
+            }
+            if (validator.notModified(ifNoneMatch, ifModifiedSince)) {
+                return notModified(validator, DOWNLOAD_CACHE_CONTROL);
+            }
+        }
+        // How the object is stored comes from its blob; derivatives and legacy objects have none
+        StoredBlob blob = storedBlobService.findLiveByStorageKey(filename).orElse(null);
+        // Downloads need no token, anonymous ones only count against the global limit
+        TransferBulkhead.Permit permit = transferBulkhead.acquire(user == null ? null : user.getUserId());
+        StoredObject object;
+        try {
+            object = objectCache.downloadFile(filename, range, ifRange).withEncodingOf(blob);
+            // Compressed objects are only ever sent whole, a slice of the stored bytes means nothing to the client
+            if (object.contentEncoding() != null && object.contentRange() != null) {
+                object.close();
+                object = objectCache.downloadFile(filename, null, null).withEncodingOf(blob);
+            }
+            // Replaced since the metadata was read; a 304 now would never run the body, which releases both
+            CacheValidator opened = new CacheValidator(object.eTag(), object.lastModified());
+            if (conditional && opened.notModified(ifNoneMatch, ifModifiedSince)) {
+                object.close();
+                permit.close();
+                return notModified(opened, DOWNLOAD_CACHE_CONTROL);
+            }
+        } catch (StorageObjectNotFoundException e) {
+            permit.close();
+            return ResponseEntity.notFound().build();
+        } catch (RangeNotSatisfiableException e) {
+            permit.close();
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+        } catch (IOException | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+
+        // Clients that accept the stored encoding get the stored bytes, everyone else gets them decoded on the fly
+        ContentCodec codec = ContentCodec.forEncoding(object.contentEncoding());
+        boolean decode = codec != null && !codec.acceptedBy(acceptEncoding);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+        if (codec == null) {
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        } else {
+            headers.set(HttpHeaders.ACCEPT_RANGES, "none");
+            headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (!decode) {
+            headers.setContentLength(object.contentLength());
+            if (codec != null) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, codec.encoding());
+            }
+        }
+        if (object.contentType() != null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, object.contentType());
+        }
+        if (object.eTag() != null) {
+            // The decoded bytes are a different representation, so they only get a weak validator
+            headers.setETag(decode && !object.eTag().startsWith("W/") ? "W/" + object.eTag() : object.eTag());
+        }
+        if (object.lastModified() != null) {
+            headers.setLastModified(object.lastModified());
+        }
+        headers.setCacheControl(DOWNLOAD_CACHE_CONTROL);
+        HttpStatus status = HttpStatus.OK;
+        if (object.contentRange() != null) {
+            status = HttpStatus.PARTIAL_CONTENT;
+            headers.set(HttpHeaders.CONTENT_RANGE, object.contentRange());
+        }
+
+        // Bytes go from storage to the client as they are read, never buffered whole; the slot is held until the last one
+        StoredObject opened = object;
+        StreamingResponseBody body = out -> {
+            try (permit; opened) {
+                if (decode) {
+                    try (InputStream in = opened.openDecoded()) {
+                        in.transferTo(out);
+                    }
+                } else {
+                    opened.content().writeTo(out);
+                }
+            }
+        };
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
+
+    // Downscaled image for listings and the viewer, rendered on first request if the upload did not already
+    @GetMapping("/{variant:thumbnail|preview}/{filename}")
+    public ResponseEntity<StreamingResponseBody> derivative(
+            @PathVariable String variant,
+            @PathVariable String filename,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) throws IOException {
+        ImageDerivative derivative = ImageDerivative.forName(variant);
+        StoredBlob blob = storedBlobService.findLiveByStorageKey(filename).orElse(null);
+        if (blob == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (ifNoneMatch != null) {
+            try {
+                CacheValidator validator = imageDerivativeService.validator(blob, derivative);
+                if (validator.notModified(ifNoneMatch, null)) {
+                    return notModified(validator, DERIVATIVE_CACHE_CONTROL);
+                }
+            } catch (StorageObjectNotFoundException e) {
+                // Not rendered yet
+            }
+        }
+        // No transfer slot: derivatives are small, and renders are bounded by the service
+        StoredObject object;
+        try {
+            object = imageDerivativeService.open(blob, derivative);
+        } catch (StorageObjectNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentLength(object.contentLength());
+        if (object.contentType() != null) {
+            headers.set(HttpHeaders.CONTENT_TYPE, object.contentType());
+        }
+        if (object.eTag() != null) {
+            headers.setETag(object.eTag());
+        }
+        headers.setCacheControl(DERIVATIVE_CACHE_CONTROL);
+        StreamingResponseBody body = out -> {
+            try (object) {
+                object.content().writeTo(out);
+            }
+        };
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    // Many files as one ZIP, sent while later entries are still being fetched from storage
+    @PostMapping("/download/zip")
+    public ResponseEntity<StreamingResponseBody> downloadZip(
+            @RequestBody ZipDownloadRequest request,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        List<Long> fileIds = request.getFileIds();
+        if (fileIds == null || fileIds.isEmpty() || fileIds.size() > maxZipFiles) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<SavedFiles> files = savedFilesService.findUserFiles(user.getUserId(), fileIds);
+        if (files.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        // One slot for the whole archive, held until its last byte
+        TransferBulkhead.Permit permit = transferBulkhead.acquire(user.getUserId());
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + ZipArchiveService.archiveName(request.getName()) + "\"");
+        headers.set(HttpHeaders.CONTENT_TYPE, "application/zip");
+        StreamingResponseBody body = out -> {
+            try (permit) {
+                zipArchiveService.write(files, out);
+            }
+        };
+        return ResponseEntity.ok().headers(headers).body(body);
     }
 
     //Delete File from S3 and DB
     @DeleteMapping("/delete/{fileId}")
     public ResponseEntity<?> deleteFile(
             @PathVariable String fileId,
-            @AuthenticationPrincipal UserDetails userDetails
+            @AuthenticationPrincipal AuthenticatedUser user
     ) {
+      if (user == null) {
+          return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+      }
       try{
-          // Delete from S3
-          s3Service.deleteFile(fileId);
-
-          // Delete from DB
-          Long userId = userService.findByEmail(userDetails.getUsername()).getUserId();
-          savedFilesService.deleteFile(Long.parseLong(fileId));
+          // Delete from DB, the S3 object goes with the last reference to its content
+          if (!savedFilesService.deleteFile(user.getUserId(), Long.parseLong(fileId))) {
+              return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                      .body(Map.of("status", false, "message", "File not found"));
+          }
 
           return ResponseEntity.status(HttpStatus.OK)
                   .body(Map.of("status", true, "message", "File deleted successfully"));
@@ -100,4 +367,177 @@ public class S3Controller {
                     .body(Map.of("status", false, "message", e.getMessage()));
       }
     }
+
+    // Delete many files at once; storage and DB work is batched, each id gets its own result
+    @PostMapping("/delete")
+    public ResponseEntity<?> deleteFiles(
+            @RequestBody BulkDeleteRequest request,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        List<Long> fileIds = request.getFileIds();
+        if (fileIds == null || fileIds.isEmpty()) {
+            return ResponseEntity.badRequest().body(Map.of("status", false, "message", "fileIds is required"));
+        }
+        if (fileIds.size() > maxBulkDeleteIds) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("status", false, "message", "At most " + maxBulkDeleteIds + " files per request"));
+        }
+        try {
+            List<FileDeleteResult> results = savedFilesService.deleteFiles(user.getUserId(), fileIds);
+            return ResponseEntity.ok(Map.of("status", true, "results", results));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("status", false, "message", e.getMessage()));
+        }
+    }
+
+    // Presigned URL the client PUTs the file to directly, so the bytes never pass through this service
+    @PostMapping("/presign/upload")
+    public ResponseEntity<?> presignUpload(
+            @RequestBody PresignUploadRequest request,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (s3Service == null) {
+            return directTransferUnsupported();
+        }
+        if (!StoredBlobService.isSha256Hex(request.getSha256())) {
+            return ResponseEntity.badRequest().body(Map.of("status", false, "message", "sha256 must be a lower-case hex digest"));
+        }
+        if (request.getSize() != null) {
+            storageQuotaService.check(user.getUserId(), request.getSize());
+        }
+        // Only content the caller already has skips the upload; whether anyone else stored it is not revealed
+        if (savedFilesService.referencesContent(user.getUserId(), request.getSha256())) {
+            return ResponseEntity.ok(Map.of("status", true, "exists", true));
+        }
+        String key = StoredBlobService.presignedKey(user.getUserId(), request.getSha256());
+        String contentType = Objects.requireNonNullElse(request.getContentType(), "application/octet-stream");
+        String checksum = Base64.getEncoder().encodeToString(HexFormat.of().parseHex(request.getSha256()));
+
+        PresignedPutObjectRequest presigned = s3Service.presignUpload(key, contentType, checksum);
+        return ResponseEntity.ok(Map.of(
+                "status", true,
+                "exists", false,
+                "url", presigned.url().toExternalForm(),
+                "method", "PUT",
+                "headers", Map.of(HttpHeaders.CONTENT_TYPE, contentType, "x-amz-checksum-sha256", checksum),
+                "expiresAt", presigned.expiration().toString()));
+    }
+
+    // Called by the client once its direct upload finished (or was skipped), records the file for the user
+    @PostMapping("/presign/complete")
+    public ResponseEntity<?> completePresignedUpload(
+            @RequestBody PresignCompleteRequest request,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (s3Service == null) {
+            return directTransferUnsupported();
+        }
+        String filename = request.getFilename() == null ? null : StringUtils.getFilename(StringUtils.cleanPath(request.getFilename()));
+        if (filename == null || filename.isBlank() || !StoredBlobService.isSha256Hex(request.getSha256())) {
+            return ResponseEntity.badRequest().body(Map.of("status", false, "message", "filename and sha256 are required"));
+        }
+        Long userId = user.getUserId();
+        String folderPath;
+        try {
+            folderPath = FolderService.normalize(request.getFolder());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", false, "message", e.getMessage()));
+        }
+
+        // Without an object of its own only a caller who already has the content gets a reference to it
+        StoredBlob blob = savedFilesService.referencesContent(userId, request.getSha256())
+                ? storedBlobService.acquireExisting(request.getSha256()).orElse(null)
+                : null;
+        if (blob == null) {
+            String key = StoredBlobService.presignedKey(userId, request.getSha256());
+            HeadObjectResponse head;
+            try {
+                head = s3Service.headFile(key);
+            } catch (NoSuchKeyException e) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("status", false, "message", "Upload not found"));
+            }
+            String expected = Base64.getEncoder().encodeToString(HexFormat.of().parseHex(request.getSha256()));
+            if (!expected.equals(head.checksumSHA256())) {
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body(Map.of("status", false, "message", "Stored content does not match sha256"));
+            }
+            // Content someone else stored first is referenced and this copy deleted
+            blob = storedBlobService.registerAt(request.getSha256(), head.contentLength(), head.contentType(), key);
+        }
+        String url = storageBackend.getUrl(blob.getStorageKey());
+        SavedFiles savedFile = saveFile(userId, url, filename, blob, folderPath);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(Map.of("status", true, "url", url, "fileId", savedFile.getId()));
+    }
+
+    @GetMapping("/presign/download/{fileId}")
+    public ResponseEntity<?> presignDownload(
+            @PathVariable Long fileId,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (s3Service == null) {
+            return directTransferUnsupported();
+        }
+        Long userId = user.getUserId();
+        SavedFiles file = savedFilesService.findUserFile(fileId, userId).orElse(null);
+        if (file == null || file.getBlob() == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", false, "message", "File not found"));
+        }
+        PresignedGetObjectRequest presigned = s3Service.presignDownload(file.getBlob().getStorageKey(),
+                Objects.requireNonNullElse(file.getFileName(), file.getBlob().getSha256()));
+        return ResponseEntity.ok(Map.of(
+                "status", true,
+                "url", presigned.url().toExternalForm(),
+                "expiresAt", presigned.expiration().toString()));
+    }
+
+    // Each step of an upload is its own timer and, with tracing on, a child span of cloudvault.upload
+    private <T, E extends Throwable> T stage(String name, Observation.CheckedCallable<T, E> step) throws E {
+        return Observation.createNotStarted("cloudvault.upload.stage", observationRegistry)
+                .contextualName("upload " + name)
+                .lowCardinalityKeyValue("stage", name)
+                .observeChecked(step);
+    }
+
+    private static ResponseEntity<StreamingResponseBody> notModified(CacheValidator validator, CacheControl cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        if (validator.eTag() != null) {
+            headers.setETag(validator.eTag());
+        }
+        if (validator.lastModified() != null) {
+            headers.setLastModified(validator.lastModified());
+        }
+        headers.setCacheControl(cacheControl);
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+    }
+
+    private ResponseEntity<?> directTransferUnsupported() {
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                .body(Map.of("status", false, "message", "Direct transfers need the s3 storage backend"));
+    }
+
+    // The caller already holds a reference on the blob, hand it back if the row can't be written
+    private SavedFiles saveFile(Long userId, String url, String fileName, StoredBlob blob, String folderPath) {
+        try {
+            return savedFilesService.saveFile(userId, url, fileName, blob, folderPath);
+        } catch (RuntimeException e) {
+            storedBlobService.release(blob.getId());
+            throw e;
+        }
+    }
 }
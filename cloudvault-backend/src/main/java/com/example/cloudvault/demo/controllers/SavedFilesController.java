@@ -1,14 +1,20 @@
 package com.example.cloudvault.demo.controllers;
 
-import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.FileUpdateRequest;
+import com.example.cloudvault.demo.entities.SavedFilesPage;
+import com.example.cloudvault.demo.services.CacheValidator;
+import com.example.cloudvault.demo.services.FolderService;
 import com.example.cloudvault.demo.services.SavedFilesService;
-import com.example.cloudvault.demo.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -18,25 +24,98 @@ public class SavedFilesController {
     @Autowired
     private SavedFilesService savedFilesService;
 
-    @Autowired
-    private UserService userService;
-
-    // Get all files for logged-in user
+    // Get files for logged-in user, a page at a time; pass nextCursor back as ?after= for the next one
     @GetMapping("/my")
-    public ResponseEntity<?> getMyFiles(@AuthenticationPrincipal UserDetails userDetails) {
+    public ResponseEntity<?> getMyFiles(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        // Nothing changed since the client's copy: one primary key read, no listing query
+        CacheValidator validator = savedFilesService.listingValidator(user.getUserId(), "my", after, limit);
+        ResponseEntity<?> notModified = ListingResponses.notModified(validator, ifNoneMatch);
+        if (notModified != null) {
+            return notModified;
+        }
+        SavedFilesPage page = savedFilesService.getFilesByUser(user.getUserId(), after, limit);
+
+        // nextCursor is null on the last page, which Map.of does not allow
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", true);
+        body.put("files", page.files());
+        body.put("nextCursor", page.nextCursor());
+        return ListingResponses.ok(validator, body);
+    }
+
+    // Newest files first, for a "recent" view; pass nextCursor back as ?before= for older ones
+    @GetMapping("/recent")
+    public ResponseEntity<?> getRecentFiles(
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        CacheValidator validator = savedFilesService.listingValidator(user.getUserId(), "recent", before, limit);
+        ResponseEntity<?> notModified = ListingResponses.notModified(validator, ifNoneMatch);
+        if (notModified != null) {
+            return notModified;
+        }
+        SavedFilesPage page = savedFilesService.getRecentFiles(user.getUserId(), before, limit);
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", true);
+        body.put("files", page.files());
+        body.put("nextCursor", page.nextCursor());
+        return ListingResponses.ok(validator, body);
+    }
 
-        Long userId = userService.findByEmail(userDetails.getUsername()).getUserId();
+    // Rename and/or move a file; only its row changes, the stored object stays where it is
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> updateFile(
+            @PathVariable Long id,
+            @RequestBody FileUpdateRequest request,
+            @AuthenticationPrincipal AuthenticatedUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
 
-        return ResponseEntity.ok(
-                Map.of("status", true,
-                        "files", savedFilesService.getFilesByUser(userId))
-        );
+        String fileName = null;
+        if (request.getFileName() != null) {
+            fileName = StringUtils.getFilename(StringUtils.cleanPath(request.getFileName()));
+            if (fileName == null || fileName.isBlank()) {
+                return ResponseEntity.badRequest().body(Map.of("status", false, "message", "fileName is invalid"));
+            }
+        }
+        String folderPath;
+        try {
+            folderPath = request.getFolder() == null ? null : FolderService.normalize(request.getFolder());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("status", false, "message", e.getMessage()));
+        }
+        return savedFilesService.updateFile(user.getUserId(), id, fileName, folderPath)
+                .<ResponseEntity<?>>map(file -> ResponseEntity.ok(Map.of("status", true, "fileName", file.getFileName(),
+                        "folder", file.getFolderPath())))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("status", false, "message", "File not found")));
     }
 
     // Delete file by id
     @DeleteMapping("/{id}")
-    public ResponseEntity<?> deleteFile(@PathVariable Long id) {
-        savedFilesService.deleteFile(id);
+    public ResponseEntity<?> deleteFile(@PathVariable Long id, @AuthenticationPrincipal AuthenticatedUser user) {
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!savedFilesService.deleteFile(user.getUserId(), id)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("status", false, "message", "File not found"));
+        }
         return ResponseEntity.ok(Map.of("status", true, "message", "Deleted"));
     }
 }
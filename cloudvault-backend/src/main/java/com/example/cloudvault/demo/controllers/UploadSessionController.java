@@ -0,0 +1,139 @@
+package com.example.cloudvault.demo.controllers;
+
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.entities.RequestBodyEntities.UploadSessionRequest;
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.UploadSession;
+import com.example.cloudvault.demo.services.FolderService;
+import com.example.cloudvault.demo.services.TransferBulkhead;
+import com.example.cloudvault.demo.services.UploadSessionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Resumable uploads: open a session, PUT chunks by offset in any order, check what arrived, complete
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadSessionController {
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Autowired
+    private TransferBulkhead transferBulkhead;
+
+    @PostMapping
+    public ResponseEntity<?> create(
+            @RequestBody UploadSessionRequest request,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) throws IOException {
+        String filename = request.getFilename() == null ? null : StringUtils.getFilename(StringUtils.cleanPath(request.getFilename()));
+        if (filename == null || filename.isBlank() || request.getSize() == null) {
+            return ResponseEntity.badRequest().body(Map.of("status", false, "message", "filename and size are required"));
+        }
+        try {
+            UploadSession session = uploadSessionService.create(user.getUserId(), filename,
+                    FolderService.normalize(request.getFolder()),
+                    Objects.requireNonNullElse(request.getContentType(), "application/octet-stream"),
+                    request.getSize(), request.getChunkSize(), request.getSha256());
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+                    "status", true,
+                    "uploadId", session.getId(),
+                    "chunkSize", session.getChunkSize(),
+                    "chunkCount", session.chunkCount(),
+                    "expiresAt", session.getExpiresAt().toString()));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+    }
+
+    // The chunk starting at ?offset=, as the raw request body; sending one again replaces it
+    @PutMapping("/{id}")
+    public ResponseEntity<?> putChunk(
+            @PathVariable String id,
+            @RequestParam long offset,
+            InputStream body,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) throws IOException {
+        try (TransferBulkhead.Permit permit = transferBulkhead.acquire(user.getUserId())) {
+            if (!uploadSessionService.putChunk(user.getUserId(), id, offset, body)) {
+                return sessionNotFound();
+            }
+            return ResponseEntity.ok(Map.of("status", true, "offset", offset));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        } catch (IllegalStateException e) {
+            return conflict(e);
+        }
+    }
+
+    // Which byte ranges the server has, so a client that lost track sends only the rest
+    @GetMapping("/{id}")
+    public ResponseEntity<?> status(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) {
+        UploadSession session = uploadSessionService.find(user.getUserId(), id).orElse(null);
+        if (session == null) {
+            return sessionNotFound();
+        }
+        List<String> received = uploadSessionService.receivedRanges(session);
+        return ResponseEntity.ok(Map.of(
+                "status", true,
+                "size", session.getSize(),
+                "chunkSize", session.getChunkSize(),
+                "received", received,
+                "expiresAt", session.getExpiresAt().toString()));
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> complete(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) throws IOException {
+        try {
+            SavedFiles saved = uploadSessionService.complete(user.getUserId(), id).orElse(null);
+            if (saved == null) {
+                return sessionNotFound();
+            }
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(Map.of("status", true, "url", saved.getFileLink(), "fileId", saved.getId()));
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        } catch (IllegalStateException e) {
+            return conflict(e);
+        }
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abort(
+            @PathVariable String id,
+            @AuthenticationPrincipal AuthenticatedUser user
+    ) {
+        if (!uploadSessionService.abort(user.getUserId(), id)) {
+            return sessionNotFound();
+        }
+        return ResponseEntity.ok(Map.of("status", true, "message", "Upload aborted"));
+    }
+
+    private static ResponseEntity<?> sessionNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("status", false, "message", "Upload not found"));
+    }
+
+    private static ResponseEntity<?> badRequest(RuntimeException e) {
+        return ResponseEntity.badRequest().body(Map.of("status", false, "message", e.getMessage()));
+    }
+
+    private static ResponseEntity<?> conflict(RuntimeException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("status", false, "message", e.getMessage()));
+    }
+}
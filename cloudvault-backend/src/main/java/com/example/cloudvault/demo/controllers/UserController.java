@@ -1,22 +1,23 @@
 package com.example.cloudvault.demo.controllers;
 
 
-import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.entities.SavedFilesPage;
+import com.example.cloudvault.demo.entities.UsersPage;
 import com.example.cloudvault.demo.services.SavedFilesService;
+import com.example.cloudvault.demo.services.StorageQuotaService;
 import com.example.cloudvault.demo.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/user")
@@ -27,49 +28,54 @@ public class UserController {
     @Autowired
     private SavedFilesService savedFilesService;
 
+    @Autowired
+    private StorageQuotaService storageQuotaService;
+
     @Autowired
     private AuthenticationManager authenticationManager;
 
+    // Bytes and files the caller stores and their quota (null when unlimited)
+    @GetMapping("/storage")
+    ResponseEntity<?> getStorageUsage(@AuthenticationPrincipal AuthenticatedUser user) {
+        return ResponseEntity.ok(Map.of("status", true, "storage", storageQuotaService.usage(user.getUserId())));
+    }
+
+    // Users other than the caller, optionally filtered by ?search=, paged by ?after=<nextCursor>&limit=
     @GetMapping("/get-all-users")
     ResponseEntity<?> getAllUsers(
-            @AuthenticationPrincipal UserDetails userDetails,
-            @RequestParam(required = false) String search) {
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
 
         try {
-            UserEntity user = userService.findByEmail(userDetails.getUsername());
-            if (user == null) {
-                return ResponseEntity.badRequest().body(Map.of("status", false, "message", "User not found"));
-            }
+            UsersPage page = userService.searchUsers(user.getUserId(), search, after, limit);
 
-            // Get all users except current user
-            List<UserEntity> allUsersFetched = userService.getAllUsers()
-                    .stream()
-                    .filter(u -> !u.getUserId().equals(user.getUserId()))
-                    .collect(Collectors.toList());
-
-
-
-            return ResponseEntity.ok(Map.of("status", true, "users", allUsersFetched));
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", true);
+            body.put("users", page.users());
+            body.put("nextCursor", page.nextCursor());
+            return ResponseEntity.ok(body);
         } catch (Exception e) {
             return ResponseEntity.internalServerError().body(Map.of("status", false, "message", e.getMessage()));
         }
     }
 
-    //Get All User Saved Files
+    //Get User Saved Files, paged by ?after=<nextCursor>&limit=
     @GetMapping("/get-saved-files")
     ResponseEntity<?> getAllSavedFiles(
-            @AuthenticationPrincipal UserDetails userDetails
+            @AuthenticationPrincipal AuthenticatedUser user,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit
     ) {
         try{
-            UserEntity user = userService.findByEmail(userDetails.getUsername());
-            if (user == null) {
-                return ResponseEntity.badRequest().body(Map.of("status", false, "message", "User not found"));
-            }
-
-            // Get all saved files for the user
-            var savedFiles = savedFilesService.getAllSavedFilesForUser(user.getUserId());
+            SavedFilesPage page = savedFilesService.getFilesByUser(user.getUserId(), after, limit);
 
-            return ResponseEntity.ok(Map.of("status", true, "savedFiles", savedFiles));
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("status", true);
+            body.put("savedFiles", page.files());
+            body.put("nextCursor", page.nextCursor());
+            return ResponseEntity.ok(body);
         }catch (Exception e){
             return ResponseEntity.internalServerError().body(Map.of("status", false, "message", e.getMessage()));
         }
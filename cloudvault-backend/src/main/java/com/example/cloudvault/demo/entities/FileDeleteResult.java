@@ -0,0 +1,13 @@
+package com.example.cloudvault.demo.entities;
+
+// Outcome for one id of a bulk delete; message says why when it was not deleted
+public record FileDeleteResult(Long id, boolean deleted, String message) {
+
+    public static FileDeleteResult deleted(Long id) {
+        return new FileDeleteResult(id, true, null);
+    }
+
+    public static FileDeleteResult notFound(Long id) {
+        return new FileDeleteResult(id, false, "File not found");
+    }
+}
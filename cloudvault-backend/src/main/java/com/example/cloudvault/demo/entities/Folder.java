@@ -0,0 +1,38 @@
+package com.example.cloudvault.demo.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// One row per folder a user has, named by its materialized path; the root "/" is implicit
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "folders",
+        uniqueConstraints = @UniqueConstraint(name = "uk_folders_user_path", columnNames = {"user_id", "path"}),
+        indexes = @Index(name = "idx_folders_user_parent_path", columnList = "user_id, parent_path, path"))
+public class Folder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private UserEntity user;
+
+    @Column(nullable = false, length = 1024)
+    private String path;   // "/a/b/", always with both slashes
+
+    @Column(name = "parent_path", nullable = false, length = 1024)
+    private String parentPath;   // "/a/", "/" for top-level folders
+
+    @Column(nullable = false)
+    private String name;   // Last segment of the path
+
+    private LocalDateTime created_at;
+}
@@ -0,0 +1,7 @@
+package com.example.cloudvault.demo.entities;
+
+import java.util.List;
+
+// A folder's subfolders and one page of its files; nextCursor pages the files only, folders come whole
+public record FolderListing(String path, List<FolderSummary> folders, List<SavedFileSummary> files, Long nextCursor) {
+}
@@ -0,0 +1,5 @@
+package com.example.cloudvault.demo.entities;
+
+// Listing row for a folder
+public record FolderSummary(Long id, String name, String path) {
+}
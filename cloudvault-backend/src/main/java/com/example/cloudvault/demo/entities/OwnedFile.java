@@ -0,0 +1,6 @@
+package com.example.cloudvault.demo.entities;
+
+// A saved file confirmed to belong to the caller, with the blob it references (null before deduplication)
+// and the size it counts against the owner's quota
+public record OwnedFile(Long id, Long blobId, Long size) {
+}
@@ -0,0 +1,13 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+// DTO
+@Getter
+@Setter
+public class BulkDeleteRequest {
+    private List<Long> fileIds;
+}
@@ -0,0 +1,12 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO, fields left out are not changed
+@Getter
+@Setter
+public class FileUpdateRequest {
+    private String fileName;
+    private String folder;
+}
@@ -0,0 +1,12 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO
+@Getter
+@Setter
+public class FolderMoveRequest {
+    private String from;
+    private String to;   // New path of the folder itself, so renaming /a/b/ is a move to /a/c/
+}
@@ -0,0 +1,11 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO
+@Getter
+@Setter
+public class FolderRequest {
+    private String path;
+}
@@ -0,0 +1,13 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO
+@Getter
+@Setter
+public class PresignCompleteRequest {
+    private String filename;
+    private String sha256;
+    private String folder;   // Folder path to save into, "/" when absent
+}
@@ -0,0 +1,13 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO
+@Getter
+@Setter
+public class PresignUploadRequest {
+    private String contentType;
+    private String sha256;   // Lower-case hex digest of the content the client will PUT
+    private Long size;       // Optional, lets an upload that would not fit the quota be refused before it starts
+}
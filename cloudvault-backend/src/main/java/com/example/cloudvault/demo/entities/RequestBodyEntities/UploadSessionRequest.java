@@ -0,0 +1,16 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// DTO
+@Getter
+@Setter
+public class UploadSessionRequest {
+    private String filename;
+    private Long size;          // Whole file, in bytes
+    private String contentType;
+    private String folder;      // Folder path to save into, "/" when absent
+    private String sha256;      // Optional, the upload is rejected on completion if the content differs
+    private Long chunkSize;     // Optional, raised to what storage needs
+}
@@ -0,0 +1,14 @@
+package com.example.cloudvault.demo.entities.RequestBodyEntities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+// DTO
+@Getter
+@Setter
+public class ZipDownloadRequest {
+    private List<Long> fileIds;
+    private String name;   // Archive name without .zip, "cloudvault" when absent
+}
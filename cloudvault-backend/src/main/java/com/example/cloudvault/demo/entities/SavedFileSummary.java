@@ -0,0 +1,8 @@
+package com.example.cloudvault.demo.entities;
+
+import java.time.LocalDateTime;
+
+// Listing row, read straight from saved_files without touching the user or blob
+public record SavedFileSummary(Long id, String fileName, String fileLink, String folderPath, Long size,
+                               String contentType, LocalDateTime createdAt) {
+}
@@ -1,5 +1,6 @@
 package com.example.cloudvault.demo.entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import lombok.*;
@@ -8,13 +9,20 @@ import lombok.*;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.LocalDateTime;
+
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "saved_files")
+// Listings page through a user's files by id, see SavedFilesRepository.findPageByUser; folder listings and
+// subtrees are scans of the second index, see SavedFilesSchema for why it orders paths byte by byte
+@Table(name = "saved_files", indexes = {
+        @Index(name = "idx_saved_files_user_id_id", columnList = "user_id, id"),
+        @Index(name = "idx_saved_files_user_folder_id", columnList = "user_id, folder_path, id")
+})
 public class SavedFiles {
 
     @Id
@@ -24,7 +32,30 @@ public class SavedFiles {
     @Column(name = "file_link", nullable = false)
     private String fileLink;
 
+    @Column(name = "file_name")
+    private String fileName;   // Name the user uploaded the file under
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private UserEntity user;   // Connected to Users table
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "blob_id")
+    private StoredBlob blob;   // Shared content, null for files uploaded before deduplication
+
+    // Copied from the upload, so listings need neither the blob nor storage
+
+    private Long size;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    // Materialized path of the containing folder, "/" or "/a/b/"; moves and renames only rewrite this
+    @Builder.Default
+    @Column(name = "folder_path", nullable = false, length = 1024, columnDefinition = "varchar(1024) default '/'")
+    private String folderPath = "/";
+
+    private LocalDateTime created_at;
+    private LocalDateTime updated_at;
 }
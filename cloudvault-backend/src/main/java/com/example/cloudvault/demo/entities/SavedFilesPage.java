@@ -0,0 +1,7 @@
+package com.example.cloudvault.demo.entities;
+
+import java.util.List;
+
+// One page of a user's files; nextCursor is passed back as ?after= and is null on the last page
+public record SavedFilesPage(List<SavedFileSummary> files, Long nextCursor) {
+}
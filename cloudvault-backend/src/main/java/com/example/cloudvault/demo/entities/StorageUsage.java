@@ -0,0 +1,37 @@
+package com.example.cloudvault.demo.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Running totals of what one user stores, kept next to saved_files so a quota check is a primary key read
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "storage_usage")
+public class StorageUsage {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "used_bytes", nullable = false)
+    private Long usedBytes;   // Sum of the sizes of the user's saved files, as uploaded
+
+    @Column(name = "file_count", nullable = false)
+    private Long fileCount;
+
+    @Column(name = "quota_bytes")
+    private Long quotaBytes;   // Per-user override, null for cloudvault.quota.default-size
+
+    // Bumped by every change to the user's files or folders, so it validates any listing of them
+    @Builder.Default
+    @Column(name = "files_version", nullable = false, columnDefinition = "bigint default 0")
+    private Long filesVersion = 0L;
+
+    private LocalDateTime reconciled_at;
+}
@@ -0,0 +1,63 @@
+package com.example.cloudvault.demo.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// One stored object per distinct content, shared by every SavedFiles row with the same SHA-256
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+// Thumbnail and preview requests look blobs up by the storage key in the download link
+@Table(name = "stored_blobs", indexes = @Index(name = "idx_stored_blobs_storage_key", columnList = "storage_key"))
+public class StoredBlob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String sha256;   // Lower-case hex digest of the content
+
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    // The ContentCodec the object is stored with, "identity" when stored as uploaded; null on blobs stored
+    // before it was recorded here, whose backend metadata still decides
+    @Column(name = "content_encoding", length = 16)
+    private String contentEncoding;
+
+    @Column(name = "ref_count", nullable = false)
+    private Long refCount;   // Number of saved_files rows pointing at this blob
+
+    private LocalDateTime created_at;
+
+    // Filled in by UploadProcessor after the upload, null until then
+
+    @Column(name = "detected_content_type")
+    private String detectedContentType;   // From the content's magic bytes, not the client
+
+    @Column(name = "image_width")
+    private Integer imageWidth;
+
+    @Column(name = "image_height")
+    private Integer imageHeight;
+
+    @Column(name = "preview_key")
+    private String previewKey;   // Storage key of the thumbnail, images only; see ImageDerivative
+
+    private Long crc32;   // CRC-32 of the content, lets ZIP downloads store entries without a second read
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+}
@@ -0,0 +1,7 @@
+package com.example.cloudvault.demo.entities;
+
+import java.util.List;
+
+// One page of every file under a folder, in path order; nextCursor is passed back as ?cursor= and is null on the last page
+public record SubtreePage(List<SavedFileSummary> files, String nextCursor) {
+}
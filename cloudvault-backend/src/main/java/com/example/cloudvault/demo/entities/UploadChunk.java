@@ -0,0 +1,29 @@
+package com.example.cloudvault.demo.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// One chunk of an UploadSession that has reached storage; a row each, so parallel chunks never contend
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "upload_chunks",
+        uniqueConstraints = @UniqueConstraint(name = "uk_upload_chunks_session_index", columnNames = {"session_id", "chunk_index"}))
+public class UploadChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "session_id", nullable = false, length = 36)
+    private String sessionId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex;
+
+    @Column(name = "storage_tag", nullable = false, length = 1024)
+    private String storageTag;   // What StorageBackend.uploadChunk returned, needed to complete the upload
+}
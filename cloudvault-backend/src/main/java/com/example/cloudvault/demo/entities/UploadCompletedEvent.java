@@ -0,0 +1,5 @@
+package com.example.cloudvault.demo.entities;
+
+// Published once a saved file row is committed; carries ids only, consumers reload what they need
+public record UploadCompletedEvent(Long fileId, Long blobId, String storageKey) {
+}
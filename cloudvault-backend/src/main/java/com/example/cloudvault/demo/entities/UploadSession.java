@@ -0,0 +1,65 @@
+package com.example.cloudvault.demo.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// A resumable upload in progress: what the file will be, and where its chunks are being staged
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Table(name = "upload_sessions", indexes = @Index(name = "idx_upload_sessions_expires_at", columnList = "expires_at"))
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id;   // Random UUID, also what the client addresses the session by
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private UserEntity user;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "folder_path", nullable = false, length = 1024)
+    private String folderPath;
+
+    @Column(name = "content_type", nullable = false)
+    private String contentType;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Long chunkSize;   // Every chunk but the last is exactly this long
+
+    @Column(length = 64)
+    private String sha256;   // Digest the client announced, checked on completion; null if none
+
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey;   // Where the object appears once complete, and stays if its content is new
+
+    @Column(name = "storage_upload_id", nullable = false, length = 1024)
+    private String storageUploadId;
+
+    @Column(nullable = false)
+    private boolean completing;   // Set by the one request completing the session, no chunks are taken after
+
+    private LocalDateTime created_at;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public int chunkCount() {
+        return (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+    }
+
+    public long chunkLength(int index) {
+        return Math.min(chunkSize, size - index * chunkSize);
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.cloudvault.demo.entities;
+
+// What a user's saved_files rows add up to, the source of truth StorageUsage is reconciled against
+public record UsageTotals(Long fileCount, Long usedBytes) {
+}
@@ -0,0 +1,5 @@
+package com.example.cloudvault.demo.entities;
+
+// Public fields of a user, for listings; never carries the password hash
+public record UserSummary(Long userId, String username, String email) {
+}
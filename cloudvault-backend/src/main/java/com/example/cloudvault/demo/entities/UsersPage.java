@@ -0,0 +1,7 @@
+package com.example.cloudvault.demo.entities;
+
+import java.util.List;
+
+// One page of users; nextCursor is passed back as ?after= and is null on the last page
+public record UsersPage(List<UserSummary> users, Long nextCursor) {
+}
@@ -0,0 +1,34 @@
+package com.example.cloudvault.demo.repositories;
+
+import com.example.cloudvault.demo.entities.Folder;
+import com.example.cloudvault.demo.entities.FolderSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface FolderRepository extends JpaRepository<Folder, Long> {
+
+    @Query("select d from Folder d where d.user.userId = :userId and d.path = :path")
+    Optional<Folder> findByPath(Long userId, String path);
+
+    @Query("select count(d) > 0 from Folder d where d.user.userId = :userId and d.path = :path")
+    boolean existsByPath(Long userId, String path);
+
+    // Subfolders of one folder, from the (user_id, parent_path, path) index
+    @Query("select new com.example.cloudvault.demo.entities.FolderSummary(d.id, d.name, d.path) " +
+            "from Folder d where d.user.userId = :userId and d.parentPath = :parentPath order by d.path")
+    List<FolderSummary> findChildren(Long userId, String parentPath);
+
+    @Query("select count(d) > 0 from Folder d where d.user.userId = :userId and d.parentPath = :parentPath")
+    boolean hasChildren(Long userId, String parentPath);
+
+    // Everything strictly below a folder being moved; both paths of these lie inside the moved subtree
+    @Modifying
+    @Query("update Folder d set d.path = concat(:to, substring(d.path, :offset)), " +
+            "d.parentPath = concat(:to, substring(d.parentPath, :offset)) " +
+            "where d.user.userId = :userId and d.path > :from and d.path < :upper")
+    int moveDescendants(Long userId, String from, String upper, String to, int offset);
+}
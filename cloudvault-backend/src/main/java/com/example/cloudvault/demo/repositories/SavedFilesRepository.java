@@ -1,11 +1,75 @@
 package com.example.cloudvault.demo.repositories;
 
+import com.example.cloudvault.demo.entities.OwnedFile;
+import com.example.cloudvault.demo.entities.SavedFileSummary;
 import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.UsageTotals;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface SavedFilesRepository extends JpaRepository<SavedFiles, Long> {
 
-    List<SavedFiles> findByUserUserId(Long userId);
+    String SUMMARY = "select new com.example.cloudvault.demo.entities.SavedFileSummary(" +
+            "f.id, f.fileName, f.fileLink, f.folderPath, f.size, f.contentType, f.created_at) ";
+
+    // Keyset page served by the (user_id, id) index; f.user.userId is the foreign key, so no join
+    @Query(SUMMARY + "from SavedFiles f where f.user.userId = :userId and f.id > :after order by f.id")
+    List<SavedFileSummary> findPageByUser(Long userId, Long after, Limit limit);
+
+    // Newest first, the same index read backwards
+    @Query(SUMMARY + "from SavedFiles f where f.user.userId = :userId and f.id < :before order by f.id desc")
+    List<SavedFileSummary> findRecentByUser(Long userId, Long before, Limit limit);
+
+    // Files directly in one folder, a keyset page of the (user_id, folder_path, id) index
+    @Query(SUMMARY + "from SavedFiles f where f.user.userId = :userId and f.folderPath = :folderPath and f.id > :after order by f.id")
+    List<SavedFileSummary> findPageInFolder(Long userId, String folderPath, Long after, Limit limit);
+
+    /**
+     * Files anywhere under a folder, as one range scan of the same index: every path starting with the
+     * folder's sorts between it and {@code upper}. Paged by (folder_path, id), starting after
+     * {@code afterPath}/{@code after}; the first page passes the folder itself and 0.
+     */
+    @Query(SUMMARY + "from SavedFiles f where f.user.userId = :userId and f.folderPath >= :afterPath " +
+            "and f.folderPath < :upper and (f.folderPath > :afterPath or f.id > :after) order by f.folderPath, f.id")
+    List<SavedFileSummary> findPageInSubtree(Long userId, String afterPath, String upper, Long after, Limit limit);
+
+    @Query("select f.id from SavedFiles f where f.user.userId = :userId and f.folderPath >= :from and f.folderPath < :upper")
+    List<Long> findIdsInSubtree(Long userId, String from, String upper, Limit limit);
+
+    // Moving a folder rewrites the prefix of every path under it, nothing in storage changes
+    @Modifying
+    @Query("update SavedFiles f set f.folderPath = concat(:to, substring(f.folderPath, :offset)), f.updated_at = :now " +
+            "where f.user.userId = :userId and f.folderPath >= :from and f.folderPath < :upper")
+    int moveSubtree(Long userId, String from, String upper, String to, int offset, LocalDateTime now);
+
+    // Ownership check for a whole bulk request in one query
+    @Query("select new com.example.cloudvault.demo.entities.OwnedFile(f.id, b.id, coalesce(f.size, b.size, 0L)) " +
+            "from SavedFiles f left join f.blob b where f.user.userId = :userId and f.id in :ids")
+    List<OwnedFile> findOwned(Long userId, Collection<Long> ids);
+
+    // Rows saved before sizes were recorded count with their blob's size
+    @Query("select new com.example.cloudvault.demo.entities.UsageTotals(count(f), coalesce(sum(coalesce(f.size, b.size, 0L)), 0L)) " +
+            "from SavedFiles f left join f.blob b where f.user.userId = :userId")
+    UsageTotals totalsByUser(Long userId);
+
+    @Query("select count(f) > 0 from SavedFiles f where f.user.userId = :userId and f.blob.sha256 = :sha256")
+    boolean referencesContent(Long userId, String sha256);
+
+    @Query("select f from SavedFiles f where f.id = :id and f.user.userId = :userId")
+    Optional<SavedFiles> findOwnedById(Long id, Long userId);
+
+    // Blob fetched with the row, callers read it after the transaction is gone (open-in-view is off)
+    @Query("select f from SavedFiles f left join fetch f.blob where f.id = :id and f.user.userId = :userId")
+    Optional<SavedFiles> findOwnedWithBlob(Long id, Long userId);
+
+    // Same for many files at once; files stored before deduplication have no blob and are left out
+    @Query("select f from SavedFiles f join fetch f.blob where f.user.userId = :userId and f.id in :ids")
+    List<SavedFiles> findOwnedWithBlobs(Long userId, Collection<Long> ids);
 }
@@ -0,0 +1,39 @@
+package com.example.cloudvault.demo.repositories;
+
+import com.example.cloudvault.demo.entities.StorageUsage;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, Long> {
+
+    // Adds the file only if it still fits, so concurrent uploads can never take the user past the quota together;
+    // a negative quota is unlimited
+    @Modifying
+    @Query("update StorageUsage u set u.usedBytes = u.usedBytes + :bytes, u.fileCount = u.fileCount + :files, " +
+            "u.filesVersion = u.filesVersion + 1 where u.userId = :userId and (coalesce(u.quotaBytes, :defaultQuota) < 0 " +
+            "or u.usedBytes + :bytes <= coalesce(u.quotaBytes, :defaultQuota))")
+    int charge(Long userId, long bytes, long files, long defaultQuota);
+
+    // Unconditional form, for deletes and for accounting with enforcement off
+    @Modifying
+    @Query("update StorageUsage u set u.usedBytes = u.usedBytes + :bytes, u.fileCount = u.fileCount + :files, " +
+            "u.filesVersion = u.filesVersion + 1 where u.userId = :userId")
+    int add(Long userId, long bytes, long files);
+
+    // For changes that leave the totals alone: renames, moves, folders created or deleted
+    @Transactional
+    @Modifying
+    @Query("update StorageUsage u set u.filesVersion = u.filesVersion + 1 where u.userId = :userId")
+    int touch(Long userId);
+
+    // Holds off saves and deletes of this user while their totals are recounted
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from StorageUsage u where u.userId = :userId")
+    Optional<StorageUsage> findByIdForUpdate(Long userId);
+}
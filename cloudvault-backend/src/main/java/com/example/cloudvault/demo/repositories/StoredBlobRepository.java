@@ -0,0 +1,65 @@
+package com.example.cloudvault.demo.repositories;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, Long> {
+
+    Optional<StoredBlob> findBySha256(String sha256);
+
+    // Takes a reference only while the blob is still live, so a blob being garbage-collected is never revived
+    @Transactional
+    @Modifying
+    @Query("update StoredBlob b set b.refCount = b.refCount + 1 where b.sha256 = :sha256 and b.refCount > 0")
+    int acquireLive(String sha256);
+
+    // Flushes pending deletes first and clears afterwards so the locking read below sees the new count
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update StoredBlob b set b.refCount = b.refCount - 1 where b.id = :id")
+    int release(Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from StoredBlob b where b.id = :id")
+    Optional<StoredBlob> findByIdForUpdate(Long id);
+
+    // Revives a blob left at zero references with an object that was just written elsewhere
+    @Transactional
+    @Modifying
+    @Query("update StoredBlob b set b.storageKey = :storageKey, b.contentEncoding = :contentEncoding, b.refCount = 1 " +
+            "where b.id = :id and b.refCount <= 0")
+    int takeOver(Long id, String storageKey, String contentEncoding);
+
+    boolean existsByStorageKey(String storageKey);
+
+    Optional<StoredBlob> findFirstByStorageKeyAndRefCountGreaterThan(String storageKey, long refCount);
+
+    // Bulk form of release, for blobs that each lose the same number of references
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update StoredBlob b set b.refCount = b.refCount - :count where b.id in :ids")
+    int releaseAll(Collection<Long> ids, long count);
+
+    // Only the processing columns, so a concurrent reference count change is not overwritten
+    @Transactional
+    @Modifying
+    @Query("update StoredBlob b set b.detectedContentType = :detectedContentType, b.imageWidth = :imageWidth, " +
+            "b.imageHeight = :imageHeight, b.previewKey = :previewKey, b.crc32 = :crc32, b.processedAt = :processedAt " +
+            "where b.id = :id")
+    int recordProcessing(Long id, String detectedContentType, Integer imageWidth, Integer imageHeight,
+                         String previewKey, Long crc32, LocalDateTime processedAt);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from StoredBlob b where b.id in :ids and b.refCount <= 0")
+    List<StoredBlob> findUnreferencedForUpdate(Collection<Long> ids);
+}
@@ -0,0 +1,27 @@
+package com.example.cloudvault.demo.repositories;
+
+import com.example.cloudvault.demo.entities.UploadChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, Long> {
+
+    @Query("select c from UploadChunk c where c.sessionId = :sessionId order by c.chunkIndex")
+    List<UploadChunk> findBySession(String sessionId);
+
+    @Query("select c.chunkIndex from UploadChunk c where c.sessionId = :sessionId order by c.chunkIndex")
+    List<Integer> findIndexesBySession(String sessionId);
+
+    @Query("select c from UploadChunk c where c.sessionId = :sessionId and c.chunkIndex = :chunkIndex")
+    Optional<UploadChunk> findChunk(String sessionId, Integer chunkIndex);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UploadChunk c where c.sessionId = :sessionId")
+    int deleteBySession(String sessionId);
+}
@@ -0,0 +1,33 @@
+package com.example.cloudvault.demo.repositories;
+
+import com.example.cloudvault.demo.entities.UploadSession;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    @Query("select s from UploadSession s where s.id = :id and s.user.userId = :userId")
+    Optional<UploadSession> findOwned(String id, Long userId);
+
+    // Only one request gets to complete a session, and only before it expires
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.completing = true " +
+            "where s.id = :id and s.completing = false and s.expiresAt > :now")
+    int claim(String id, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update UploadSession s set s.completing = false where s.id = :id")
+    int unclaim(String id);
+
+    @Query("select s from UploadSession s where s.expiresAt <= :now order by s.expiresAt")
+    List<UploadSession> findExpired(LocalDateTime now, Limit limit);
+}
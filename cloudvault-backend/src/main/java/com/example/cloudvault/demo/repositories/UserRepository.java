@@ -1,8 +1,14 @@
 package com.example.cloudvault.demo.repositories;
 
 import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.entities.UserSummary;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<UserEntity, Long> {
@@ -14,5 +20,25 @@ public interface UserRepository extends JpaRepository<UserEntity, Long> {
 
     UserEntity findByEmailAndPassword(String email, String password);
 
-
-}
\ No newline at end of file
+    // Swaps the hash only if it is still the one that was checked, so a concurrent password change wins
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.password = :password where u.userId = :id and u.password = :expected")
+    int updatePassword(Long id, String expected, String password);
+
+    // Keyset page over the primary key, skipping the caller
+    @Query("select new com.example.cloudvault.demo.entities.UserSummary(u.userId, u.username, u.email) " +
+            "from UserEntity u where u.userId <> :excludedId and u.userId > :after order by u.userId")
+    List<UserSummary> findPageExcluding(Long excludedId, Long after, Limit limit);
+
+    // Every user, a batch at a time, for background jobs
+    @Query("select u.userId from UserEntity u where u.userId > :after order by u.userId")
+    List<Long> findIdsAfter(Long after, Limit limit);
+
+    // pattern is lower-cased with %, _ and ! escaped by '!'; served by the trigram indexes from UserSearchIndexes
+    @Query("select new com.example.cloudvault.demo.entities.UserSummary(u.userId, u.username, u.email) " +
+            "from UserEntity u where u.userId <> :excludedId and u.userId > :after " +
+            "and (lower(u.username) like :pattern escape '!' or lower(u.email) like :pattern escape '!') " +
+            "order by u.userId")
+    List<UserSummary> searchPageExcluding(Long excludedId, String pattern, Long after, Limit limit);
+}
@@ -0,0 +1,51 @@
+package com.example.cloudvault.demo.services;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * What a client can revalidate a response with: a quoted entity tag and, when known, the time of the
+ * last change. Either may be null.
+ */
+public record CacheValidator(String eTag, Instant lastModified) {
+
+    /**
+     * Whether a GET with these conditional headers should get a 304. If-None-Match decides when present,
+     * compared weakly as RFC 9110 asks for GET; If-Modified-Since is only looked at without it, and an
+     * unparsable date is ignored.
+     */
+    public boolean notModified(String ifNoneMatch, String ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            if (ifNoneMatch.trim().equals("*")) {
+                return true;
+            }
+            if (eTag == null) {
+                return false;
+            }
+            String current = opaque(eTag);
+            for (String candidate : ifNoneMatch.split(",")) {
+                if (opaque(candidate.trim()).equals(current)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (ifModifiedSince == null || lastModified == null) {
+            return false;
+        }
+        try {
+            Instant since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            // HTTP dates have no fraction of a second
+            return !lastModified.truncatedTo(ChronoUnit.SECONDS).isAfter(since);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
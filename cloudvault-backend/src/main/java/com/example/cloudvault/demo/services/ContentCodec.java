@@ -0,0 +1,118 @@
+package com.example.cloudvault.demo.services;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression applied to stored objects. The name is the HTTP content-coding, recorded as the object's
+ * {@code Content-Encoding} so it can be sent to clients that accept it without decoding.
+ */
+public enum ContentCodec {
+
+    GZIP("gzip") {
+        @Override
+        public OutputStream encode(OutputStream out, int level) throws IOException {
+            return new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(level > 0 ? level : Deflater.DEFAULT_COMPRESSION);
+                }
+            };
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    ZSTD("zstd") {
+        @Override
+        public OutputStream encode(OutputStream out, int level) throws IOException {
+            return new ZstdOutputStream(out, level > 0 ? level : 3);
+        }
+
+        @Override
+        public InputStream decode(InputStream in) throws IOException {
+            return new BufferedInputStream(new ZstdInputStream(in), BUFFER_SIZE);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String encoding;
+
+    ContentCodec(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public String encoding() {
+        return encoding;
+    }
+
+    /**
+     * Wraps {@code out} so what is written to it is compressed; closing the result finishes the frame
+     * and closes {@code out}. A level of 0 or less picks the codec's default.
+     */
+    public abstract OutputStream encode(OutputStream out, int level) throws IOException;
+
+    // Streams the original bytes back out of compressed ones; closing it closes {@code in}
+    public abstract InputStream decode(InputStream in) throws IOException;
+
+    /**
+     * The codec for a stored {@code Content-Encoding}, or null when the object is stored as it is.
+     *
+     * @throws IllegalArgumentException for an encoding no codec here writes
+     */
+    public static ContentCodec forEncoding(String contentEncoding) {
+        if (contentEncoding == null || contentEncoding.isBlank() || contentEncoding.equalsIgnoreCase("identity")) {
+            return null;
+        }
+        for (ContentCodec codec : values()) {
+            if (codec.encoding.equalsIgnoreCase(contentEncoding.trim())) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported content encoding " + contentEncoding);
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} header lists this coding (or {@code *}) with a non-zero quality.
+     */
+    public boolean acceptedBy(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            boolean refused = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(parameter.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (coding.equals(encoding)) {
+                return !refused;
+            }
+            if (coding.equals("*")) {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.cloudvault.demo.services;
+
+public class FolderConflictException extends RuntimeException {
+
+    public FolderConflictException(String message) {
+        super(message);
+    }
+}
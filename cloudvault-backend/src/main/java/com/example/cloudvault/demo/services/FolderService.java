@@ -0,0 +1,256 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.Folder;
+import com.example.cloudvault.demo.entities.FolderListing;
+import com.example.cloudvault.demo.entities.FolderSummary;
+import com.example.cloudvault.demo.entities.SavedFileSummary;
+import com.example.cloudvault.demo.entities.SubtreePage;
+import com.example.cloudvault.demo.repositories.FolderRepository;
+import com.example.cloudvault.demo.repositories.SavedFilesRepository;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Folders as materialized paths: a folder is named by its full path, {@code "/"} or {@code "/a/b/"},
+ * and a file by the path of the folder it is in. Listing a folder, a whole subtree or moving one are
+ * then each a single indexed statement, and moves and renames never touch stored objects.
+ */
+@Slf4j
+@Service
+public class FolderService {
+
+    public static final String ROOT = "/";
+
+    private static final int MAX_PATH_LENGTH = 1024;
+
+    @Autowired
+    private FolderRepository folderRepository;
+
+    @Autowired
+    private SavedFilesRepository savedFilesRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StorageQuotaService storageQuotaService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${cloudvault.files.page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${cloudvault.files.max-page-size:1000}")
+    private int maxPageSize;
+
+    /**
+     * The canonical form of a folder path: a leading and a trailing slash, no empty segments. Null or
+     * blank is the root.
+     *
+     * @throws IllegalArgumentException for "." or ".." segments, control characters or an overlong path
+     */
+    public static String normalize(String path) {
+        if (path == null || path.isBlank()) {
+            return ROOT;
+        }
+        StringBuilder normalized = new StringBuilder(ROOT);
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals(".") || segment.equals("..") || segment.chars().anyMatch(Character::isISOControl)) {
+                throw new IllegalArgumentException("Invalid folder name '" + segment + "'");
+            }
+            normalized.append(segment).append('/');
+        }
+        if (normalized.length() > MAX_PATH_LENGTH) {
+            throw new IllegalArgumentException("Folder path is longer than " + MAX_PATH_LENGTH + " characters");
+        }
+        return normalized.toString();
+    }
+
+    public static String parentOf(String path) {
+        return path.equals(ROOT) ? null : path.substring(0, path.lastIndexOf('/', path.length() - 2) + 1);
+    }
+
+    public static String nameOf(String path) {
+        return path.substring(parentOf(path).length(), path.length() - 1);
+    }
+
+    // First path after every path that starts with this one, in byte order: the trailing '/' bumped to '0'
+    public static String upperBound(String path) {
+        return path.substring(0, path.length() - 1) + (char) ('/' + 1);
+    }
+
+    /**
+     * Creates the folder and any missing parents; folders that already exist are left as they are.
+     */
+    public void ensure(Long userId, String path) {
+        // Parents always exist when a folder does, so the common case is a single lookup
+        List<String> missing = new ArrayList<>();
+        for (String current = path; !current.equals(ROOT); current = parentOf(current)) {
+            if (folderRepository.existsByPath(userId, current)) {
+                break;
+            }
+            missing.add(current);
+        }
+        for (int i = missing.size() - 1; i >= 0; i--) {
+            String current = missing.get(i);
+            try {
+                folderRepository.save(Folder.builder()
+                        .user(userRepository.getReferenceById(userId))
+                        .path(current)
+                        .parentPath(parentOf(current))
+                        .name(nameOf(current))
+                        .created_at(LocalDateTime.now())
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // Created concurrently, which is just as good
+            }
+        }
+        if (!missing.isEmpty()) {
+            storageQuotaService.touch(userId);
+        }
+    }
+
+    public boolean exists(Long userId, String path) {
+        return path.equals(ROOT) || folderRepository.existsByPath(userId, path);
+    }
+
+    /**
+     * The folder's subfolders and one page of the files directly in it, or empty when there is no such folder.
+     */
+    public Optional<FolderListing> list(Long userId, String path, Long after, Integer limit) {
+        if (!exists(userId, path)) {
+            return Optional.empty();
+        }
+        int pageSize = pageSize(limit);
+        List<FolderSummary> folders = after == null ? folderRepository.findChildren(userId, path) : List.of();
+        // One extra row tells whether another page follows without a count query
+        List<SavedFileSummary> rows = savedFilesRepository.findPageInFolder(
+                userId, path, after == null ? 0L : after, Limit.of(pageSize + 1));
+        if (rows.size() <= pageSize) {
+            return Optional.of(new FolderListing(path, folders, rows, null));
+        }
+        List<SavedFileSummary> page = rows.subList(0, pageSize);
+        return Optional.of(new FolderListing(path, folders, page, page.get(pageSize - 1).id()));
+    }
+
+    /**
+     * One page of every file under the folder, at any depth, ordered by folder and then id. The cursor
+     * is the {@code nextCursor} of the previous page.
+     */
+    public SubtreePage listSubtree(Long userId, String path, String cursor, Integer limit) {
+        int pageSize = pageSize(limit);
+        String afterPath = path;
+        long after = 0;
+        if (cursor != null) {
+            int separator = cursor.indexOf(':');
+            try {
+                after = Long.parseLong(cursor.substring(0, separator));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            afterPath = cursor.substring(separator + 1);
+            if (!afterPath.startsWith(path)) {
+                throw new IllegalArgumentException("Cursor is for another folder");
+            }
+        }
+        List<SavedFileSummary> rows = savedFilesRepository.findPageInSubtree(
+                userId, afterPath, upperBound(path), after, Limit.of(pageSize + 1));
+        if (rows.size() <= pageSize) {
+            return new SubtreePage(rows, null);
+        }
+        List<SavedFileSummary> page = rows.subList(0, pageSize);
+        SavedFileSummary last = page.get(pageSize - 1);
+        return new SubtreePage(page, last.id() + ":" + last.folderPath());
+    }
+
+    /**
+     * Moves, or renames, a folder with everything under it to {@code to}, creating the new parent if
+     * needed. Only paths in the database change.
+     *
+     * @return false if there is no folder at {@code from}
+     * @throws FolderConflictException if {@code to} already exists
+     * @throws IllegalArgumentException for the root, or a move into the folder's own subtree
+     */
+    public boolean move(Long userId, String from, String to) {
+        if (from.equals(ROOT) || to.equals(ROOT)) {
+            throw new IllegalArgumentException("The root folder cannot be moved");
+        }
+        if (to.startsWith(from)) {
+            throw new IllegalArgumentException("A folder cannot be moved into itself");
+        }
+        if (folderRepository.findByPath(userId, from).isEmpty()) {
+            return false;
+        }
+        checkVacant(userId, to);
+        // Before the transaction: ensure shrugs off a concurrent insert, which would abort a surrounding one
+        ensure(userId, parentOf(to));
+        return transactionTemplate.execute(status -> {
+            // Checked again, another request may have moved or taken either path since
+            Folder folder = folderRepository.findByPath(userId, from).orElse(null);
+            if (folder == null) {
+                return false;
+            }
+            checkVacant(userId, to);
+            storageQuotaService.touch(userId);
+
+            // substring() is 1-based, so this is the first character after the old prefix
+            int offset = from.length() + 1;
+            String upper = upperBound(from);
+            int folders = folderRepository.moveDescendants(userId, from, upper, to, offset);
+            int files = savedFilesRepository.moveSubtree(userId, from, upper, to, offset, LocalDateTime.now());
+            folder.setPath(to);
+            folder.setParentPath(parentOf(to));
+            folder.setName(nameOf(to));
+            folderRepository.save(folder);
+            log.info("Moved folder {} to {} for user {}: {} subfolders, {} files", from, to, userId, folders, files);
+            return true;
+        });
+    }
+
+    /**
+     * Deletes an empty folder.
+     *
+     * @return false if there is no such folder
+     * @throws FolderConflictException if it still holds files or folders
+     */
+    @Transactional
+    public boolean delete(Long userId, String path) {
+        Folder folder = folderRepository.findByPath(userId, path).orElse(null);
+        if (folder == null) {
+            return false;
+        }
+        if (folderRepository.hasChildren(userId, path)
+                || !savedFilesRepository.findIdsInSubtree(userId, path, upperBound(path), Limit.of(1)).isEmpty()) {
+            throw new FolderConflictException("Folder " + path + " is not empty");
+        }
+        storageQuotaService.touch(userId);
+        folderRepository.delete(folder);
+        return true;
+    }
+
+    private void checkVacant(Long userId, String path) {
+        if (folderRepository.existsByPath(userId, path)) {
+            throw new FolderConflictException("A folder already exists at " + path);
+        }
+    }
+
+    private int pageSize(Integer limit) {
+        return limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.cloudvault.demo.services;
+
+import java.util.Locale;
+
+/**
+ * Downscaled renditions of an image, stored next to the original under a key derived from its SHA-256,
+ * so identical content shares them and the key alone says whether one exists.
+ */
+public enum ImageDerivative {
+
+    // For file listings, generated right after upload
+    THUMBNAIL("thumbnail", 256),
+
+    // For viewing a single image, generated when first asked for
+    PREVIEW("preview", 1280);
+
+    private final String name;
+    private final int maxDimension;
+
+    ImageDerivative(String name, int maxDimension) {
+        this.name = name;
+        this.maxDimension = maxDimension;
+    }
+
+    public String key(String sha256) {
+        return name + "-" + sha256;
+    }
+
+    // Longest side of the rendition; smaller images keep their size
+    public int maxDimension() {
+        return maxDimension;
+    }
+
+    public static ImageDerivative forName(String name) {
+        for (ImageDerivative derivative : values()) {
+            if (derivative.name.equals(name.toLowerCase(Locale.ROOT))) {
+                return derivative;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.repositories.StoredBlobRepository;
+import com.example.cloudvault.demo.utils.ContentSniffer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Thumbnails and previews of stored images, rendered with ImageIO.
+ * <p>
+ * UploadProcessor stores the thumbnail right after an upload; any derivative that is not there yet is
+ * rendered on its first request and stored next to the original. Concurrent first requests for one
+ * derivative wait on a single render, and only {@code max-concurrent-renders} decode at once, since
+ * each holds an image in memory. Opaque images become JPEGs, which is most of the saving over the
+ * original; images with transparency stay PNG.
+ */
+@Slf4j
+@Service
+public class ImageDerivativeService {
+
+    private static final float JPEG_QUALITY = 0.8f;
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private ObjectCache objectCache;
+
+    // Larger originals get no derivatives
+    @Value("${cloudvault.derivatives.max-source-size:${cloudvault.processing.preview-max-size:32MB}}")
+    private DataSize maxSourceSize;
+
+    @Value("${cloudvault.derivatives.max-concurrent-renders:2}")
+    private int maxConcurrentRenders;
+
+    private Semaphore renderPermits;
+
+    // Renders running on this node by derivative key, so a burst of first requests renders once
+    private final ConcurrentHashMap<String, CompletableFuture<Boolean>> rendering = new ConcurrentHashMap<>();
+
+    // Content ImageIO could not decode, so it is not downloaded again on every request
+    private Cache<String, Boolean> unrenderable;
+
+    @PostConstruct
+    void init() {
+        renderPermits = new Semaphore(Math.max(1, maxConcurrentRenders));
+        unrenderable = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofHours(1))
+                .build();
+    }
+
+    /**
+     * Same contract as {@link ObjectCache#validator}, for a derivative that has been stored.
+     */
+    public CacheValidator validator(StoredBlob blob, ImageDerivative derivative) throws IOException {
+        return objectCache.validator(derivative.key(blob.getSha256()));
+    }
+
+    /**
+     * Opens the blob's derivative, rendering and storing it first when there is none yet. The caller must
+     * close the result.
+     *
+     * @throws StorageObjectNotFoundException if the blob is not an image that can be rendered
+     */
+    public StoredObject open(StoredBlob blob, ImageDerivative derivative) throws IOException {
+        String key = derivative.key(blob.getSha256());
+        try {
+            return objectCache.downloadFile(key, null, null);
+        } catch (StorageObjectNotFoundException e) {
+            // Not rendered yet
+        }
+        if (!renderOnce(blob, derivative)) {
+            throw new StorageObjectNotFoundException(key);
+        }
+        return objectCache.downloadFile(key, null, null);
+    }
+
+    /**
+     * Scales the image to fit the derivative. Decodes with subsampling, so a huge image never needs its
+     * full size in memory. Null if ImageIO cannot read it.
+     */
+    public static Rendition render(Path source, ImageDerivative derivative) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // Twice the target size is left for the bilinear pass to smooth
+                int step = Math.max(1, Math.max(width, height) / (derivative.maxDimension() * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                return encode(scale(image, derivative.maxDimension()), width, height);
+            } catch (IIOException e) {
+                // Truncated or corrupt, which no retry will fix
+                log.debug("Could not decode {}: {}", source, e.getMessage());
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Dimensions are the original's
+    public record Rendition(int width, int height, byte[] content, String contentType) {
+    }
+
+    // The first caller for a key renders on its own thread, everyone else waits on the same future
+    private boolean renderOnce(StoredBlob blob, ImageDerivative derivative) throws IOException {
+        if (unrenderable.getIfPresent(blob.getSha256()) != null) {
+            return false;
+        }
+        String key = derivative.key(blob.getSha256());
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> future = rendering.putIfAbsent(key, created);
+        if (future == null) {
+            future = created;
+            try {
+                created.complete(renderAndStore(blob, derivative));
+            } catch (Throwable e) {
+                created.completeExceptionally(e);
+            } finally {
+                rendering.remove(key, created);
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private boolean renderAndStore(StoredBlob blob, ImageDerivative derivative) throws IOException {
+        String key = derivative.key(blob.getSha256());
+        try {
+            // Stored by another node, or by a render that finished between our miss and now
+            storageBackend.validator(key);
+            return true;
+        } catch (StorageObjectNotFoundException e) {
+            // Ours to render
+        }
+        String contentType = blob.getDetectedContentType() != null ? blob.getDetectedContentType() : blob.getContentType();
+        if (!ContentSniffer.isPreviewable(contentType) || blob.getSize() > maxSourceSize.toBytes()) {
+            return false;
+        }
+
+        Path copy = Files.createTempFile("cloudvault-derivative-", ".tmp");
+        try {
+            try (StoredObject original = objectCache.downloadFile(blob.getStorageKey(), null, null);
+                 InputStream in = original.withEncodingOf(blob).openDecoded()) {
+                Files.copy(in, copy, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Rendition rendition;
+            try {
+                renderPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to render " + key);
+            }
+            try {
+                rendition = render(copy, derivative);
+            } finally {
+                renderPermits.release();
+            }
+            if (rendition == null) {
+                unrenderable.put(blob.getSha256(), Boolean.TRUE);
+                return false;
+            }
+            storageBackend.uploadBytes(key, rendition.content(), rendition.contentType());
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+
+        // Garbage-collected while we rendered, nothing will ever delete this derivative otherwise
+        if (storedBlobRepository.findById(blob.getId()).filter(live -> live.getRefCount() > 0).isEmpty()) {
+            storageBackend.deleteFile(key);
+            return false;
+        }
+        log.debug("Rendered {} of blob {}", derivative, blob.getSha256());
+        return true;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int maxDimension) {
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    private static Rendition encode(BufferedImage image, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (image.getColorModel().hasAlpha()) {
+            ImageIO.write(image, "png", out);
+            return new Rendition(width, height, out.toByteArray(), "image/png");
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new Rendition(width, height, out.toByteArray(), "image/jpeg");
+    }
+}
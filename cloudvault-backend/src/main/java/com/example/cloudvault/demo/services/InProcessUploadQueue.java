@@ -0,0 +1,149 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker pool in this node, for single-node setups and tests without a broker. Failed events are
+ * retried with exponential backoff and, once out of attempts, parked in a bounded dead-letter list
+ * shown by {@code GET /admin/processing/stats}. Queued events do not survive a restart.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "cloudvault.processing.transport", havingValue = "inprocess", matchIfMissing = true)
+public class InProcessUploadQueue implements UploadQueue {
+
+    private static final int DEAD_LETTERS_KEPT = 100;
+
+    @Autowired
+    private UploadProcessor uploadProcessor;
+
+    @Value("${cloudvault.processing.workers:2}")
+    private int workers;
+
+    // Events beyond this are dropped rather than queued without bound; the files just stay unprocessed
+    @Value("${cloudvault.processing.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${cloudvault.processing.max-attempts:3}")
+    private int maxAttempts;
+
+    // Delay before the first retry, doubled for each one after
+    @Value("${cloudvault.processing.retry-backoff:2s}")
+    private Duration retryBackoff;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final Deque<Map<String, Object>> deadLetters = new ArrayDeque<>();
+
+    @PostConstruct
+    void init() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "upload-processing-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ScheduledThreadPoolExecutor(workers, threads);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("Stopped with {} upload events unprocessed", executor.getQueue().size());
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void submit(UploadCompletedEvent event) {
+        if (executor.getQueue().size() >= queueCapacity) {
+            dropped.incrementAndGet();
+            log.warn("Processing queue full, dropping event for file {}", event.fileId());
+            return;
+        }
+        executor.execute(() -> run(event, 1));
+    }
+
+    private void run(UploadCompletedEvent event, int attempt) {
+        try {
+            uploadProcessor.process(event);
+            processed.incrementAndGet();
+        } catch (Exception e) {
+            if (attempt >= maxAttempts) {
+                deadLetter(event, attempt, e);
+                return;
+            }
+            retried.incrementAndGet();
+            long delay = retryBackoff.toMillis() << (attempt - 1);
+            log.warn("Processing file {} failed (attempt {} of {}), retrying in {} ms: {}",
+                    event.fileId(), attempt, maxAttempts, delay, e.toString());
+            executor.schedule(() -> run(event, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void deadLetter(UploadCompletedEvent event, int attempts, Exception e) {
+        deadLettered.incrementAndGet();
+        log.error("Giving up on processing file {} after {} attempts", event.fileId(), attempts, e);
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("event", event);
+        entry.put("attempts", attempts);
+        entry.put("error", e.toString());
+        entry.put("failedAt", Instant.now().toString());
+        synchronized (deadLetters) {
+            if (deadLetters.size() == DEAD_LETTERS_KEPT) {
+                deadLetters.removeFirst();
+            }
+            deadLetters.addLast(entry);
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("transport", "inprocess");
+        result.put("queued", executor.getQueue().size());
+        result.put("active", executor.getActiveCount());
+        result.put("processed", processed.get());
+        result.put("retried", retried.get());
+        result.put("dropped", dropped.get());
+        result.put("deadLettered", deadLettered.get());
+        synchronized (deadLetters) {
+            result.put("deadLetters", new ArrayList<>(deadLetters));
+        }
+        return result;
+    }
+
+    // Visible for tests
+    List<Map<String, Object>> deadLetters() {
+        synchronized (deadLetters) {
+            return new ArrayList<>(deadLetters);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.cloudvault.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.web.util.UriUtils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps objects as plain files under {@code cloudvault.storage.local.root}, for on-prem nodes and
+ * for running without AWS. Objects are written to a temporary file and renamed into place, so a
+ * reader never sees a partial object.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "cloudvault.storage.backend", havingValue = "local")
+public class LocalStorageBackend implements StorageBackend {
+
+    // Content type is kept in a user xattr where the filesystem supports it
+    private static final String CONTENT_TYPE_ATTRIBUTE = "cloudvault.content-type";
+
+    // So is the encoding of a compressed object, though its blob row is what readers go by
+    private static final String CONTENT_ENCODING_ATTRIBUTE = "cloudvault.content-encoding";
+
+    // Staging files of chunked uploads, out of reach of the single-segment keys the download path takes
+    private static final String CHUNKED_UPLOADS_DIR = ".chunked-uploads";
+
+    @Value("${cloudvault.storage.local.root:./data/objects}")
+    private Path root;
+
+    // Links stored for uploaded files point back at this service's download endpoint
+    @Value("${cloudvault.storage.local.public-url:http://localhost:8080/api/s3/download/}")
+    private String publicUrl;
+
+    @PostConstruct
+    void init() throws IOException {
+        root = root.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        log.info("Storing objects under {}", root);
+    }
+
+    @Override
+    public String uploadFile(InputStreamSource content, long size, String key, String contentType,
+                             String contentEncoding) throws IOException {
+        store(key, contentType, contentEncoding, out -> {
+            try (ReadableByteChannel in = Channels.newChannel(content.getInputStream())) {
+                for (long position = 0; position < size; ) {
+                    long n = out.transferFrom(in, position, size - position);
+                    if (n == 0) {
+                        throw new EOFException("Upload stream ended after " + position + " of " + size + " bytes");
+                    }
+                    position += n;
+                }
+            }
+        });
+        return getUrl(key);
+    }
+
+    @Override
+    public void uploadBytes(String key, byte[] content, String contentType) throws IOException {
+        store(key, contentType, null, out -> {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        });
+    }
+
+    private interface Writer {
+        void write(FileChannel out) throws IOException;
+    }
+
+    private void store(String key, String contentType, String contentEncoding, Writer writer) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writer.write(out);
+                // Acknowledge only durable writes, like S3 does
+                out.force(true);
+            }
+            writeContentType(temp, contentType);
+            if (contentEncoding != null) {
+                writeContentEncoding(temp, contentEncoding);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    // Chunks are written in place into one staging file, which is renamed into place once complete
+    @Override
+    public String startChunkedUpload(String key, String contentType) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Path staging = staging(uploadId);
+        Files.createDirectories(staging.getParent());
+        Files.createFile(staging);
+        writeContentType(staging, contentType);
+        return uploadId;
+    }
+
+    @Override
+    public String uploadChunk(String key, String uploadId, int index, long offset, InputStreamSource content,
+                              long size) throws IOException {
+        Path staging = staging(uploadId);
+        FileChannel out;
+        try {
+            // No CREATE, a chunk for an aborted upload must not bring its file back
+            out = FileChannel.open(staging, StandardOpenOption.WRITE);
+        } catch (NoSuchFileException e) {
+            throw new StorageObjectNotFoundException(uploadId);
+        }
+        try (out; ReadableByteChannel in = Channels.newChannel(content.getInputStream())) {
+            for (long written = 0; written < size; ) {
+                long n = out.transferFrom(in, offset + written, size - written);
+                if (n == 0) {
+                    throw new EOFException("Chunk ended after " + written + " of " + size + " bytes");
+                }
+                written += n;
+            }
+            out.force(false);
+        }
+        return "";
+    }
+
+    @Override
+    public void completeChunkedUpload(String key, String uploadId, List<String> chunkTags) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path staging = staging(uploadId);
+        try (FileChannel out = FileChannel.open(staging, StandardOpenOption.WRITE)) {
+            out.force(true);
+        } catch (NoSuchFileException e) {
+            throw new StorageObjectNotFoundException(uploadId);
+        }
+        Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void abortChunkedUpload(String key, String uploadId) {
+        try {
+            Files.deleteIfExists(staging(uploadId));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Upload ids are generated here, but still checked since they come back from the database
+    private Path staging(String uploadId) {
+        return root.resolve(CHUNKED_UPLOADS_DIR).resolve(UUID.fromString(uploadId).toString());
+    }
+
+    @Override
+    public String getUrl(String key) {
+        return publicUrl + UriUtils.encodePath(key, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public StoredObject downloadFile(String key, String range, String ifRange) throws IOException {
+        Path path = resolve(key);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new StorageObjectNotFoundException(key);
+        }
+        try {
+            CacheValidator validator = validator(path, channel.size());
+            return StoredObject.ofFile(channel, readContentType(path), readAttribute(path, CONTENT_ENCODING_ATTRIBUTE),
+                    validator.eTag(), validator.lastModified(), range, ifRange);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public CacheValidator validator(String key) throws IOException {
+        Path path = resolve(key);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new StorageObjectNotFoundException(key);
+        }
+        return validator(path, attributes.size());
+    }
+
+    // HTTP dates have second precision, so the validators do too
+    private static CacheValidator validator(Path path, long size) throws IOException {
+        Instant lastModified = Files.getLastModifiedTime(path).toInstant().truncatedTo(ChronoUnit.SECONDS);
+        String eTag = "\"" + Long.toHexString(lastModified.getEpochSecond()) + "-" + Long.toHexString(size) + "\"";
+        return new CacheValidator(eTag, lastModified);
+    }
+
+    @Override
+    public void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Keys come from clients on the download path, so anything escaping the root is treated as missing
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new StorageObjectNotFoundException(key);
+        }
+        return path;
+    }
+
+    private static void writeContentType(Path path, String contentType) {
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        try {
+            view.write(CONTENT_TYPE_ATTRIBUTE, StandardCharsets.UTF_8.encode(contentType));
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Cannot store content type on {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static void writeContentEncoding(Path path, String contentEncoding) {
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        try {
+            view.write(CONTENT_ENCODING_ATTRIBUTE, StandardCharsets.UTF_8.encode(contentEncoding));
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Cannot store content encoding on {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static String readContentType(Path path) throws IOException {
+        String contentType = readAttribute(path, CONTENT_TYPE_ATTRIBUTE);
+        // No attribute on this file, fall back to a guess from the name
+        return contentType != null ? contentType : Files.probeContentType(path);
+    }
+
+    private static String readAttribute(Path path, String name) {
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+        if (view == null) {
+            return null;
+        }
+        try {
+            ByteBuffer value = ByteBuffer.allocate(view.size(name));
+            view.read(name, value);
+            return StandardCharsets.UTF_8.decode(value.flip()).toString();
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
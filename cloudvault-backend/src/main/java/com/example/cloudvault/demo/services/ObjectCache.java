@@ -0,0 +1,300 @@
+package com.example.cloudvault.demo.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through disk cache in front of the storage backend for hot objects.
+ * <p>
+ * Whole objects are kept as files under {@code cloudvault.cache.directory}, and Caffeine's W-TinyLFU
+ * policy decides which of them stay within the byte budget, so a burst of one-off downloads does not
+ * flush the popular ones. A miss, ranged or not, is streamed straight from the backend and never waits
+ * for the copy: the object is fetched into the cache on a separate pool of fill threads, once per key
+ * however many misses race for it.
+ */
+@Slf4j
+@Service
+public class ObjectCache {
+
+    private static final int KB = 1024;
+    private static final String FILE_PREFIX = "obj-";
+    private static final String FILE_SUFFIX = ".cache";
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Value("${cloudvault.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cloudvault.cache.directory:${java.io.tmpdir}/cloudvault-cache}")
+    private Path directory;
+
+    @Value("${cloudvault.cache.max-size:2GB}")
+    private DataSize maxSize;
+
+    // Larger objects are always streamed from the backend
+    @Value("${cloudvault.cache.max-object-size:256MB}")
+    private DataSize maxObjectSize;
+
+    @Value("${cloudvault.cache.fill-threads:4}")
+    private int fillThreads;
+
+    // Misses beyond this many queued fills are still served, just not cached this time
+    @Value("${cloudvault.cache.fill-queue-capacity:256}")
+    private int fillQueueCapacity;
+
+    private ThreadPoolExecutor fillExecutor;
+
+    // Weights are KB so budgets beyond 2GB and objects beyond 2GB both fit in an int
+    private AsyncCache<String, CachedObject> cache;
+
+    // Keys already seen to be too large, so they are not opened in full again just to find out
+    private Cache<String, Boolean> oversized;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong bypassed = new AtomicLong();
+
+    @PostConstruct
+    void init() throws IOException {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(Math.max(1, maxSize.toBytes() / KB))
+                .weigher((String key, CachedObject object) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1, (object.size() + KB - 1) / KB)))
+                .removalListener((String key, CachedObject object, RemovalCause cause) -> {
+                    if (object != null) {
+                        deleteQuietly(object.file());
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        oversized = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofHours(1))
+                .build();
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "cache-fill-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        int threads = Math.max(1, fillThreads);
+        fillExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, fillQueueCapacity)), factory);
+        directory = directory.toAbsolutePath().normalize();
+        Files.createDirectories(directory);
+        // The index lives in memory only, so files left by a previous run are not accounted for
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path leftover : leftovers) {
+                deleteQuietly(leftover);
+            }
+        }
+        log.info("Caching up to {} of objects under {}", maxSize, directory);
+    }
+
+    // Fills are interrupted, and given a moment to remove their partial files
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (fillExecutor != null) {
+            fillExecutor.shutdownNow();
+            fillExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Same contract as {@link StorageBackend#downloadFile}, served from the local copy when there is one.
+     */
+    public StoredObject downloadFile(String key, String range, String ifRange) throws IOException {
+        if (!enabled || oversized.getIfPresent(key) != null) {
+            bypassed.incrementAndGet();
+            return storageBackend.downloadFile(key, range, ifRange);
+        }
+        CachedObject cached = cached(key);
+        if (cached != null) {
+            try {
+                StoredObject object = cached.open(range, ifRange);
+                hits.incrementAndGet();
+                return object;
+            } catch (NoSuchFileException e) {
+                // Evicted between the lookup and the open
+            }
+        }
+        misses.incrementAndGet();
+        StoredObject object = storageBackend.downloadFile(key, range, ifRange);
+        fillLater(key, totalSize(object));
+        return object;
+    }
+
+    /**
+     * Same contract as {@link StorageBackend#validator}; free for a cached object, a metadata request otherwise.
+     */
+    public CacheValidator validator(String key) throws IOException {
+        CachedObject cached = enabled ? cached(key) : null;
+        if (cached != null) {
+            return new CacheValidator(cached.eTag(), cached.lastModified());
+        }
+        return storageBackend.validator(key);
+    }
+
+    public void invalidate(String key) {
+        cache.synchronous().invalidate(key);
+        oversized.invalidate(key);
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.synchronous().stats();
+        long weightedKb = cache.synchronous().policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("hits", hitCount);
+        result.put("misses", missCount);
+        result.put("hitRate", hitCount + missCount == 0 ? 1.0 : (double) hitCount / (hitCount + missCount));
+        result.put("evictions", stats.evictionCount());
+        result.put("evictedBytes", stats.evictionWeight() * KB);
+        result.put("loadFailures", loadFailures.get());
+        result.put("bypassed", bypassed.get());
+        result.put("entries", cache.synchronous().estimatedSize());
+        result.put("sizeBytes", weightedKb * KB);
+        result.put("maxSizeBytes", maxSize.toBytes());
+        return result;
+    }
+
+    // Only a finished fill counts, a miss does not wait for one that is still copying
+    private CachedObject cached(String key) {
+        CompletableFuture<CachedObject> future = cache.asMap().get(key);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        return future.join();
+    }
+
+    // The object's full size from a whole or ranged response, -1 when the backend did not say
+    private static long totalSize(StoredObject object) {
+        if (object.contentRange() == null) {
+            return object.contentLength();
+        }
+        String total = object.contentRange().substring(object.contentRange().lastIndexOf('/') + 1);
+        try {
+            return Long.parseLong(total);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Claims the key with an unfinished future, so racing misses start one fill between them
+    private void fillLater(String key, long size) {
+        if (size < 0) {
+            return;
+        }
+        if (size > maxObjectSize.toBytes()) {
+            oversized.put(key, Boolean.TRUE);
+            return;
+        }
+        CompletableFuture<CachedObject> created = new CompletableFuture<>();
+        if (cache.asMap().putIfAbsent(key, created) != null) {
+            return;
+        }
+        try {
+            fillExecutor.execute(() -> fill(key, created));
+        } catch (RejectedExecutionException e) {
+            cache.asMap().remove(key, created);
+            created.complete(null);
+        }
+    }
+
+    private void fill(String key, CompletableFuture<CachedObject> created) {
+        CachedObject loaded;
+        try {
+            loaded = load(key);
+        } catch (IOException | RuntimeException e) {
+            loadFailures.incrementAndGet();
+            log.debug("Could not cache {}: {}", key, e.getMessage());
+            cache.asMap().remove(key, created);
+            created.completeExceptionally(e);
+            return;
+        }
+        // A null result drops the entry
+        created.complete(loaded);
+        if (loaded != null && cache.asMap().get(key) != created) {
+            // Invalidated by a delete while loading, don't leave the copy behind
+            deleteQuietly(loaded.file());
+        }
+    }
+
+    // Null when the object turned out to be too large to cache
+    private CachedObject load(String key) throws IOException {
+        Path file = Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+        try (StoredObject object = storageBackend.downloadToFile(key, file, maxObjectSize.toBytes())) {
+            if (object == null) {
+                deleteQuietly(file);
+                oversized.put(key, Boolean.TRUE);
+                return null;
+            }
+            return new CachedObject(file, object.contentLength(), object.contentType(),
+                    object.contentEncoding(), object.eTag(), object.lastModified());
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete cached object {}: {}", file, e.getMessage());
+        }
+    }
+
+    // Validators are the backend's own, so If-Range behaves the same on hits and misses
+    private record CachedObject(Path file, long size, String contentType, String contentEncoding, String eTag,
+                                Instant lastModified) {
+
+        StoredObject open(String range, String ifRange) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                return StoredObject.ofFile(channel, contentType, contentEncoding, eTag, lastModified, range, ifRange);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+}
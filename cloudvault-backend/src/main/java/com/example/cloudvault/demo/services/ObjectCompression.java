@@ -0,0 +1,137 @@
+package com.example.cloudvault.demo.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compresses compressible uploads on their way to storage. Whether a file is a candidate goes by its
+ * content type and size; the compressed copy is written to a temporary file first, because storage
+ * needs the length up front and because it is only kept when it saves at least {@code min-saving}.
+ * The codec is recorded as the object's content encoding, so downloads know to decode it.
+ * <ul>
+ *     <li>{@code cloudvault.compression.bytes} - bytes of candidate uploads, tagged {@code stage} raw or stored</li>
+ *     <li>{@code cloudvault.compression.objects} - candidate uploads, tagged {@code outcome}</li>
+ * </ul>
+ */
+@Slf4j
+@Service
+public class ObjectCompression {
+
+    private static final String TEMP_PREFIX = "cloudvault-compression-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${cloudvault.compression.enabled:false}")
+    private boolean enabled;
+
+    // gzip or zstd
+    @Value("${cloudvault.compression.codec:gzip}")
+    private String codecName;
+
+    // 0 means the codec's default, 6 for gzip and 3 for zstd
+    @Value("${cloudvault.compression.level:0}")
+    private int level;
+
+    // Already compressed formats (images, video, archives) only cost CPU, so the list is opt-in
+    @Value("${cloudvault.compression.content-types:text/*,application/json,application/xml,application/javascript,application/x-ndjson,image/svg+xml}")
+    private String[] contentTypes;
+
+    @Value("${cloudvault.compression.min-size:1KB}")
+    private DataSize minSize;
+
+    // Fraction of the size the compressed copy has to save to be stored instead of the original
+    @Value("${cloudvault.compression.min-saving:0.1}")
+    private double minSaving;
+
+    private ContentCodec codec;
+    private final List<MimeType> compressible = new ArrayList<>();
+
+    private Counter rawBytes;
+    private Counter storedBytes;
+    private Counter compressed;
+    private Counter incompressible;
+
+    @PostConstruct
+    void init() {
+        codec = ContentCodec.forEncoding(codecName);
+        for (String contentType : contentTypes) {
+            if (!contentType.isBlank()) {
+                compressible.add(MimeType.valueOf(contentType.trim()));
+            }
+        }
+        rawBytes = Counter.builder("cloudvault.compression.bytes").tag("stage", "raw").register(meterRegistry);
+        storedBytes = Counter.builder("cloudvault.compression.bytes").tag("stage", "stored").register(meterRegistry);
+        compressed = Counter.builder("cloudvault.compression.objects").tag("outcome", "compressed").register(meterRegistry);
+        incompressible = Counter.builder("cloudvault.compression.objects").tag("outcome", "incompressible").register(meterRegistry);
+    }
+
+    /**
+     * Stores the file under {@code key}, compressed when it is worth it.
+     *
+     * @return the content encoding the object was stored with, null when it was stored as uploaded
+     */
+    public String upload(MultipartFile file, String key, String contentType) throws IOException {
+        if (!isCandidate(contentType, file.getSize())) {
+            storageBackend.uploadFile(file, key);
+            return null;
+        }
+        Path temp = Files.createTempFile(TEMP_PREFIX, TEMP_SUFFIX);
+        try {
+            try (InputStream in = file.getInputStream();
+                 OutputStream out = codec.encode(Files.newOutputStream(temp), level)) {
+                in.transferTo(out);
+            }
+            long size = Files.size(temp);
+            rawBytes.increment(file.getSize());
+            if (size > file.getSize() * (1 - minSaving)) {
+                incompressible.increment();
+                storedBytes.increment(file.getSize());
+                log.debug("Storing {} as uploaded, {} compresses only to {} bytes", key, file.getSize(), size);
+                storageBackend.uploadFile(file, key);
+                return null;
+            }
+            compressed.increment();
+            storedBytes.increment(size);
+            storageBackend.uploadFile(new FileSystemResource(temp), size, key, contentType, codec.encoding());
+            return codec.encoding();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public boolean isCandidate(String contentType, long size) {
+        if (!enabled || codec == null || size < minSize.toBytes() || contentType == null) {
+            return false;
+        }
+        MimeType type;
+        try {
+            type = MimeType.valueOf(contentType);
+        } catch (InvalidMimeTypeException e) {
+            return false;
+        }
+        return compressible.stream().anyMatch(candidate -> candidate.includes(type));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.config.RabbitConfig;
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable RabbitMQ queue shared by every node. Retries and dead-lettering are set up in RabbitConfig;
+ * dead-lettered events are kept in the {@value RabbitConfig#DEAD_LETTER_QUEUE} queue.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "cloudvault.processing.transport", havingValue = "rabbit")
+public class RabbitUploadQueue implements UploadQueue {
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private UploadProcessor uploadProcessor;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong publishFailures = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+
+    @Override
+    public void submit(UploadCompletedEvent event) {
+        try {
+            rabbitTemplate.convertAndSend(RabbitConfig.UPLOADS_EXCHANGE, RabbitConfig.PROCESS_ROUTING_KEY, event);
+            published.incrementAndGet();
+        } catch (AmqpException e) {
+            // The upload itself already succeeded, the file just stays unprocessed
+            publishFailures.incrementAndGet();
+            log.warn("Could not publish processing event for file {}: {}", event.fileId(), e.getMessage());
+        }
+    }
+
+    @RabbitListener(queues = RabbitConfig.PROCESS_QUEUE, containerFactory = RabbitConfig.LISTENER_CONTAINER_FACTORY)
+    public void onUploadCompleted(UploadCompletedEvent event) throws IOException {
+        uploadProcessor.process(event);
+        processed.incrementAndGet();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("transport", "rabbit");
+        result.put("published", published.get());
+        result.put("publishFailures", publishFailures.get());
+        result.put("processed", processed.get());
+        return result;
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.cloudvault.demo.services;
+
+public class RangeNotSatisfiableException extends RuntimeException {
+
+    public RangeNotSatisfiableException(String range) {
+        super("Range not satisfiable: " + range);
+    }
+}
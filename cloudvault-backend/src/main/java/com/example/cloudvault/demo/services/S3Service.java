@@ -1,23 +1,56 @@
 package com.example.cloudvault.demo.services;
 
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.ResponseBytes;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ChecksumMode;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.GetUrlRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 
 import java.io.IOException;
-import java.util.Objects;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
+@Slf4j
 @Service
-public class S3Service {
+@ConditionalOnProperty(name = "cloudvault.storage.backend", havingValue = "s3", matchIfMissing = true)
+public class S3Service implements StorageBackend {
+
+    // Most keys a single DeleteObjects request accepts
+    private static final int DELETE_BATCH_SIZE = 1000;
 
     @Autowired
     private S3Client s3Client;
@@ -25,34 +58,269 @@ public class S3Service {
     @Value("${aws.bucket.name}")
     private String bucketName;
 
-    public String uploadFile(MultipartFile file) throws IOException {
+    @Autowired
+    private S3TransferEngine transferEngine;
+
+    @Autowired
+    private S3Presigner s3Presigner;
+
+    @Autowired
+    private StorageMetrics storageMetrics;
+
+    // Lifetime of presigned upload/download URLs handed to clients
+    @Value("${cloudvault.presign.ttl:15m}")
+    private Duration presignTtl;
 
-        String contentType = Objects.requireNonNullElse(file.getContentType(), "application/octet-stream");
+    // Files above this size go through a parallel multipart upload instead of a single PUT
+    @Value("${cloudvault.upload.multipart-threshold:16MB}")
+    private DataSize multipartThreshold;
 
-        // Upload file with correct content-type and public-read ACL
-        s3Client.putObject(
+    @Override
+    public String uploadFile(InputStreamSource content, long size, String key, String contentType,
+                             String contentEncoding) throws IOException {
+        // The multipart part (or compressed copy) is already spooled to disk, so stream it
+        // from there instead of copying the whole file onto the heap
+        if (size > multipartThreshold.toBytes()) {
+            storageMetrics.upload("multipart_upload", size, () -> {
+                try (InputStream in = content.getInputStream()) {
+                    transferEngine.upload(key, contentType, contentEncoding, size, in);
+                }
+                return null;
+            });
+        } else {
+            // Upload file with correct content-type and public-read ACL
+            storageMetrics.upload("put", size, () -> s3Client.putObject(
+                    PutObjectRequest.builder()
+                            .bucket(bucketName) // bucket name
+                            .key(key) // name of the file in s3 bucket
+                            .contentType(contentType) // important for browser display
+                            .contentEncoding(contentEncoding)
+                            .contentLength(size)
+                            .build(),
+                    RequestBody.fromContentProvider(() -> openStream(content), size, contentType)));
+        }
+        return getUrl(key);
+    }
+
+    @Override
+    public void uploadBytes(String key, byte[] content, String contentType) {
+        storageMetrics.upload("put_bytes", content.length, () -> s3Client.putObject(
                 PutObjectRequest.builder()
-                        .bucket(bucketName) // bucket name
-                        .key(file.getOriginalFilename()) // name of the file in s3 bucket
-                        .contentType(contentType) // important for browser display
+                        .bucket(bucketName)
+                        .key(key)
+                        .contentType(contentType)
+                        .contentLength((long) content.length)
                         .build(),
-                RequestBody.fromBytes(file.getBytes()));
-        GetUrlRequest request = GetUrlRequest.builder().bucket(bucketName).key(file.getOriginalFilename()).build();
-        String url = s3Client.utilities().getUrl(request).toExternalForm();
-     return url;
+                RequestBody.fromBytes(content)));
+    }
+
+    // Chunks are the parts of a multipart upload, so S3 takes them in any order and assembles them itself
+    @Override
+    public String startChunkedUpload(String key, String contentType) {
+        return storageMetrics.observe("create_multipart", () -> s3Client.createMultipartUpload(builder -> builder
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build()).uploadId());
     }
 
-    public byte[] downloadFile(String key) {
-        ResponseBytes<GetObjectResponse> objectAsBytes =
-                s3Client.getObjectAsBytes(GetObjectRequest.builder()
+    @Override
+    public String uploadChunk(String key, String uploadId, int index, long offset, InputStreamSource content,
+                              long size) {
+        return storageMetrics.upload("upload_part", size, () -> s3Client.uploadPart(builder -> builder
                         .bucket(bucketName)
                         .key(key)
-                        .build());
-        return objectAsBytes.asByteArray();
+                        .uploadId(uploadId)
+                        .partNumber(index + 1)
+                        .contentLength(size)
+                        .build(),
+                RequestBody.fromContentProvider(() -> openStream(content), size, "application/octet-stream"))).eTag();
+    }
+
+    @Override
+    public void completeChunkedUpload(String key, String uploadId, List<String> chunkTags) {
+        List<CompletedPart> parts = new ArrayList<>(chunkTags.size());
+        for (int i = 0; i < chunkTags.size(); i++) {
+            parts.add(CompletedPart.builder().partNumber(i + 1).eTag(chunkTags.get(i)).build());
+        }
+        storageMetrics.observe("complete_multipart", () -> s3Client.completeMultipartUpload(builder -> builder
+                .bucket(bucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .multipartUpload(upload -> upload.parts(parts))
+                .build()));
+    }
+
+    @Override
+    public void abortChunkedUpload(String key, String uploadId) {
+        try {
+            storageMetrics.observe("abort_multipart", () -> s3Client.abortMultipartUpload(builder -> builder
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build()));
+        } catch (NoSuchUploadException e) {
+            // Completed or aborted already
+        }
+    }
+
+    @Override
+    public String getUrl(String key) {
+        GetUrlRequest request = GetUrlRequest.builder().bucket(bucketName).key(key).build();
+        return s3Client.utilities().getUrl(request).toExternalForm();
+    }
+
+    /**
+     * Short-lived URL the client can PUT the object to directly, bypassing this service.
+     * The SHA-256 is a signed header, so S3 rejects any body that doesn't match it.
+     */
+    public PresignedPutObjectRequest presignUpload(String key, String contentType, String sha256Base64) {
+        return storageMetrics.observe("presign_upload", () -> s3Presigner.presignPutObject(builder -> builder
+                .signatureDuration(presignTtl)
+                .putObjectRequest(put -> put.bucket(bucketName).key(key).contentType(contentType)
+                        .checksumSHA256(sha256Base64))));
+    }
+
+    public PresignedGetObjectRequest presignDownload(String key, String fileName) {
+        return storageMetrics.observe("presign_download", () -> s3Presigner.presignGetObject(builder -> builder
+                .signatureDuration(presignTtl)
+                .getObjectRequest(get -> get.bucket(bucketName).key(key)
+                        .responseContentDisposition("attachment; filename=\"" + fileName.replace("\"", "") + "\""))));
+    }
+
+    // Metadata only (including the stored checksum), used to confirm a direct upload actually landed
+    public HeadObjectResponse headFile(String key) {
+        return storageMetrics.observe("head", () ->
+                s3Client.headObject(builder -> builder.bucket(bucketName).key(key).checksumMode(ChecksumMode.ENABLED).build()));
+    }
+
+    // Re-opened on every attempt, so a retried PUT never needs a buffered copy
+    private static InputStream openStream(InputStreamSource content) {
+        try {
+            return content.getInputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Timed until the response headers arrive; the bytes are metered as the caller streams them
+    @Override
+    public StoredObject downloadFile(String key, String range, String ifRange) {
+        return storageMetrics.observe("get", () -> openObject(key, range, ifRange));
+    }
+
+    // Objects above the multipart threshold come down as parallel ranged GETs, like they went up
+    @Override
+    public StoredObject downloadToFile(String key, Path target, long maxSize) throws IOException {
+        HeadObjectResponse head = storageMetrics.observe("head", () -> {
+            try {
+                return s3Client.headObject(builder -> builder.bucket(bucketName).key(key));
+            } catch (NoSuchKeyException e) {
+                throw new StorageObjectNotFoundException(key);
+            }
+        });
+        if (head.contentLength() > maxSize) {
+            return null;
+        }
+        if (head.contentLength() <= multipartThreshold.toBytes()) {
+            return StorageBackend.super.downloadToFile(key, target, maxSize);
+        }
+        storageMetrics.observe("parallel_get", () -> {
+            transferEngine.downloadToFile(key, head.eTag(), head.contentLength(), target);
+            return null;
+        });
+        return StoredObject.ofFile(FileChannel.open(target, StandardOpenOption.READ), head.contentType(),
+                head.contentEncoding(), head.eTag(), head.lastModified(), null, null);
+    }
+
+    @Override
+    public CacheValidator validator(String key) {
+        return storageMetrics.observe("head", () -> {
+            try {
+                HeadObjectResponse head = s3Client.headObject(builder -> builder.bucket(bucketName).key(key));
+                return new CacheValidator(head.eTag(), head.lastModified());
+            } catch (NoSuchKeyException e) {
+                throw new StorageObjectNotFoundException(key);
+            }
+        });
+    }
+
+    private StoredObject openObject(String key, String range, String ifRange) {
+        ResponseInputStream<GetObjectResponse> object;
+        try {
+            object = getObject(key, range, ifRange);
+        } catch (NoSuchKeyException e) {
+            throw new StorageObjectNotFoundException(key);
+        } catch (S3Exception e) {
+            if (e.statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                throw new RangeNotSatisfiableException(range);
+            }
+            throw e;
+        }
+        GetObjectResponse metadata = object.response();
+        return new StoredObject(metadata.contentLength(), metadata.contentType(), metadata.eTag(),
+                metadata.lastModified(), metadata.contentRange(), metadata.contentEncoding(),
+                StoredObject.Content.of(storageMetrics.download(object)));
+    }
+
+    // A single byte range is passed straight through to S3
+    private ResponseInputStream<GetObjectResponse> getObject(String key, String range, String ifRange) {
+        GetObjectRequest.Builder request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key);
+        if (range == null) {
+            return s3Client.getObject(request.build());
+        }
+        if (ifRange == null) {
+            return s3Client.getObject(request.range(range).build());
+        }
+        if (ifRange.startsWith("W/")) {
+            // If-Range needs a strong validator, a weak one never matches
+            return s3Client.getObject(request.build());
+        }
+        try {
+            // Let S3 evaluate the validator on the ranged GET itself instead of a separate HEAD
+            if (ifRange.startsWith("\"")) {
+                request.ifMatch(ifRange);
+            } else {
+                request.ifUnmodifiedSince(ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            }
+            return s3Client.getObject(request.range(range).build());
+        } catch (DateTimeParseException e) {
+            return s3Client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key).build());
+        } catch (S3Exception e) {
+            if (e.statusCode() != HttpStatus.PRECONDITION_FAILED.value()) {
+                throw e;
+            }
+            // Object changed since the client's copy, so send it in full
+            return s3Client.getObject(GetObjectRequest.builder().bucket(bucketName).key(key).build());
+        }
     }
 
     //delete File
+    @Override
     public void deleteFile(String key) {
-        s3Client.deleteObject(builder -> builder.bucket(bucketName).key(key).build());
+        storageMetrics.observe("delete", () -> s3Client.deleteObject(builder -> builder.bucket(bucketName).key(key).build()));
+    }
+
+    @Override
+    public List<String> deleteFiles(Collection<String> keys) {
+        List<ObjectIdentifier> objects = keys.stream()
+                .map(key -> ObjectIdentifier.builder().key(key).build())
+                .toList();
+        List<String> failed = new ArrayList<>();
+        for (int from = 0; from < objects.size(); from += DELETE_BATCH_SIZE) {
+            List<ObjectIdentifier> batch = objects.subList(from, Math.min(from + DELETE_BATCH_SIZE, objects.size()));
+            // Quiet mode, the response only lists the keys that failed
+            DeleteObjectsResponse response = storageMetrics.observe("delete_batch", () -> s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(bucketName)
+                    .delete(Delete.builder().objects(batch).quiet(true).build())
+                    .build()));
+            response.errors().forEach(error -> {
+                log.warn("Could not delete {}: {} {}", error.key(), error.code(), error.message());
+                failed.add(error.key());
+            });
+        }
+        return failed;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,238 @@
+package com.example.cloudvault.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.FileTransformerConfiguration;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moves large objects to and from S3 as parallel multipart uploads and ranged GETs.
+ * <p>
+ * Each transfer runs at most {@code concurrency-per-transfer} parts at once, and all transfers share
+ * a fair, global budget of in-flight bytes. A single large file can fill the uplink on its own, but
+ * once the budget is exhausted other users' parts queue in arrival order instead of being starved.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "cloudvault.storage.backend", havingValue = "s3", matchIfMissing = true)
+public class S3TransferEngine {
+
+    private static final int KB = 1024;
+
+    @Autowired
+    private S3AsyncClient s3AsyncClient;
+
+    @Value("${aws.bucket.name}")
+    private String bucketName;
+
+    @Value("${cloudvault.transfer.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${cloudvault.transfer.concurrency-per-transfer:8}")
+    private int concurrencyPerTransfer;
+
+    @Value("${cloudvault.transfer.max-in-flight:256MB}")
+    private DataSize maxInFlight;
+
+    // Permits are KB so a multi-GB budget still fits in an int
+    private Semaphore inFlightBudget;
+    private int budgetPermits;
+
+    // Part-sized buffers of finished parts, reused by later parts. A buffer is only taken once its part
+    // holds budget, so there are never more than max-in-flight / part-size of them
+    private final Queue<byte[]> partBuffers = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    void init() {
+        budgetPermits = (int) Math.max(1, maxInFlight.toBytes() / KB);
+        inFlightBudget = new Semaphore(budgetPermits, true);
+    }
+
+    /**
+     * Uploads {@code size} bytes read sequentially from {@code in} as a multipart upload whose parts
+     * are sent in parallel. Part buffers are only held while their part is in flight and then go back
+     * to a pool shared by all uploads.
+     */
+    public void upload(String key, String contentType, String contentEncoding, long size, InputStream in)
+            throws IOException {
+        String uploadId = s3AsyncClient.createMultipartUpload(builder -> builder
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentEncoding(contentEncoding)
+                .build()).join().uploadId();
+
+        long partBytes = partSize.toBytes();
+        Semaphore transferSlots = new Semaphore(concurrencyPerTransfer);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            for (long offset = 0; offset < size && failure.get() == null; offset += partBytes, partNumber++) {
+                int length = (int) Math.min(partBytes, size - offset);
+                int permits = acquire(transferSlots, length);
+                byte[] buffer = takeBuffer(partBytes);
+                int read;
+                try {
+                    read = in.readNBytes(buffer, 0, length);
+                } catch (IOException | RuntimeException e) {
+                    partBuffers.offer(buffer);
+                    release(transferSlots, permits);
+                    throw e;
+                }
+                if (read != length) {
+                    partBuffers.offer(buffer);
+                    release(transferSlots, permits);
+                    throw new IOException("Upload stream ended after " + (offset + read) + " of " + size + " bytes");
+                }
+                int currentPart = partNumber;
+                parts.add(s3AsyncClient.uploadPart(builder -> builder
+                                        .bucket(bucketName)
+                                        .key(key)
+                                        .uploadId(uploadId)
+                                        .partNumber(currentPart)
+                                        .contentLength((long) length)
+                                        .build(),
+                                AsyncRequestBody.fromByteBufferUnsafe(ByteBuffer.wrap(buffer, 0, length)))
+                        .thenApply(response -> CompletedPart.builder().partNumber(currentPart).eTag(response.eTag()).build())
+                        .whenComplete((part, error) -> {
+                            // The SDK is done with the body once the part has completed, even if it retried
+                            partBuffers.offer(buffer);
+                            release(transferSlots, permits);
+                            if (error != null) {
+                                failure.compareAndSet(null, error);
+                            }
+                        }));
+            }
+            List<CompletedPart> completedParts = joinAll(parts);
+            s3AsyncClient.completeMultipartUpload(builder -> builder
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(upload -> upload.parts(completedParts))
+                    .build()).join();
+            log.info("Uploaded {} in {} parallel parts", key, completedParts.size());
+        } catch (IOException | RuntimeException e) {
+            // Wait for in-flight parts so nothing lands after the abort, then drop the upload
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+            s3AsyncClient.abortMultipartUpload(builder -> builder.bucket(bucketName).key(key).uploadId(uploadId).build());
+            if (e instanceof RuntimeException runtime) {
+                throw unwrap(runtime);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads the {@code size} bytes of the object to {@code target} with parallel ranged GETs, each
+     * written straight to its position in the file. Every range is pinned to {@code eTag} so a concurrent
+     * overwrite fails the download instead of mixing two versions.
+     */
+    public void downloadToFile(String key, String eTag, long size, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Sized up front so positional writes from different ranges never race on growing the file
+            if (size > 0) {
+                channel.position(size - 1).write(ByteBuffer.wrap(new byte[1]));
+            }
+        }
+
+        long partBytes = partSize.toBytes();
+        Semaphore transferSlots = new Semaphore(concurrencyPerTransfer);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<?>> ranges = new ArrayList<>();
+        try {
+            for (long offset = 0; offset < size && failure.get() == null; offset += partBytes) {
+                long length = Math.min(partBytes, size - offset);
+                int permits = acquire(transferSlots, length);
+                String range = "bytes=" + offset + "-" + (offset + length - 1);
+                FileTransformerConfiguration position = FileTransformerConfiguration.builder()
+                        .fileWriteOption(FileTransformerConfiguration.FileWriteOption.WRITE_TO_POSITION)
+                        .position(offset)
+                        .failureBehavior(FileTransformerConfiguration.FailureBehavior.LEAVE)
+                        .build();
+                ranges.add(s3AsyncClient.getObject(builder -> builder
+                                        .bucket(bucketName)
+                                        .key(key)
+                                        .range(range)
+                                        .ifMatch(eTag)
+                                        .build(),
+                                AsyncResponseTransformer.toFile(target, position))
+                        .whenComplete((response, error) -> {
+                            release(transferSlots, permits);
+                            if (error != null) {
+                                failure.compareAndSet(null, error);
+                            }
+                        }));
+            }
+            joinAll(ranges);
+        } catch (RuntimeException e) {
+            CompletableFuture.allOf(ranges.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+            throw unwrap(e);
+        }
+    }
+
+    // Takes a per-transfer slot first, then the shared byte budget, so a transfer never
+    // holds budget it cannot use yet
+    private int acquire(Semaphore transferSlots, long bytes) {
+        int permits = (int) Math.min(budgetPermits, Math.max(1, (bytes + KB - 1) / KB));
+        try {
+            transferSlots.acquire();
+            try {
+                inFlightBudget.acquire(permits);
+            } catch (InterruptedException e) {
+                transferSlots.release();
+                throw e;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for transfer capacity", e);
+        }
+        return permits;
+    }
+
+    private byte[] takeBuffer(long partBytes) {
+        byte[] buffer = partBuffers.poll();
+        return buffer != null ? buffer : new byte[(int) partBytes];
+    }
+
+    private void release(Semaphore transferSlots, int permits) {
+        inFlightBudget.release(permits);
+        transferSlots.release();
+    }
+
+    private static <T> List<T> joinAll(List<? extends CompletableFuture<? extends T>> futures) {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        return futures.stream().<T>map(CompletableFuture::join).toList();
+    }
+
+    private static RuntimeException unwrap(RuntimeException e) {
+        if (e instanceof CompletionException && e.getCause() instanceof RuntimeException cause) {
+            return cause;
+        }
+        return e;
+    }
+}
@@ -1,14 +1,36 @@
 package com.example.cloudvault.demo.services;
 
+import com.example.cloudvault.demo.entities.FileDeleteResult;
+import com.example.cloudvault.demo.entities.OwnedFile;
+import com.example.cloudvault.demo.entities.SavedFileSummary;
 import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.SavedFilesPage;
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
 import com.example.cloudvault.demo.entities.UserEntity;
 import com.example.cloudvault.demo.repositories.SavedFilesRepository;
 import com.example.cloudvault.demo.repositories.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -20,29 +42,211 @@ public class SavedFilesService {
     @Autowired
     private UserRepository userRepository;
 
-    public SavedFiles saveFile(Long userId, String fileUrl) {
-        UserEntity user = userRepository.findById(userId).orElseThrow(
-                () -> new RuntimeException("User not found")
-        );
-        log.info("Saving file " + fileUrl + " to user " + user.getUsername());
-        SavedFiles savedFile = SavedFiles.builder()
-                .fileLink(fileUrl)
-                .user(user)
-                .build();
-        log.info("Saving file " + savedFile.getFileLink() + " to user " + user.getUsername());
-        return savedFilesRepository.save(savedFile);
+    @Autowired
+    private StoredBlobService storedBlobService;
+
+    @Autowired
+    private FolderService folderService;
+
+    @Autowired
+    private StorageQuotaService storageQuotaService;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${cloudvault.files.page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${cloudvault.files.max-page-size:1000}")
+    private int maxPageSize;
+
+    public SavedFiles saveFile(Long userId, String fileUrl, String fileName, StoredBlob blob) {
+        return saveFile(userId, fileUrl, fileName, blob, FolderService.ROOT);
+    }
+
+    /**
+     * Records the file for the user and counts it against their quota, both in one transaction.
+     * folderPath must be normalized, the folder is created if it does not exist yet.
+     *
+     * @throws QuotaExceededException if the file does not fit, nothing is saved then
+     */
+    public SavedFiles saveFile(Long userId, String fileUrl, String fileName, StoredBlob blob, String folderPath) {
+        // Before the transaction: ensure shrugs off a concurrent insert, which would abort a surrounding one
+        folderService.ensure(userId, folderPath);
+        Long size = blob == null ? null : blob.getSize();
+        return transactionTemplate.execute(status -> {
+            storageQuotaService.charge(userId, size == null ? 0 : size);
+            // Only the foreign key is needed, so take a reference instead of loading the user
+            UserEntity user = userRepository.getReferenceById(userId);
+            LocalDateTime now = LocalDateTime.now();
+            SavedFiles savedFile = SavedFiles.builder()
+                    .fileLink(fileUrl)
+                    .fileName(fileName)
+                    .user(user)
+                    .blob(blob)
+                    .size(size)
+                    .contentType(blob == null ? null : blob.getContentType())
+                    .folderPath(folderPath)
+                    .created_at(now)
+                    .updated_at(now)
+                    .build();
+            log.debug("Saving file {} to user {}", fileUrl, userId);
+            SavedFiles saved = savedFilesRepository.save(savedFile);
+            // Content seen before was already processed, nothing to do for it
+            if (blob != null && blob.getProcessedAt() == null) {
+                eventPublisher.publishEvent(new UploadCompletedEvent(saved.getId(), blob.getId(), blob.getStorageKey()));
+            }
+            return saved;
+        });
     }
 
-    public List<SavedFiles> getFilesByUser(Long userId) {
-        return savedFilesRepository.findByUserUserId(userId);
+    /**
+     * Validator of one listing of the user's files and folders. {@code request} is whatever tells the
+     * listing apart from others, such as the endpoint, folder, cursor and limit. Read it before the
+     * listing: a change in between then only makes the next revalidation miss, never hides the change.
+     */
+    public CacheValidator listingValidator(Long userId, Object... request) {
+        // Folder paths hold no control characters, so joining on one cannot make two requests look alike
+        String listing = Arrays.stream(request).map(String::valueOf).collect(Collectors.joining("\n"));
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        // Short enough for a header, a different page or folder never revalidates against this one
+        String hash = HexFormat.of().formatHex(digest.digest(listing.getBytes(StandardCharsets.UTF_8)), 0, 8);
+        // The user is part of it, a browser shared by two accounts must not revalidate one's listing as the other's
+        return new CacheValidator("\"files-" + userId + "-" + storageQuotaService.filesVersion(userId) + "-" + hash + "\"",
+                null);
     }
 
+    /**
+     * One page of the user's files in id order, starting after the {@code after} cursor.
+     * The limit is clamped to {@code cloudvault.files.max-page-size}.
+     */
+    public SavedFilesPage getFilesByUser(Long userId, Long after, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        // One extra row tells whether another page follows without a count query
+        List<SavedFileSummary> rows = savedFilesRepository.findPageByUser(
+                userId, after == null ? 0L : after, Limit.of(pageSize + 1));
+        if (rows.size() <= pageSize) {
+            return new SavedFilesPage(rows, null);
+        }
+        List<SavedFileSummary> page = rows.subList(0, pageSize);
+        return new SavedFilesPage(page, page.get(pageSize - 1).id());
+    }
+
+
+    /**
+     * One page of the user's files, newest first, starting before the {@code before} cursor.
+     */
+    public SavedFilesPage getRecentFiles(Long userId, Long before, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        List<SavedFileSummary> rows = savedFilesRepository.findRecentByUser(
+                userId, before == null ? Long.MAX_VALUE : before, Limit.of(pageSize + 1));
+        if (rows.size() <= pageSize) {
+            return new SavedFilesPage(rows, null);
+        }
+        List<SavedFileSummary> page = rows.subList(0, pageSize);
+        return new SavedFilesPage(page, page.get(pageSize - 1).id());
+    }
+
+    /**
+     * Renames the file and/or moves it to another folder, creating that folder if needed. Null leaves
+     * a field as it is; the stored object is not touched either way.
+     */
+    public Optional<SavedFiles> updateFile(Long userId, Long id, String fileName, String folderPath) {
+        if (folderPath != null) {
+            if (savedFilesRepository.findOwnedById(id, userId).isEmpty()) {
+                return Optional.empty();
+            }
+            // Before the transaction, for the same reason as in saveFile
+            folderService.ensure(userId, folderPath);
+        }
+        return transactionTemplate.execute(status -> {
+            Optional<SavedFiles> found = savedFilesRepository.findOwnedById(id, userId);
+            found.ifPresent(file -> {
+                storageQuotaService.touch(userId);
+                if (fileName != null) {
+                    file.setFileName(fileName);
+                }
+                if (folderPath != null) {
+                    file.setFolderPath(folderPath);
+                }
+                file.setUpdated_at(LocalDateTime.now());
+            });
+            return found;
+        });
+    }
+
+    // Whether one of the user's own files already has this content
+    public boolean referencesContent(Long userId, String sha256) {
+        return savedFilesRepository.referencesContent(userId, sha256);
+    }
+
+    public Optional<SavedFiles> findUserFile(Long id, Long userId) {
+        return savedFilesRepository.findOwnedWithBlob(id, userId);
+    }
 
-    public void deleteFile(Long id) {
-        savedFilesRepository.deleteById(id);
+    // The user's files among the ids, with their blobs, in the order asked for; unknown ids are skipped
+    public List<SavedFiles> findUserFiles(Long userId, List<Long> ids) {
+        List<Long> requested = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (requested.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, SavedFiles> owned = savedFilesRepository.findOwnedWithBlobs(userId, requested).stream()
+                .collect(Collectors.toMap(SavedFiles::getId, file -> file));
+        return requested.stream().map(owned::get).filter(Objects::nonNull).toList();
     }
 
-    public List<SavedFiles> getAllSavedFilesForUser(Long userId) {
-        return savedFilesRepository.findByUserUserId(userId);
+    /**
+     * Removes the user's file: the row, its share of the usage and its reference on the shared blob, in one
+     * transaction. False when the user has no file with this id.
+     */
+    @Transactional
+    public boolean deleteFile(Long userId, Long id) {
+        SavedFiles file = savedFilesRepository.findOwnedWithBlob(id, userId).orElse(null);
+        if (file == null) {
+            return false;
+        }
+        long size = file.getSize() != null ? file.getSize()
+                : file.getBlob() != null ? file.getBlob().getSize() : 0;
+        storageQuotaService.release(userId, size, 1);
+        savedFilesRepository.delete(file);
+        if (file.getBlob() != null) {
+            storedBlobService.release(file.getBlob().getId());
+        }
+        return true;
+    }
+
+    /**
+     * Deletes those of the given files that belong to the user, with a fixed number of statements
+     * however many ids there are, and reports each id as deleted or not found.
+     */
+    @Transactional
+    public List<FileDeleteResult> deleteFiles(Long userId, List<Long> ids) {
+        List<Long> requested = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (requested.isEmpty()) {
+            return List.of();
+        }
+        List<OwnedFile> owned = savedFilesRepository.findOwned(userId, requested);
+        Set<Long> ownedIds = owned.stream().map(OwnedFile::id).collect(Collectors.toSet());
+
+        // The usage row first, like saveFile, so a reconcile never sees the rows gone but the totals not
+        storageQuotaService.release(userId, owned.stream().mapToLong(OwnedFile::size).sum(), ownedIds.size());
+        savedFilesRepository.deleteAllByIdInBatch(ownedIds);
+        Map<Long, Long> references = owned.stream()
+                .filter(file -> file.blobId() != null)
+                .collect(Collectors.groupingBy(OwnedFile::blobId, Collectors.counting()));
+        storedBlobService.releaseAll(references);
+        log.info("Deleted {} of {} files for user {}", ownedIds.size(), requested.size(), userId);
+
+        return requested.stream()
+                .map(id -> ownedIds.contains(id) ? FileDeleteResult.deleted(id) : FileDeleteResult.notFound(id))
+                .toList();
     }
 }
@@ -0,0 +1,120 @@
+package com.example.cloudvault.demo.services;
+
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Where object bytes live. Selected with {@code cloudvault.storage.backend}: {@code s3} (default)
+ * or {@code local} for a directory on this node.
+ */
+public interface StorageBackend {
+
+    /**
+     * Stores the file under {@code key}, replacing any existing object, and returns its link.
+     */
+    default String uploadFile(MultipartFile file, String key) throws IOException {
+        return uploadFile(file, file.getSize(), key,
+                Objects.requireNonNullElse(file.getContentType(), "application/octet-stream"), null);
+    }
+
+    /**
+     * Stores {@code size} bytes from {@code content} under {@code key}, replacing any existing object,
+     * and returns its link. {@code content} may be opened again when a write is retried.
+     * {@code contentEncoding} is kept with the object and handed back by {@link #downloadFile}; null when
+     * the bytes are stored as uploaded.
+     */
+    String uploadFile(InputStreamSource content, long size, String key, String contentType, String contentEncoding)
+            throws IOException;
+
+    /**
+     * Stores a small generated object, such as a preview, under {@code key}, replacing any existing one.
+     */
+    void uploadBytes(String key, byte[] content, String contentType) throws IOException;
+
+    /**
+     * Starts an object written in chunks, which may arrive in any order and appears under {@code key} only
+     * once {@link #completeChunkedUpload completed}. Returns the id the chunks are written against.
+     */
+    String startChunkedUpload(String key, String contentType) throws IOException;
+
+    /**
+     * Writes chunk {@code index} (from 0), {@code size} bytes at {@code offset} of the object. Writing a
+     * chunk again replaces it. Returns the tag that {@link #completeChunkedUpload} needs for it.
+     */
+    String uploadChunk(String key, String uploadId, int index, long offset, InputStreamSource content, long size)
+            throws IOException;
+
+    // chunkTags holds the tag of every chunk, in index order
+    void completeChunkedUpload(String key, String uploadId, List<String> chunkTags) throws IOException;
+
+    // Drops the chunks written so far; an upload that no longer exists is not an error
+    void abortChunkedUpload(String key, String uploadId);
+
+    String getUrl(String key);
+
+    /**
+     * Opens the object for streaming. {@code range} is a single HTTP byte range; when {@code ifRange}
+     * no longer matches the object the whole object is returned. The caller must close the result.
+     *
+     * @throws StorageObjectNotFoundException  if there is no object under {@code key}
+     * @throws RangeNotSatisfiableException if the range starts beyond the end of the object
+     */
+    StoredObject downloadFile(String key, String range, String ifRange) throws IOException;
+
+    /**
+     * Copies the whole object into {@code target} and returns it opened on that file, or null without
+     * copying anything when it is larger than {@code maxSize}. The caller must close the result.
+     *
+     * @throws StorageObjectNotFoundException if there is no object under {@code key}
+     */
+    default StoredObject downloadToFile(String key, Path target, long maxSize) throws IOException {
+        StoredObject object = downloadFile(key, null, null);
+        try (object) {
+            if (object.contentLength() > maxSize) {
+                return null;
+            }
+            try (OutputStream out = Files.newOutputStream(target)) {
+                object.content().writeTo(out);
+            }
+        }
+        return StoredObject.ofFile(FileChannel.open(target, StandardOpenOption.READ), object.contentType(),
+                object.contentEncoding(), object.eTag(), object.lastModified(), null, null);
+    }
+
+    /**
+     * The validators {@link #downloadFile} would return for the object, from its metadata alone.
+     *
+     * @throws StorageObjectNotFoundException if there is no object under {@code key}
+     */
+    CacheValidator validator(String key) throws IOException;
+
+    void deleteFile(String key);
+
+    /**
+     * Deletes many objects in as few requests as the backend allows. Keys that do not exist count as deleted.
+     *
+     * @return the keys that could not be deleted
+     */
+    default List<String> deleteFiles(Collection<String> keys) {
+        List<String> failed = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                deleteFile(key);
+            } catch (RuntimeException e) {
+                failed.add(key);
+            }
+        }
+        return failed;
+    }
+}
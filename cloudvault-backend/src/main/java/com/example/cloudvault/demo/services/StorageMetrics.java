@@ -0,0 +1,163 @@
+package com.example.cloudvault.demo.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Meters for calls to object storage.
+ * <ul>
+ *     <li>{@code cloudvault.storage} - one observation per operation, tagged {@code operation} and
+ *     {@code outcome}; a timer in Prometheus and a span when tracing is on</li>
+ *     <li>{@code cloudvault.storage.bytes} - bytes moved, tagged {@code direction}</li>
+ *     <li>{@code cloudvault.storage.throughput} - bytes per second of each finished transfer</li>
+ *     <li>{@code cloudvault.storage.transfers.active} - transfers moving bytes right now</li>
+ * </ul>
+ * Node throughput is {@code rate(cloudvault_storage_bytes_total[1m])}.
+ */
+@Component
+public class StorageMetrics {
+
+    public static final String UPLOAD = "upload";
+    public static final String DOWNLOAD = "download";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+
+    /**
+     * A storage call that may throw {@code E}; lambdas that throw nothing checked infer a RuntimeException.
+     */
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @PostConstruct
+    void init() {
+        Gauge.builder("cloudvault.storage.transfers.active", activeUploads, AtomicInteger::get)
+                .tag("direction", UPLOAD)
+                .register(meterRegistry);
+        Gauge.builder("cloudvault.storage.transfers.active", activeDownloads, AtomicInteger::get)
+                .tag("direction", DOWNLOAD)
+                .register(meterRegistry);
+    }
+
+    public <T, E extends Exception> T observe(String operation, Call<T, E> call) throws E {
+        Observation observation = Observation.createNotStarted("cloudvault.storage", observationRegistry)
+                .contextualName("storage " + operation)
+                .lowCardinalityKeyValue("operation", operation)
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            T result = call.call();
+            observation.lowCardinalityKeyValue("outcome", "success");
+            return result;
+        } catch (Exception e) {
+            observation.lowCardinalityKeyValue("outcome", outcome(e));
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    /**
+     * Times an upload of {@code bytes} and records them once it has succeeded.
+     */
+    public <T, E extends Exception> T upload(String operation, long bytes, Call<T, E> call) throws E {
+        activeUploads.incrementAndGet();
+        long started = System.nanoTime();
+        try {
+            T result = observe(operation, call);
+            transferred(UPLOAD, bytes, System.nanoTime() - started);
+            return result;
+        } finally {
+            activeUploads.decrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a download's bytes as the caller reads them; recorded when the stream is closed.
+     */
+    public InputStream download(InputStream in) {
+        activeDownloads.incrementAndGet();
+        long started = System.nanoTime();
+        return new FilterInputStream(in) {
+            private final AtomicBoolean closed = new AtomicBoolean();
+            private long bytes;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytes++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int n = super.read(buffer, offset, length);
+                if (n > 0) {
+                    bytes += n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (closed.compareAndSet(false, true)) {
+                        activeDownloads.decrementAndGet();
+                        transferred(DOWNLOAD, bytes, System.nanoTime() - started);
+                    }
+                }
+            }
+        };
+    }
+
+    private void transferred(String direction, long bytes, long nanos) {
+        Counter.builder("cloudvault.storage.bytes")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(meterRegistry)
+                .increment(bytes);
+        if (bytes > 0 && nanos > 0) {
+            DistributionSummary.builder("cloudvault.storage.throughput")
+                    .baseUnit("bytes.per.second")
+                    .tag("direction", direction)
+                    .register(meterRegistry)
+                    .record(bytes * 1e9 / nanos);
+        }
+    }
+
+    private static String outcome(Exception e) {
+        if (e instanceof StorageObjectNotFoundException || e instanceof NoSuchKeyException) {
+            return "not_found";
+        }
+        if (e instanceof RangeNotSatisfiableException) {
+            return "range_not_satisfiable";
+        }
+        return "error";
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.cloudvault.demo.services;
+
+public class StorageObjectNotFoundException extends RuntimeException {
+
+    public StorageObjectNotFoundException(String key) {
+        super("No stored object under key " + key);
+    }
+}
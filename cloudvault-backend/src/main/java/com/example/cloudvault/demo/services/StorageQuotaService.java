@@ -0,0 +1,216 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StorageUsage;
+import com.example.cloudvault.demo.entities.UsageTotals;
+import com.example.cloudvault.demo.repositories.SavedFilesRepository;
+import com.example.cloudvault.demo.repositories.StorageUsageRepository;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-user storage accounting without summing saved_files on the upload path.
+ * <p>
+ * Each user has one {@code storage_usage} row of running totals. An upload is checked against it with a
+ * primary key read before any bytes go to storage, and saving the file adds to it with a conditional
+ * update in the same transaction as the insert, so concurrent uploads cannot overshoot the quota together.
+ * Deletes subtract in their transaction. Every statement that changes a user's files touches this row
+ * first, which lets {@link #reconcile()} recount a user under its lock and repair any drift. The same
+ * row carries a version that every such statement bumps, the validator of the user's listings.
+ */
+@Slf4j
+@Service
+public class StorageQuotaService {
+
+    @Autowired
+    private StorageUsageRepository storageUsageRepository;
+
+    @Autowired
+    private SavedFilesRepository savedFilesRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Off only stops rejecting uploads, usage is still counted
+    @Value("${cloudvault.quota.enabled:true}")
+    private boolean enabled;
+
+    // For users without their own quota; negative is unlimited
+    @Value("${cloudvault.quota.default-size:10GB}")
+    private DataSize defaultSize;
+
+    @Value("${cloudvault.quota.reconcile.batch-size:500}")
+    private int reconcileBatchSize;
+
+    // Own transaction, so creating a row never depends on, or spoils, the caller's
+    private TransactionTemplate newTransaction;
+
+    @PostConstruct
+    void init() {
+        newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Fails fast when {@code bytes} more would take the user past their quota. Advisory only, the
+     * binding check is {@link #charge}.
+     *
+     * @throws QuotaExceededException if the upload would not fit
+     */
+    public void check(Long userId, long bytes) {
+        StorageUsage usage = storageUsageRepository.findById(userId).orElseGet(() -> createUsage(userId));
+        long quota = quotaOf(usage);
+        if (enabled && quota >= 0 && usage.getUsedBytes() + bytes > quota) {
+            throw new QuotaExceededException("Storage quota exceeded: " + usage.getUsedBytes() + " of " + quota
+                    + " bytes used, upload needs " + bytes);
+        }
+    }
+
+    /**
+     * Counts one more file of {@code bytes} against the user. Must run in the transaction that saves the
+     * file, before it writes anything else, so the usage row is locked first.
+     *
+     * @throws QuotaExceededException if it does not fit, which rolls the save back
+     */
+    public void charge(Long userId, long bytes) {
+        if (update(userId, bytes) == 1) {
+            return;
+        }
+        // Either no row yet, or no room
+        if (!storageUsageRepository.existsById(userId)) {
+            createUsage(userId);
+            if (update(userId, bytes) == 1) {
+                return;
+            }
+        }
+        throw new QuotaExceededException("Storage quota exceeded, upload needs " + bytes + " bytes");
+    }
+
+    // Subtracts deleted files; a user without a row yet gets one, recounted, on the next reconcile
+    public void release(Long userId, long bytes, long files) {
+        if (files > 0) {
+            storageUsageRepository.add(userId, -bytes, -files);
+        }
+    }
+
+    // Records a change to the user's files that leaves their totals as they are
+    public void touch(Long userId) {
+        storageUsageRepository.touch(userId);
+    }
+
+    /**
+     * A stamp that changes whenever any of the user's files or folders does, one primary key read. A
+     * user without a row yet gets one, so the change after this read is sure to bump it.
+     */
+    public long filesVersion(Long userId) {
+        return storageUsageRepository.findById(userId).orElseGet(() -> createUsage(userId)).getFilesVersion();
+    }
+
+    public Map<String, Object> usage(Long userId) {
+        StorageUsage usage = storageUsageRepository.findById(userId).orElseGet(() -> createUsage(userId));
+        long quota = quotaOf(usage);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("usedBytes", usage.getUsedBytes());
+        result.put("fileCount", usage.getFileCount());
+        result.put("quotaBytes", quota < 0 ? null : quota);
+        return result;
+    }
+
+    /**
+     * Recounts every user's totals from saved_files and fixes the rows that drifted, e.g. through a crash
+     * between a storage write and its commit or files deleted outside the service. One short transaction
+     * per user, so uploads only ever wait for their own user's recount.
+     */
+    @Scheduled(initialDelayString = "${cloudvault.quota.reconcile.initial-delay:5m}",
+            fixedDelayString = "${cloudvault.quota.reconcile.interval:6h}")
+    public void reconcile() {
+        int users = 0;
+        int repaired = 0;
+        long after = 0;
+        List<Long> ids;
+        do {
+            ids = userRepository.findIdsAfter(after, Limit.of(reconcileBatchSize));
+            for (Long userId : ids) {
+                try {
+                    if (Boolean.TRUE.equals(newTransaction.execute(status -> reconcileUser(userId)))) {
+                        repaired++;
+                    }
+                } catch (DataAccessException e) {
+                    log.warn("Could not reconcile storage usage of user {}: {}", userId, e.getMessage());
+                }
+                users++;
+            }
+            if (!ids.isEmpty()) {
+                after = ids.get(ids.size() - 1);
+            }
+        } while (ids.size() == reconcileBatchSize);
+        log.info("Reconciled storage usage of {} users, {} had drifted", users, repaired);
+    }
+
+    // True when the stored totals were off
+    boolean reconcileUser(Long userId) {
+        StorageUsage usage = storageUsageRepository.findByIdForUpdate(userId).orElse(null);
+        if (usage == null) {
+            createUsage(userId);
+            return false;
+        }
+        UsageTotals totals = savedFilesRepository.totalsByUser(userId);
+        boolean drifted = totals.usedBytes() != usage.getUsedBytes().longValue()
+                || totals.fileCount() != usage.getFileCount().longValue();
+        if (drifted) {
+            log.warn("Storage usage of user {} was {} bytes in {} files, recounted {} bytes in {} files", userId,
+                    usage.getUsedBytes(), usage.getFileCount(), totals.usedBytes(), totals.fileCount());
+            usage.setUsedBytes(totals.usedBytes());
+            usage.setFileCount(totals.fileCount());
+        }
+        usage.setReconciled_at(LocalDateTime.now());
+        storageUsageRepository.save(usage);
+        return drifted;
+    }
+
+    private int update(Long userId, long bytes) {
+        return enabled ? storageUsageRepository.charge(userId, bytes, 1, defaultSize.toBytes())
+                : storageUsageRepository.add(userId, bytes, 1);
+    }
+
+    // First use by a user who has none yet, counted from their files
+    private StorageUsage createUsage(Long userId) {
+        try {
+            return newTransaction.execute(status -> {
+                UsageTotals totals = savedFilesRepository.totalsByUser(userId);
+                return storageUsageRepository.saveAndFlush(StorageUsage.builder()
+                        .userId(userId)
+                        .usedBytes(totals.usedBytes())
+                        .fileCount(totals.fileCount())
+                        .reconciled_at(LocalDateTime.now())
+                        .build());
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Created concurrently, read that one
+            return storageUsageRepository.findById(userId).orElseThrow(() -> e);
+        }
+    }
+
+    private long quotaOf(StorageUsage usage) {
+        return usage.getQuotaBytes() != null ? usage.getQuotaBytes() : defaultSize.toBytes();
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.repositories.StoredBlobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Content-addressed storage: every distinct content is stored once under its SHA-256 and
+ * reference-counted by the {@code saved_files} rows that point at it.
+ */
+@Slf4j
+@Service
+public class StoredBlobService {
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    // Recorded for content stored as uploaded, so it is told apart from blobs that predate the column
+    static final String IDENTITY = "identity";
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private ObjectCache objectCache;
+
+    @Autowired
+    private ObjectCompression objectCompression;
+
+    /**
+     * Returns the blob holding the file's content with one reference taken for the caller.
+     * Content that is already stored is not uploaded again.
+     */
+    public StoredBlob store(MultipartFile file) throws IOException {
+        // The part is spooled to local disk, so hashing it first is cheap compared to a redundant upload
+        String sha256 = sha256Hex(file);
+        Optional<StoredBlob> existing = acquireExisting(sha256);
+        if (existing.isPresent()) {
+            log.info("Content {} already stored, skipping upload", sha256);
+            return existing.get();
+        }
+        String contentType = Objects.requireNonNullElse(file.getContentType(), "application/octet-stream");
+        // The hash and size stay those of the content as uploaded, whatever encoding it is stored with
+        String contentEncoding = objectCompression.upload(file, contentKey(sha256), contentType);
+        return register(sha256, file.getSize(), contentType, contentEncoding);
+    }
+
+    public Optional<StoredBlob> findLive(String sha256) {
+        return storedBlobRepository.findBySha256(sha256).filter(blob -> blob.getRefCount() > 0);
+    }
+
+    // Download links carry the storage key rather than the digest
+    public Optional<StoredBlob> findLiveByStorageKey(String storageKey) {
+        return storedBlobRepository.findFirstByStorageKeyAndRefCountGreaterThan(storageKey, 0);
+    }
+
+    // Takes a reference on an already stored blob, if there is a live one for this content
+    public Optional<StoredBlob> acquireExisting(String sha256) {
+        if (storedBlobRepository.acquireLive(sha256) == 0) {
+            return Optional.empty();
+        }
+        return storedBlobRepository.findBySha256(sha256);
+    }
+
+    /**
+     * Records a reference to content that has just been written to storage with {@code contentEncoding},
+     * null when it was stored as uploaded.
+     */
+    public StoredBlob register(String sha256, long size, String contentType, String contentEncoding) {
+        return register(sha256, size, contentType, contentKey(sha256), Objects.requireNonNullElse(contentEncoding, IDENTITY));
+    }
+
+    /**
+     * Records a reference to content that has just been written under {@code storageKey} rather than its
+     * content key, as chunked uploads are, always as uploaded. If the content turns out to be stored already,
+     * the new object is deleted and the existing blob referenced instead.
+     */
+    public StoredBlob registerAt(String sha256, long size, String contentType, String storageKey) {
+        return register(sha256, size, contentType, storageKey, IDENTITY);
+    }
+
+    private StoredBlob register(String sha256, long size, String contentType, String storageKey, String contentEncoding) {
+        while (true) {
+            Optional<StoredBlob> existing = acquireExisting(sha256);
+            if (existing.isPresent()) {
+                deleteRedundant(storageKey, existing.get());
+                return existing.get();
+            }
+            StoredBlob dead = storedBlobRepository.findBySha256(sha256).orElse(null);
+            if (dead != null) {
+                // Left at zero references when its object could not be deleted; the new object replaces it,
+                // along with the key and encoding the row had for the old one
+                if (storedBlobRepository.takeOver(dead.getId(), storageKey, contentEncoding) == 1) {
+                    if (!dead.getStorageKey().equals(storageKey)) {
+                        deleteQuietly(dead.getStorageKey());
+                    }
+                    return storedBlobRepository.findById(dead.getId()).orElseThrow();
+                }
+                continue;
+            }
+            try {
+                return storedBlobRepository.save(StoredBlob.builder()
+                        .sha256(sha256)
+                        .storageKey(storageKey)
+                        .size(size)
+                        .contentType(contentType)
+                        .contentEncoding(contentEncoding)
+                        .refCount(1L)
+                        .created_at(LocalDateTime.now())
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent upload of the same content created the row first, go round again
+            }
+        }
+    }
+
+    // No blob points at the key, so whatever is stored under it is garbage
+    public boolean isUnreferenced(String storageKey) {
+        return !storedBlobRepository.existsByStorageKey(storageKey);
+    }
+
+    private void deleteRedundant(String storageKey, StoredBlob kept) {
+        if (!kept.getStorageKey().equals(storageKey)) {
+            log.info("Content {} already stored, dropping the copy at {}", kept.getSha256(), storageKey);
+            deleteQuietly(storageKey);
+        }
+    }
+
+    private void deleteQuietly(String key) {
+        try {
+            storageBackend.deleteFile(key);
+        } catch (RuntimeException e) {
+            log.warn("Could not delete {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Drops one reference and deletes the blob, row and object, once nothing points at it.
+     * The row stays locked while the object is deleted, so a concurrent upload of the same
+     * content waits and then stores it afresh. As in {@link #releaseAll}, a blob whose object
+     * could not be deleted keeps its row at zero references and the release still commits.
+     */
+    @Transactional
+    public void release(Long blobId) {
+        storedBlobRepository.release(blobId);
+        StoredBlob blob = storedBlobRepository.findByIdForUpdate(blobId).orElse(null);
+        if (blob == null || blob.getRefCount() > 0) {
+            return;
+        }
+        objectCache.invalidate(blob.getStorageKey());
+        deleteDerivatives(blob);
+        try {
+            storageBackend.deleteFile(blob.getStorageKey());
+        } catch (RuntimeException e) {
+            log.warn("Could not delete object for blob {}, keeping its row: {}", blob.getSha256(), e.getMessage());
+            return;
+        }
+        storedBlobRepository.delete(blob);
+        log.info("Garbage-collected blob {}", blob.getSha256());
+    }
+
+    /**
+     * Bulk form of {@link #release}: drops {@code count} references per blob id and collects every blob
+     * left unreferenced, with one storage batch delete for all of them. A blob whose object could not be
+     * deleted keeps its row at zero references; the next upload of that content overwrites the object
+     * and takes the row over again.
+     */
+    @Transactional
+    public void releaseAll(Map<Long, Long> references) {
+        if (references.isEmpty()) {
+            return;
+        }
+        // Almost always every blob loses exactly one reference, so this is usually a single statement
+        references.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                .forEach((count, ids) -> storedBlobRepository.releaseAll(ids, count));
+
+        List<StoredBlob> unreferenced = storedBlobRepository.findUnreferencedForUpdate(references.keySet());
+        if (unreferenced.isEmpty()) {
+            return;
+        }
+        // Derivatives go in the same batch; one left behind is only wasted space, so their failures are ignored
+        List<String> keys = new ArrayList<>();
+        for (StoredBlob blob : unreferenced) {
+            keys.add(blob.getStorageKey());
+            keys.addAll(derivativeKeys(blob));
+        }
+        Set<String> failed = new HashSet<>(storageBackend.deleteFiles(keys));
+        List<Long> collected = new ArrayList<>();
+        for (StoredBlob blob : unreferenced) {
+            objectCache.invalidate(blob.getStorageKey());
+            derivativeKeys(blob).forEach(objectCache::invalidate);
+            if (failed.contains(blob.getStorageKey())) {
+                log.warn("Could not delete object for blob {}, keeping its row", blob.getSha256());
+            } else {
+                collected.add(blob.getId());
+            }
+        }
+        storedBlobRepository.deleteAllByIdInBatch(collected);
+        log.info("Garbage-collected {} blobs", collected.size());
+    }
+
+    // Best effort, the content itself is already gone
+    private void deleteDerivatives(StoredBlob blob) {
+        for (String key : derivativeKeys(blob)) {
+            objectCache.invalidate(key);
+            try {
+                storageBackend.deleteFile(key);
+            } catch (RuntimeException e) {
+                log.warn("Could not delete derivative {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    // Every derivative that may have been rendered, which the row does not track, plus a preview stored
+    // under the older key scheme
+    private static Set<String> derivativeKeys(StoredBlob blob) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (ImageDerivative derivative : ImageDerivative.values()) {
+            keys.add(derivative.key(blob.getSha256()));
+        }
+        if (blob.getPreviewKey() != null) {
+            keys.add(blob.getPreviewKey());
+        }
+        return keys;
+    }
+
+    // Hex digests are evenly spread, which also keeps S3 request load spread across key partitions
+    public static String contentKey(String sha256) {
+        return sha256;
+    }
+
+    /**
+     * Where a presigned upload of this content by this user goes. Never the content key, so an object
+     * stored there by someone else is no proof the user has the content; completing registers it with
+     * {@link #registerAt}, which keeps the existing copy when there is one.
+     */
+    public static String presignedKey(Long userId, String sha256) {
+        return "presigned-" + UUID.nameUUIDFromBytes((userId + ":" + sha256).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static boolean isSha256Hex(String value) {
+        return value != null && value.matches("[0-9a-f]{64}");
+    }
+
+    private static String sha256Hex(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = file.getInputStream()) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import jakarta.servlet.ServletOutputStream;
+import org.springframework.http.HttpRange;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * An opened object: its metadata plus the content still to be sent. {@code contentRange} is set
+ * only when a byte range is being served. {@code contentEncoding} names the {@link ContentCodec} the
+ * object was stored with, null when it is stored as uploaded; length and range then count stored bytes.
+ */
+public record StoredObject(long contentLength, String contentType, String eTag, Instant lastModified,
+                           String contentRange, String contentEncoding, Content content) implements Closeable {
+
+    public StoredObject(long contentLength, String contentType, String eTag, Instant lastModified,
+                        String contentRange, Content content) {
+        this(contentLength, contentType, eTag, lastModified, contentRange, null, content);
+    }
+
+    public static StoredObject ofFile(FileChannel channel, String contentType, String eTag, Instant lastModified,
+                                      String range, String ifRange) throws IOException {
+        return ofFile(channel, contentType, null, eTag, lastModified, range, ifRange);
+    }
+
+    /**
+     * Serves {@code range} of an open file, or all of it when the range is absent or {@code ifRange}
+     * no longer matches the given validators. Takes ownership of the channel on success.
+     */
+    public static StoredObject ofFile(FileChannel channel, String contentType, String contentEncoding, String eTag,
+                                      Instant lastModified, String range, String ifRange) throws IOException {
+        long size = channel.size();
+        long start = 0;
+        long length = size;
+        String contentRange = null;
+        HttpRange httpRange = range != null && ifRangeMatches(ifRange, eTag, lastModified) ? parseRange(range) : null;
+        if (httpRange != null) {
+            start = httpRange.getRangeStart(size);
+            length = httpRange.getRangeEnd(size) - start + 1;
+            if (start >= size || length <= 0) {
+                throw new RangeNotSatisfiableException(range);
+            }
+            contentRange = "bytes " + start + "-" + (start + length - 1) + "/" + size;
+        }
+        return new StoredObject(length, contentType, eTag, lastModified, contentRange, contentEncoding,
+                new FileContent(channel, start, length));
+    }
+
+    /**
+     * The same object with the encoding its blob recorded, which wins over whatever the backend returned.
+     * Blobs stored before the encoding was recorded keep the backend's.
+     */
+    public StoredObject withEncodingOf(StoredBlob blob) {
+        if (blob == null || blob.getContentEncoding() == null) {
+            return this;
+        }
+        String encoding = ContentCodec.forEncoding(blob.getContentEncoding()) == null ? null : blob.getContentEncoding();
+        return new StoredObject(contentLength, contentType, eTag, lastModified, contentRange, encoding, content);
+    }
+
+    /**
+     * The content as it was uploaded, decompressed as it is read when the object is stored compressed.
+     * Only a whole object can be decoded.
+     */
+    public InputStream openDecoded() throws IOException {
+        ContentCodec codec = ContentCodec.forEncoding(contentEncoding);
+        if (codec == null) {
+            return content.openStream();
+        }
+        if (contentRange != null) {
+            throw new IllegalStateException("A byte range of a compressed object cannot be decoded");
+        }
+        return codec.decode(content.openStream());
+    }
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+
+    // Unparseable ranges are ignored and the whole object is sent, as S3 does
+    private static HttpRange parseRange(String range) {
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(range);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean ifRangeMatches(String ifRange, String eTag, Instant lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(eTag);
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            return ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().equals(lastModified);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    public interface Content extends Closeable {
+
+        void writeTo(OutputStream out) throws IOException;
+
+        // The same bytes for callers that transform them; use it or writeTo, not both
+        InputStream openStream() throws IOException;
+
+        static Content of(InputStream in) {
+            return new Content() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    in.transferTo(out);
+                }
+
+                @Override
+                public InputStream openStream() {
+                    return in;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    in.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * A slice of a local file. A servlet response takes it memory-mapped, a window at a time, so the
+     * bytes go from the page cache straight into the container's output buffer without first being read
+     * into the heap. Any other stream gets them through a heap buffer.
+     */
+    private record FileContent(FileChannel channel, long start, long length) implements Content {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        // Bounds how much of the file is mapped at once; a window is unmapped once it is garbage
+        private static final long MAP_WINDOW = 16L * 1024 * 1024;
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            if (out instanceof ServletOutputStream response) {
+                writeMapped(response);
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, length)));
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int n = channel.read(buffer, position);
+                if (n <= 0) {
+                    throw new EOFException("Stored object ended " + remaining + " bytes early");
+                }
+                out.write(buffer.array(), 0, n);
+                position += n;
+                remaining -= n;
+            }
+        }
+
+        private void writeMapped(ServletOutputStream out) throws IOException {
+            // Mapping past the end of a file that shrank would fault on access instead of failing here
+            if (start + length > channel.size()) {
+                throw new EOFException("Stored object ended " + (start + length - channel.size()) + " bytes early");
+            }
+            long end = start + length;
+            for (long position = start; position < end; position += MAP_WINDOW) {
+                out.write(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, end - position)));
+            }
+        }
+
+        // Positional reads, so the slice ends where it should without touching the channel's position
+        @Override
+        public InputStream openStream() {
+            return Channels.newInputStream(new ReadableByteChannel() {
+                private long position = start;
+
+                @Override
+                public int read(ByteBuffer target) throws IOException {
+                    long remaining = start + length - position;
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    if (target.remaining() > remaining) {
+                        target.limit(target.position() + (int) remaining);
+                    }
+                    int n = channel.read(target, position);
+                    if (n > 0) {
+                        position += n;
+                    }
+                    return n;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return channel.isOpen();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            });
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
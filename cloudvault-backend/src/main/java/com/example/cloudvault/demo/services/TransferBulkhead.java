@@ -0,0 +1,138 @@
+package com.example.cloudvault.demo.services;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the uploads and downloads moving bytes at once, overall and per user.
+ * <p>
+ * With virtual threads the container no longer limits concurrency through its pool size, so without
+ * this a burst of transfers would all hit storage, the disk cache and the database pool together.
+ * One user over their share is turned away at once; when the node as a whole is full a transfer waits
+ * up to {@code max-wait} for a slot. Either way the caller gets a {@link TransferLimitException}.
+ */
+@Service
+public class TransferBulkhead {
+
+    @Value("${cloudvault.transfer.bulkhead.max-concurrent:200}")
+    private int maxConcurrent;
+
+    @Value("${cloudvault.transfer.bulkhead.max-per-user:4}")
+    private int maxPerUser;
+
+    @Value("${cloudvault.transfer.bulkhead.max-wait:2s}")
+    private Duration maxWait;
+
+    private Semaphore slots;
+
+    // Only users with a transfer running have an entry
+    private final Map<Long, Integer> perUser = new ConcurrentHashMap<>();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        slots = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * Takes a slot for one transfer, to be closed once its last byte has moved.
+     *
+     * @param userId owner of the transfer, or null when the caller is anonymous and only the global cap applies
+     * @throws TransferLimitException if the user already has {@code max-per-user} transfers running or no
+     *                                global slot frees up within {@code max-wait}
+     */
+    public Permit acquire(Long userId) {
+        if (userId != null && !reserveUserSlot(userId)) {
+            rejected.incrementAndGet();
+            throw new TransferLimitException("Too many transfers in progress for this user", 1);
+        }
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            releaseUserSlot(userId);
+            rejected.incrementAndGet();
+            throw new TransferLimitException("Server is busy, too many transfers in progress",
+                    Math.max(1, maxWait.toSeconds()));
+        }
+        return new Permit(userId);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("maxConcurrent", maxConcurrent);
+        result.put("maxPerUser", maxPerUser);
+        result.put("inFlight", inFlight());
+        result.put("waiting", waiting());
+        result.put("activeUsers", perUser.size());
+        result.put("rejected", rejected());
+        return result;
+    }
+
+    public int inFlight() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    public int waiting() {
+        return slots.getQueueLength();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    private boolean reserveUserSlot(Long userId) {
+        AtomicBoolean reserved = new AtomicBoolean();
+        perUser.compute(userId, (id, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxPerUser) {
+                return count;
+            }
+            reserved.set(true);
+            return current + 1;
+        });
+        return reserved.get();
+    }
+
+    private void releaseUserSlot(Long userId) {
+        if (userId != null) {
+            perUser.computeIfPresent(userId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * A held slot. Closing it more than once is harmless, so it can sit in several finally blocks.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final Long userId;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Long userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                slots.release();
+                releaseUserSlot(userId);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.cloudvault.demo.services;
+
+import lombok.Getter;
+
+@Getter
+public class TransferLimitException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TransferLimitException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
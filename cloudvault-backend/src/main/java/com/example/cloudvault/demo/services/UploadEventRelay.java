@@ -0,0 +1,19 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+// Forwards events only once the saved file row is committed, so a worker never looks for a row that isn't there
+@Component
+public class UploadEventRelay {
+
+    @Autowired
+    private UploadQueue uploadQueue;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUploadCompleted(UploadCompletedEvent event) {
+        uploadQueue.submit(event);
+    }
+}
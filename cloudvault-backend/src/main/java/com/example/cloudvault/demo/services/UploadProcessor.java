@@ -0,0 +1,131 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
+import com.example.cloudvault.demo.repositories.StoredBlobRepository;
+import com.example.cloudvault.demo.utils.ContentSniffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Post-upload work that does not need to hold up the upload request: re-hashing the stored object,
+ * sniffing its real content type and, for images, reading the dimensions and storing the
+ * {@link ImageDerivative#THUMBNAIL thumbnail}, which listings ask for right away.
+ * <p>
+ * The object is hashed as it streams past; only images under {@code preview-max-size} are spooled
+ * to disk for rendering. An object that does not match its hash fails the event rather than being
+ * marked processed, so it ends up dead-lettered.
+ * <p>
+ * Results are per blob, so identical content is processed once however many files share it, and a
+ * redelivered or duplicate event for a processed blob is a no-op.
+ */
+@Slf4j
+@Service
+public class UploadProcessor {
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    // Larger images are left without a thumbnail until one is first asked for
+    @Value("${cloudvault.processing.preview-max-size:32MB}")
+    private DataSize previewMaxSize;
+
+    public void process(UploadCompletedEvent event) throws IOException {
+        StoredBlob blob = storedBlobRepository.findById(event.blobId()).orElse(null);
+        if (blob == null || blob.getRefCount() <= 0) {
+            log.debug("Blob {} was deleted before processing", event.blobId());
+            return;
+        }
+        if (blob.getProcessedAt() != null) {
+            return;
+        }
+
+        Path copy = null;
+        try {
+            String sha256;
+            long crc32;
+            String contentType;
+            MessageDigest digest = sha256();
+            CRC32 crc = new CRC32();
+            try (StoredObject object = storageBackend.downloadFile(blob.getStorageKey(), null, null);
+                 // The hash is of the content as uploaded, so compressed objects are checked decoded
+                 InputStream in = new CheckedInputStream(new DigestInputStream(
+                         object.withEncodingOf(blob).openDecoded(), digest), crc)) {
+                byte[] header = in.readNBytes(ContentSniffer.HEADER_SIZE);
+                contentType = ContentSniffer.sniff(header);
+                // Only an image small enough to render is written to disk, anything else is hashed as it streams by
+                if (ContentSniffer.isPreviewable(contentType) && blob.getSize() <= previewMaxSize.toBytes()) {
+                    copy = Files.createTempFile("cloudvault-processing-", ".tmp");
+                    try (OutputStream out = Files.newOutputStream(copy)) {
+                        out.write(header);
+                        in.transferTo(out);
+                    }
+                } else {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+                sha256 = HexFormat.of().formatHex(digest.digest());
+                crc32 = crc.getValue();
+            } catch (StorageObjectNotFoundException e) {
+                log.debug("Object for blob {} was deleted before processing", event.blobId());
+                return;
+            }
+            if (!sha256.equals(blob.getSha256())) {
+                // Not recorded as processed: the event is retried and then dead-lettered, where it gets looked at
+                throw new IOException("Stored object " + blob.getStorageKey() + " hashes to " + sha256
+                        + ", expected " + blob.getSha256());
+            }
+
+            Integer width = null;
+            Integer height = null;
+            String previewKey = null;
+            if (copy != null) {
+                ImageDerivativeService.Rendition thumbnail = ImageDerivativeService.render(copy, ImageDerivative.THUMBNAIL);
+                if (thumbnail != null) {
+                    width = thumbnail.width();
+                    height = thumbnail.height();
+                    previewKey = ImageDerivative.THUMBNAIL.key(blob.getSha256());
+                    storageBackend.uploadBytes(previewKey, thumbnail.content(), thumbnail.contentType());
+                }
+            }
+
+            int updated = storedBlobRepository.recordProcessing(blob.getId(), contentType, width, height, previewKey,
+                    crc32, LocalDateTime.now());
+            if (updated == 0 && previewKey != null) {
+                // Garbage-collected while we worked, nothing will ever delete this thumbnail otherwise
+                storageBackend.deleteFile(previewKey);
+            }
+            log.info("Processed blob {} as {}", blob.getSha256(), contentType);
+        } finally {
+            if (copy != null) {
+                Files.deleteIfExists(copy);
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
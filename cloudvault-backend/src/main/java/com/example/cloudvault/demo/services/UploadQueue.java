@@ -0,0 +1,20 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
+
+import java.util.Map;
+
+/**
+ * Hands upload-completed events to UploadProcessor off the request thread. Selected with
+ * {@code cloudvault.processing.transport}: {@code inprocess} (default), a worker pool in this
+ * node, or {@code rabbit}, a durable RabbitMQ queue shared by all nodes.
+ */
+public interface UploadQueue {
+
+    /**
+     * Queues the event; never blocks on processing and never throws for a processing failure.
+     */
+    void submit(UploadCompletedEvent event);
+
+    Map<String, Object> stats();
+}
@@ -0,0 +1,389 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.entities.UploadChunk;
+import com.example.cloudvault.demo.entities.UploadSession;
+import com.example.cloudvault.demo.repositories.UploadChunkRepository;
+import com.example.cloudvault.demo.repositories.UploadSessionRepository;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resumable uploads. A session fixes the file's size and chunk size; the client then PUTs chunks at
+ * chunk-aligned offsets, in any order and in parallel, asks which ranges have arrived, and completes.
+ * <p>
+ * Each chunk is spooled to local disk only until it is written to storage through the backend's chunked
+ * upload (an S3 multipart upload, or positional writes into a staging file), so a retried chunk costs one
+ * chunk and the server never holds a file in memory. Completion reads the assembled object once to hash
+ * it: content addressing must not trust the client's digest. New content keeps the object where it is;
+ * content already stored is deduplicated and the copy deleted.
+ * <p>
+ * Chunk writes and the claim that starts completion exclude each other per session, so no chunk lands in
+ * an object after it has been hashed. The lock is per node, like the staging files of the local backend;
+ * S3 itself rejects parts of a completed multipart upload.
+ */
+@Slf4j
+@Service
+public class UploadSessionService {
+
+    // S3 rejects smaller parts, except the last
+    private static final long MIN_CHUNK_SIZE = DataSize.ofMegabytes(5).toBytes();
+
+    // And allows no more than this many
+    private static final int MAX_CHUNKS = 10_000;
+
+    private static final String KEY_PREFIX = "upload-";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private UploadChunkRepository uploadChunkRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private StoredBlobService storedBlobService;
+
+    @Autowired
+    private SavedFilesService savedFilesService;
+
+    @Autowired
+    private StorageQuotaService storageQuotaService;
+
+    @Value("${cloudvault.upload.sessions.chunk-size:8MB}")
+    private DataSize defaultChunkSize;
+
+    @Value("${cloudvault.upload.sessions.max-chunk-size:64MB}")
+    private DataSize maxChunkSize;
+
+    @Value("${cloudvault.upload.sessions.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${cloudvault.upload.sessions.sweep-batch-size:100}")
+    private int sweepBatchSize;
+
+    // Chunk writes share their session's lock, completion takes it alone; dropped once nobody holds it
+    private final LoadingCache<String, ReadWriteLock> sessionLocks = Caffeine.newBuilder()
+            .weakValues()
+            .build(sessionId -> new ReentrantReadWriteLock());
+
+    /**
+     * Opens a session for a file of {@code size} bytes. The chunk size is the client's, if any, raised to
+     * what storage needs; folderPath must be normalized.
+     *
+     * @throws IllegalArgumentException for a size or chunk size that cannot be served
+     * @throws QuotaExceededException   if the file would not fit the user's quota
+     */
+    public UploadSession create(Long userId, String fileName, String folderPath, String contentType, long size,
+                                Long requestedChunkSize, String sha256) throws IOException {
+        if (size < 0) {
+            throw new IllegalArgumentException("size must not be negative");
+        }
+        if (sha256 != null && !StoredBlobService.isSha256Hex(sha256)) {
+            throw new IllegalArgumentException("sha256 must be a lower-case hex digest");
+        }
+        long chunkSize = Math.max(requestedChunkSize == null ? defaultChunkSize.toBytes() : requestedChunkSize,
+                Math.max(MIN_CHUNK_SIZE, (size + MAX_CHUNKS - 1) / MAX_CHUNKS));
+        if (chunkSize > maxChunkSize.toBytes()) {
+            throw new IllegalArgumentException("File or chunk size too large, chunks are at most " + maxChunkSize);
+        }
+        storageQuotaService.check(userId, size);
+
+        String id = UUID.randomUUID().toString();
+        String storageKey = KEY_PREFIX + id;
+        String uploadId = storageBackend.startChunkedUpload(storageKey, contentType);
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession session = uploadSessionRepository.save(UploadSession.builder()
+                .id(id)
+                .user(userRepository.getReferenceById(userId))
+                .fileName(fileName)
+                .folderPath(folderPath)
+                .contentType(contentType)
+                .size(size)
+                .chunkSize(chunkSize)
+                .sha256(sha256)
+                .storageKey(storageKey)
+                .storageUploadId(uploadId)
+                .created_at(now)
+                .expiresAt(now.plus(ttl))
+                .build());
+        log.debug("Opened upload session {} for {} bytes in {} chunks", id, size, session.chunkCount());
+        return session;
+    }
+
+    public Optional<UploadSession> find(Long userId, String sessionId) {
+        return uploadSessionRepository.findOwned(sessionId, userId)
+                .filter(session -> session.getExpiresAt().isAfter(LocalDateTime.now()));
+    }
+
+    /**
+     * Writes the chunk starting at {@code offset}, read from {@code body}, to storage. Sending a chunk
+     * again replaces it.
+     *
+     * @return false if there is no such session
+     * @throws IllegalArgumentException if the offset is not on a chunk boundary or the body is not exactly
+     *                                  the chunk's length
+     * @throws IllegalStateException    if the session is being completed
+     */
+    public boolean putChunk(Long userId, String sessionId, long offset, InputStream body) throws IOException {
+        UploadSession session = find(userId, sessionId).orElse(null);
+        if (session == null) {
+            return false;
+        }
+        if (session.isCompleting()) {
+            throw new IllegalStateException("Upload is being completed");
+        }
+        if (offset < 0 || offset % session.getChunkSize() != 0 || offset / session.getChunkSize() >= session.chunkCount()) {
+            throw new IllegalArgumentException("offset must be a multiple of the chunk size " + session.getChunkSize()
+                    + " within the file");
+        }
+        int index = (int) (offset / session.getChunkSize());
+        long length = session.chunkLength(index);
+
+        // Spooled so storage can re-read it on a retry, and so a short body never reaches storage
+        Path spool = Files.createTempFile("cloudvault-chunk-", ".tmp");
+        try {
+            long received;
+            try (OutputStream out = Files.newOutputStream(spool)) {
+                received = copy(body, out, length + 1);
+            }
+            if (received != length) {
+                throw new IllegalArgumentException("Chunk " + index + " must be exactly " + length + " bytes");
+            }
+            Lock lock = sessionLocks.get(sessionId).readLock();
+            lock.lock();
+            try {
+                // Looked at again, completion may have claimed the session while the body was arriving
+                UploadSession current = find(userId, sessionId).orElse(null);
+                if (current == null) {
+                    return false;
+                }
+                if (current.isCompleting()) {
+                    throw new IllegalStateException("Upload is being completed");
+                }
+                String tag = storageBackend.uploadChunk(session.getStorageKey(), session.getStorageUploadId(), index,
+                        offset, new FileSystemResource(spool), length);
+                recordChunk(sessionId, index, tag);
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+        return true;
+    }
+
+    // Byte ranges already received, as inclusive "start-end" pairs with adjacent chunks merged
+    public List<String> receivedRanges(UploadSession session) {
+        List<String> ranges = new ArrayList<>();
+        long start = -1;
+        long end = -1;
+        for (int index : uploadChunkRepository.findIndexesBySession(session.getId())) {
+            long chunkStart = index * session.getChunkSize();
+            if (chunkStart != end + 1 || start < 0) {
+                if (start >= 0) {
+                    ranges.add(start + "-" + end);
+                }
+                start = chunkStart;
+            }
+            end = chunkStart + session.chunkLength(index) - 1;
+        }
+        if (start >= 0) {
+            ranges.add(start + "-" + end);
+        }
+        return ranges;
+    }
+
+    /**
+     * Assembles the chunks, checks the content and saves the file for the user. The session is gone
+     * afterwards, also when the content did not match its announced digest.
+     *
+     * @return empty if there is no such session
+     * @throws IllegalStateException    if chunks are missing or the session is already being completed
+     * @throws IllegalArgumentException if the content does not match the announced sha256
+     * @throws QuotaExceededException   if the file no longer fits the user's quota
+     */
+    public Optional<SavedFiles> complete(Long userId, String sessionId) throws IOException {
+        UploadSession session = find(userId, sessionId).orElse(null);
+        if (session == null) {
+            return Optional.empty();
+        }
+        // Waits for chunk writes in progress, later ones see the claim and are refused
+        Lock lock = sessionLocks.get(sessionId).writeLock();
+        lock.lock();
+        try {
+            if (uploadSessionRepository.claim(sessionId, LocalDateTime.now()) == 0) {
+                throw new IllegalStateException("Upload is already being completed");
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<UploadChunk> chunks = uploadChunkRepository.findBySession(sessionId);
+        if (chunks.size() != session.chunkCount()) {
+            uploadSessionRepository.unclaim(sessionId);
+            throw new IllegalStateException((session.chunkCount() - chunks.size()) + " of " + session.chunkCount()
+                    + " chunks are missing");
+        }
+
+        String key = session.getStorageKey();
+        String sha256;
+        try {
+            storageBackend.completeChunkedUpload(key, session.getStorageUploadId(),
+                    chunks.stream().map(UploadChunk::getStorageTag).toList());
+            sha256 = hash(key, session.getSize());
+        } catch (IOException | RuntimeException e) {
+            discard(session);
+            throw e;
+        }
+        if (session.getSha256() != null && !session.getSha256().equals(sha256)) {
+            discard(session);
+            throw new IllegalArgumentException("Uploaded content does not match sha256");
+        }
+
+        StoredBlob blob = storedBlobService.registerAt(sha256, session.getSize(), session.getContentType(), key);
+        SavedFiles saved;
+        try {
+            saved = savedFilesService.saveFile(userId, storageBackend.getUrl(blob.getStorageKey()),
+                    session.getFileName(), blob, session.getFolderPath());
+        } catch (RuntimeException e) {
+            storedBlobService.release(blob.getId());
+            delete(session);
+            throw e;
+        }
+        delete(session);
+        log.info("Completed upload session {} as {} ({} bytes in {} chunks)", sessionId, sha256, session.getSize(),
+                chunks.size());
+        return Optional.of(saved);
+    }
+
+    // Drops the session and whatever of it reached storage; false if there is no such session
+    public boolean abort(Long userId, String sessionId) {
+        UploadSession session = uploadSessionRepository.findOwned(sessionId, userId).orElse(null);
+        if (session == null || uploadSessionRepository.claim(sessionId, LocalDateTime.now()) == 0) {
+            return false;
+        }
+        discard(session);
+        return true;
+    }
+
+    /**
+     * Removes expired sessions and their staged chunks. A session that expired while being completed is
+     * removed too; its object stays if a blob took it over by then.
+     */
+    @Scheduled(initialDelayString = "${cloudvault.upload.sessions.sweep-interval:15m}",
+            fixedDelayString = "${cloudvault.upload.sessions.sweep-interval:15m}")
+    public void sweepExpired() {
+        int swept = 0;
+        int sweptBefore;
+        List<UploadSession> expired;
+        do {
+            sweptBefore = swept;
+            expired = uploadSessionRepository.findExpired(LocalDateTime.now(), Limit.of(sweepBatchSize));
+            for (UploadSession session : expired) {
+                try {
+                    discard(session);
+                    swept++;
+                } catch (RuntimeException e) {
+                    log.warn("Could not remove expired upload session {}: {}", session.getId(), e.getMessage());
+                }
+            }
+            // Sessions that failed stay first in line, stop rather than fetch them again and again
+        } while (expired.size() == sweepBatchSize && swept > sweptBefore);
+        if (swept > 0) {
+            log.info("Removed {} expired upload sessions", swept);
+        }
+    }
+
+    private void recordChunk(String sessionId, int index, String tag) {
+        UploadChunk chunk = uploadChunkRepository.findChunk(sessionId, index)
+                .orElseGet(() -> UploadChunk.builder().sessionId(sessionId).chunkIndex(index).build());
+        chunk.setStorageTag(tag);
+        try {
+            uploadChunkRepository.save(chunk);
+        } catch (DataIntegrityViolationException e) {
+            // The same chunk sent twice at once; either write is complete, keep the other's tag
+        }
+    }
+
+    // At most limit bytes, so an oversized body is caught without spooling all of it
+    private static long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long copied = 0;
+        int n;
+        while (copied < limit && (n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - copied))) != -1) {
+            out.write(buffer, 0, n);
+            copied += n;
+        }
+        return copied;
+    }
+
+    // SHA-256 of the assembled object, read back once from storage
+    private String hash(String key, long size) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long read;
+        try (StoredObject object = storageBackend.downloadFile(key, null, null);
+             InputStream in = new DigestInputStream(object.content().openStream(), digest)) {
+            read = in.transferTo(OutputStream.nullOutputStream());
+        }
+        if (read != size) {
+            throw new IOException("Assembled upload " + key + " has " + read + " of " + size + " bytes");
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // Aborting a completed upload is a no-op, so the object itself goes too unless a blob holds it
+    private void discard(UploadSession session) {
+        storageBackend.abortChunkedUpload(session.getStorageKey(), session.getStorageUploadId());
+        if (storedBlobService.isUnreferenced(session.getStorageKey())) {
+            storageBackend.deleteFile(session.getStorageKey());
+        }
+        delete(session);
+    }
+
+    private void delete(UploadSession session) {
+        uploadChunkRepository.deleteBySession(session.getId());
+        uploadSessionRepository.deleteById(session.getId());
+    }
+}
@@ -2,51 +2,90 @@ package com.example.cloudvault.demo.services;
 
 
 
+import com.example.cloudvault.demo.config.CachingConfig;
 import com.example.cloudvault.demo.entities.UserCredentials;
 import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.entities.UserSummary;
+import com.example.cloudvault.demo.entities.UsersPage;
 import com.example.cloudvault.demo.repositories.UserRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.UUID;
 
 @Slf4j
 @Service
+@CacheConfig(cacheNames = CachingConfig.USERS)
 public class UserService {
 
     @Autowired
-    private static final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private PasswordHasher passwordHasher;
 
     @Autowired
     private UserRepository userRepository;
 
+    @Value("${cloudvault.users.page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${cloudvault.users.max-page-size:200}")
+    private int maxPageSize;
+
+    // Checked against for unknown emails, so they take as long to reject as a wrong password
+    private String unknownUserHash;
+
+    @PostConstruct
+    void init() {
+        unknownUserHash = passwordHasher.encode(UUID.randomUUID().toString());
+    }
 
     public void register(UserEntity userEntity) {
         LocalDateTime now = LocalDateTime.now();
-        userEntity.setPassword(passwordEncoder.encode(userEntity.getPassword()));
+        userEntity.setPassword(passwordHasher.encode(userEntity.getPassword()));
         userEntity.setCreated_at(now);
         userEntity.setUpdated_at(now);
         userRepository.save(userEntity);
     }
 
+    // Any change to a user may change its id/email mapping, so both caches start over
+    @CacheEvict(cacheNames = {CachingConfig.USERS, CachingConfig.PRINCIPALS}, allEntries = true)
     public void delete(Long id) {
         userRepository.deleteById(id);
     }
 
+    /**
+     * The user with these credentials, or null when the email is unknown or the password is wrong.
+     * One lookup, with the BCrypt check on the {@link PasswordHasher} pool. A hash made with a lower
+     * work factor than the configured one is replaced while the raw password is at hand.
+     */
     public UserEntity login(UserCredentials userCredentials) {
-
-        userCredentials.setPassword(passwordEncoder.encode(userCredentials.getPassword()));
-        return userRepository.findByEmailAndPassword(userCredentials.getEmail(), userCredentials.getPassword());
+        UserEntity user = userRepository.findByEmail(userCredentials.getEmail()).orElse(null);
+        String hash = user == null ? unknownUserHash : user.getPassword();
+        if (!passwordHasher.matches(userCredentials.getPassword(), hash) || user == null) {
+            return null;
+        }
+        if (passwordHasher.needsRehash(hash)) {
+            String upgraded = passwordHasher.encode(userCredentials.getPassword());
+            // Only if nobody changed the password meanwhile; login never reads the users cache, so it can keep the old hash
+            if (userRepository.updatePassword(user.getUserId(), hash, upgraded) == 1) {
+                user.setPassword(upgraded);
+                log.debug("Rehashed password for user {}", user.getUserId());
+            }
+        }
+        return user;
     }
 
-    @Cacheable(key = "#id.toString()")
+    @Cacheable(key = "#id.toString()", unless = "#result == null")
     public Optional<UserEntity> getUserById(Long id) {
         return userRepository.findById(id);
     }
@@ -55,7 +94,8 @@ public class UserService {
         return userRepository.findByEmail(email).isPresent();
     }
 
-    //@Cacheable(key = "#email")
+    // Unknown emails are not cached, so a user who registers right after a failed lookup is found
+    @Cacheable(key = "#email", unless = "#result == null")
     public UserEntity findByEmail(String email) {
         return userRepository.findByEmail(email).orElse(null);
     }
@@ -64,6 +104,34 @@ public class UserService {
         return userRepository.findAll();
     }
 
+    /**
+     * One page of users other than {@code excludedId} in id order, starting after the {@code after}
+     * cursor. A non-blank {@code search} matches anywhere in the username or email, ignoring case.
+     */
+    public UsersPage searchUsers(Long excludedId, String search, Long after, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        long cursor = after == null ? 0L : after;
+        // One extra row tells whether another page follows without a count query
+        Limit rowLimit = Limit.of(pageSize + 1);
+        List<UserSummary> rows = search == null || search.isBlank()
+                ? userRepository.findPageExcluding(excludedId, cursor, rowLimit)
+                : userRepository.searchPageExcluding(excludedId, likePattern(search), cursor, rowLimit);
+        if (rows.size() <= pageSize) {
+            return new UsersPage(rows, null);
+        }
+        List<UserSummary> page = rows.subList(0, pageSize);
+        return new UsersPage(page, page.get(pageSize - 1).userId());
+    }
+
+    private static String likePattern(String search) {
+        String escaped = search.trim().toLowerCase(Locale.ROOT)
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+        return "%" + escaped + "%";
+    }
+
+    @CacheEvict(cacheNames = {CachingConfig.USERS, CachingConfig.PRINCIPALS}, allEntries = true)
     public void saveUser(UserEntity user) {
         userRepository.save(user);
     }
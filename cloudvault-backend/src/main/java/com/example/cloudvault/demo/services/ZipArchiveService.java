@@ -0,0 +1,229 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.StoredBlob;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams many stored files to the client as one ZIP archive, written as it is built.
+ * <p>
+ * While an entry is being written the next {@code prefetch-entries} objects are already being fetched,
+ * each only up to its first {@code prefetch-size} bytes; the rest of a larger object is read with a
+ * ranged request once its turn comes, so no connection sits idle. An archive therefore holds at most
+ * {@code (prefetch-entries + 1) * prefetch-size} in memory, whatever the size of its files.
+ * <p>
+ * Types that are already compressed go in as STORED entries, which needs their CRC-32 before their
+ * bytes; UploadProcessor records it. Until it has, such files are deflated at level 0 instead.
+ */
+@Service
+public class ZipArchiveService {
+
+    private static final String DEFAULT_NAME = "cloudvault";
+
+    @Autowired
+    private ObjectCache objectCache;
+
+    @Value("${cloudvault.download.zip.prefetch-entries:4}")
+    private int prefetchEntries;
+
+    @Value("${cloudvault.download.zip.prefetch-size:1MB}")
+    private DataSize prefetchSize;
+
+    // Deflating these only costs CPU
+    @Value("${cloudvault.download.zip.stored-types:image/jpeg,image/png,image/gif,image/webp,image/avif,image/heic,video/*,audio/*,application/zip,application/gzip,application/zstd,application/x-7z-compressed,application/vnd.rar,application/x-bzip2,application/x-xz,font/woff2}")
+    private String[] storedTypes;
+
+    private final List<MimeType> incompressible = new ArrayList<>();
+
+    // Prefetches only wait on storage, a virtual thread each is enough
+    private ExecutorService prefetchExecutor;
+
+    @PostConstruct
+    void init() {
+        for (String type : storedTypes) {
+            if (!type.isBlank()) {
+                incompressible.add(MimeType.valueOf(type.trim()));
+            }
+        }
+        prefetchExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("zip-prefetch-", 0).factory());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    // Download name of the archive, without any path and ending in .zip
+    public static String archiveName(String name) {
+        String cleaned = name == null ? null : StringUtils.getFilename(StringUtils.cleanPath(name));
+        if (cleaned == null || cleaned.isBlank()) {
+            cleaned = DEFAULT_NAME;
+        }
+        return cleaned.toLowerCase(Locale.ROOT).endsWith(".zip") ? cleaned : cleaned + ".zip";
+    }
+
+    /**
+     * Writes the files, which must have their blobs loaded, as a ZIP archive to {@code out}. Files are
+     * named as uploaded, with " (2)", " (3)"... added to repeated names. A storage failure part way
+     * through ends the archive early, the response is already on its way by then.
+     */
+    public void write(List<SavedFiles> files, OutputStream out) throws IOException {
+        List<Entry> entries = entries(files);
+        Deque<Future<Head>> window = new ArrayDeque<>();
+        int submitted = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (Entry entry : entries) {
+                while (submitted < entries.size() && window.size() <= prefetchEntries) {
+                    Entry next = entries.get(submitted++);
+                    window.add(prefetchExecutor.submit(() -> fetchHead(next)));
+                }
+                Future<Head> head = window.poll();
+                if (!head.isDone()) {
+                    // Let the client have everything so far, starting with the headers, while we wait
+                    zip.flush();
+                }
+                writeEntry(zip, entry, await(head));
+            }
+        } finally {
+            window.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void writeEntry(ZipOutputStream zip, Entry entry, Head head) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(entry.name());
+        if (entry.modified() != null) {
+            zipEntry.setTimeLocal(entry.modified());
+        }
+        boolean compressed = isCompressed(entry.contentType());
+        if (compressed && entry.crc32() != null) {
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(entry.size());
+            zipEntry.setCompressedSize(entry.size());
+            zipEntry.setCrc(entry.crc32());
+        } else {
+            zipEntry.setMethod(ZipEntry.DEFLATED);
+            zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+        }
+        zip.putNextEntry(zipEntry);
+        try (InputStream in = open(entry, head)) {
+            in.transferTo(zip);
+        }
+        zip.closeEntry();
+    }
+
+    // The prefetched head followed by the rest of the object, decoded when it is stored compressed
+    private InputStream open(Entry entry, Head head) throws IOException {
+        InputStream in = new ByteArrayInputStream(head.bytes());
+        if (head.bytes().length < head.storedSize()) {
+            StoredObject rest = objectCache.downloadFile(entry.storageKey(), "bytes=" + head.bytes().length + "-", null);
+            in = new SequenceInputStream(in, rest.content().openStream());
+        }
+        ContentCodec codec = ContentCodec.forEncoding(head.contentEncoding());
+        return codec == null ? in : codec.decode(in);
+    }
+
+    private Head fetchHead(Entry entry) throws IOException {
+        long limit = prefetchSize.toBytes();
+        try (StoredObject object = objectCache.downloadFile(entry.storageKey(), "bytes=0-" + (limit - 1), null)
+                .withEncodingOf(entry.blob());
+             InputStream in = object.content().openStream()) {
+            long storedSize = object.contentRange() == null ? object.contentLength()
+                    : Long.parseLong(object.contentRange().substring(object.contentRange().indexOf('/') + 1));
+            byte[] bytes = in.readNBytes((int) Math.min(limit, object.contentLength()));
+            return new Head(storedSize, object.contentEncoding(), bytes);
+        } catch (RangeNotSatisfiableException e) {
+            // Only an empty object has no first byte
+            return new Head(0, null, new byte[0]);
+        }
+    }
+
+    private static Head await(Future<Head> head) throws IOException {
+        try {
+            return head.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching archive entry");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private boolean isCompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            MimeType type = MimeType.valueOf(contentType);
+            return incompressible.stream().anyMatch(candidate -> candidate.includes(type));
+        } catch (InvalidMimeTypeException e) {
+            return false;
+        }
+    }
+
+    private static List<Entry> entries(List<SavedFiles> files) {
+        Set<String> used = new HashSet<>();
+        List<Entry> entries = new ArrayList<>(files.size());
+        for (SavedFiles file : files) {
+            StoredBlob blob = file.getBlob();
+            String uploaded = file.getFileName() == null ? null : StringUtils.getFilename(StringUtils.cleanPath(file.getFileName()));
+            if (uploaded == null || uploaded.isBlank()) {
+                uploaded = blob.getSha256();
+            }
+            String name = uploaded;
+            for (int count = 2; !used.add(name.toLowerCase(Locale.ROOT)); count++) {
+                int dot = uploaded.lastIndexOf('.');
+                name = dot > 0 ? uploaded.substring(0, dot) + " (" + count + ")" + uploaded.substring(dot)
+                        : uploaded + " (" + count + ")";
+            }
+            // The sniffed type, once there is one, beats whatever the client claimed
+            String contentType = blob.getDetectedContentType() != null ? blob.getDetectedContentType() : blob.getContentType();
+            entries.add(new Entry(name, blob.getStorageKey(), blob.getSize(), contentType, blob.getCrc32(),
+                    blob.getCreated_at(), blob));
+        }
+        return entries;
+    }
+
+    private record Entry(String name, String storageKey, long size, String contentType, Long crc32,
+                         LocalDateTime modified, StoredBlob blob) {
+    }
+
+    // First bytes of an object as stored; storedSize is the whole object's
+    private record Head(long storedSize, String contentEncoding, byte[] bytes) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.cloudvault.demo.utils;
+
+import java.util.Set;
+
+/**
+ * Content type from a file's leading magic bytes, for the types CloudVault users upload most.
+ * The type a client declares on upload is only a hint and is often generic or wrong.
+ */
+public final class ContentSniffer {
+
+    // Enough for every signature below
+    public static final int HEADER_SIZE = 16;
+
+    // Formats the JDK's ImageIO can decode for previews
+    private static final Set<String> PREVIEWABLE = Set.of("image/png", "image/jpeg", "image/gif", "image/bmp");
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * @param h the first {@link #HEADER_SIZE} bytes of the content, or all of it if shorter
+     * @return the detected type, or null if the content matches none of the known signatures
+     */
+    public static String sniff(byte[] h) {
+        if (startsWith(h, 0, "%PDF-")) {
+            return "application/pdf";
+        }
+        if (startsWith(h, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(h, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(h, 0, "GIF87a") || startsWith(h, 0, "GIF89a")) {
+            return "image/gif";
+        }
+        if (startsWith(h, 0, "RIFF") && startsWith(h, 8, "WEBP")) {
+            return "image/webp";
+        }
+        if (startsWith(h, 0, "BM")) {
+            return "image/bmp";
+        }
+        if (startsWith(h, 4, "ftypqt")) {
+            return "video/quicktime";
+        }
+        if (startsWith(h, 4, "ftyp")) {
+            return "video/mp4";
+        }
+        if (startsWith(h, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return "video/webm";
+        }
+        if (startsWith(h, 0, "ID3") || startsWith(h, 0, 0xFF, 0xFB)) {
+            return "audio/mpeg";
+        }
+        if (startsWith(h, 0, 'P', 'K', 0x03, 0x04)) {
+            return "application/zip";
+        }
+        if (startsWith(h, 0, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        return null;
+    }
+
+    public static boolean isPreviewable(String contentType) {
+        return contentType != null && PREVIEWABLE.contains(contentType);
+    }
+
+    private static boolean startsWith(byte[] header, int offset, String signature) {
+        return startsWith(header, offset, signature.chars().toArray());
+    }
+
+    private static boolean startsWith(byte[] header, int offset, int... signature) {
+        if (header.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((header[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,5 +1,10 @@
 package com.example.cloudvault.demo.utils;
 
+import com.example.cloudvault.demo.services.FolderConflictException;
+import com.example.cloudvault.demo.services.PasswordHashingBusyException;
+import com.example.cloudvault.demo.services.QuotaExceededException;
+import com.example.cloudvault.demo.services.TransferLimitException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MissingServletRequestParameterException;
@@ -20,6 +25,42 @@ public class GlobalExceptionHandler {
         ));
     }
 
+    @ExceptionHandler(TransferLimitException.class)
+    public ResponseEntity<?> handleTransferLimit(TransferLimitException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(Map.of(
+                        "status", false,
+                        "message", ex.getMessage()
+                ));
+    }
+
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<?> handlePasswordHashingBusy(PasswordHashingBusyException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(Map.of(
+                        "status", false,
+                        "message", ex.getMessage()
+                ));
+    }
+
+    @ExceptionHandler(FolderConflictException.class)
+    public ResponseEntity<?> handleFolderConflict(FolderConflictException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                "status", false,
+                "message", ex.getMessage()
+        ));
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<?> handleQuotaExceeded(QuotaExceededException ex) {
+        return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(Map.of(
+                "status", false,
+                "message", ex.getMessage()
+        ));
+    }
+
     // (Optional) catch any other exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<?> handleGeneralException(Exception ex) {
@@ -1,5 +1,10 @@
 package com.example.cloudvault.demo.utils;
 
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.services.UserDetailServiceImpl;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -7,8 +12,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -22,7 +26,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtUtil jwtService; // Service to validate JWT
 
     @Autowired
-    private UserDetailsService userDetailsService;
+    private UserDetailServiceImpl userDetailsService;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -36,18 +43,47 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         final String jwt = authHeader.substring(7); // Remove "Bearer " prefix
-        final String username = jwtService.extractUsername(jwt);
+        // Timed on its own, the rest of the chain is the request itself
+        Observation observation = Observation.createNotStarted("cloudvault.auth", observationRegistry)
+                .contextualName("jwt authentication")
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            observation.lowCardinalityKeyValue("outcome", authenticate(jwt, request));
+        } catch (RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+        filterChain.doFilter(request, response);
+    }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+    // Sets the principal when the token is good; either way the caller carries on and security rules decide
+    private String authenticate(String jwt, HttpServletRequest request) {
+        final JwtUtil.VerifiedToken token;
+        try {
+            // Signature and expiry are checked together in one parse
+            token = jwtService.verify(jwt);
+        } catch (JwtException | IllegalArgumentException e) {
+            return "invalid_token";
+        }
+        final String username = token.subject();
 
-            if (jwtService.validateToken(jwt)) {
-                UsernamePasswordAuthenticationToken authToken =
-                        new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
-            }
+        if (username == null || SecurityContextHolder.getContext().getAuthentication() != null) {
+            return "skipped";
         }
-        filterChain.doFilter(request, response);
+        final AuthenticatedUser user;
+        try {
+            // Cached principal, no users-table query once warm
+            user = userDetailsService.loadAuthenticatedUser(username);
+        } catch (UsernameNotFoundException e) {
+            return "unknown_user";
+        }
+
+        UsernamePasswordAuthenticationToken authToken =
+                new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+        authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+        return "authenticated";
     }
 }
@@ -0,0 +1,100 @@
+package com.example.cloudvault.demo.benchmarks;
+
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.services.UserDetailServiceImpl;
+import com.example.cloudvault.demo.utils.JwtAuthenticationFilter;
+import com.example.cloudvault.demo.utils.JwtUtil;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issue at login and the whole JwtAuthenticationFilter pass every authenticated request makes,
+ * with the principal lookup stubbed out so only the filter's own work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthFilterBenchmark {
+
+    private static final String EMAIL = "someone@example.com";
+
+    private JwtUtil jwtUtil;
+    private JwtAuthenticationFilter filter;
+    private String token;
+    private String forgedToken;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", 10_000L);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+
+        AuthenticatedUser principal = new AuthenticatedUser(7L, EMAIL, List.of(new SimpleGrantedAuthority("ROLE_CUSTOMER")));
+        UserDetailServiceImpl userDetailsService = new UserDetailServiceImpl() {
+            @Override
+            public AuthenticatedUser loadAuthenticatedUser(String email) {
+                return principal;
+            }
+        };
+
+        filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtService", jwtUtil);
+        ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+        ReflectionTestUtils.setField(filter, "observationRegistry", ObservationRegistry.NOOP);
+
+        token = jwtUtil.generateToken(EMAIL);
+        // Same claims, signature of another token, so it fails verification on every request
+        String other = jwtUtil.generateToken("someone-else@example.com");
+        forgedToken = token.substring(0, token.lastIndexOf('.')) + other.substring(other.lastIndexOf('.'));
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtUtil.generateToken(EMAIL);
+    }
+
+    @Benchmark
+    public Authentication authenticatedRequest() throws ServletException, IOException {
+        return filter(token);
+    }
+
+    @Benchmark
+    public Authentication rejectedToken() throws ServletException, IOException {
+        return filter(forgedToken);
+    }
+
+    private Authentication filter(String bearer) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/files/my");
+        request.addHeader("Authorization", "Bearer " + bearer);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.cloudvault.demo.benchmarks;
+
+import com.example.cloudvault.demo.services.ContentCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU against bytes saved for each codec and level, on 1 MiB of typical uploads. The score is MiB of
+ * original content per second on one thread; the {@code rawBytes} and {@code storedBytes} counters are
+ * the same rate in bytes in and bytes out, so their quotient is the compression ratio. {@code random}
+ * stands in for already compressed files and shows what compressing them would cost for nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int SIZE = 1024 * 1024;
+
+    @Param({"gzip", "zstd"})
+    public String codec;
+
+    // 0 is the codec's default (6 for gzip, 3 for zstd)
+    @Param({"1", "0", "9"})
+    public int level;
+
+    @Param({"json", "csv", "log", "random"})
+    public String data;
+
+    private ContentCodec contentCodec;
+    private byte[] original;
+    private byte[] compressed;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long rawBytes;
+        public long storedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0;
+            storedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        contentCodec = ContentCodec.forEncoding(codec);
+        original = switch (data) {
+            case "json" -> json();
+            case "csv" -> csv();
+            case "log" -> log();
+            default -> {
+                byte[] bytes = new byte[SIZE];
+                new Random(42).nextBytes(bytes);
+                yield bytes;
+            }
+        };
+        compressed = compress(original).toByteArray();
+    }
+
+    @Benchmark
+    public int compress(Bytes bytes) throws IOException {
+        int size = compress(original).size();
+        bytes.rawBytes += original.length;
+        bytes.storedBytes += size;
+        return size;
+    }
+
+    @Benchmark
+    public long decompress(Bytes bytes) throws IOException {
+        try (InputStream in = contentCodec.decode(new ByteArrayInputStream(compressed))) {
+            long size = in.transferTo(OutputStream.nullOutputStream());
+            bytes.rawBytes += size;
+            bytes.storedBytes += compressed.length;
+            return size;
+        }
+    }
+
+    private ByteArrayOutputStream compress(byte[] content) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(content.length);
+        try (OutputStream out = contentCodec.encode(buffer, level)) {
+            out.write(content);
+        }
+        return buffer;
+    }
+
+    // A file listing export, the kind of JSON users actually store
+    private static byte[] json() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder("[");
+        for (int id = 1; text.length() < SIZE; id++) {
+            text.append("{\"id\":").append(id)
+                    .append(",\"fileName\":\"holiday-photo-").append(random.nextInt(100_000)).append(".jpg\"")
+                    .append(",\"size\":").append(random.nextInt(50_000_000))
+                    .append(",\"sha256\":\"").append(Long.toHexString(random.nextLong())).append(Long.toHexString(random.nextLong())).append("\"")
+                    .append(",\"createdAt\":\"").append(LocalDateTime.of(2025, 1, 1, 0, 0).plusSeconds(random.nextInt(30_000_000))).append("\"},");
+        }
+        return truncate(text.append("{}]"));
+    }
+
+    private static byte[] csv() {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder("date,store,sku,quantity,unit_price\n");
+        while (text.length() < SIZE) {
+            text.append("2025-").append(1 + random.nextInt(12)).append('-').append(1 + random.nextInt(28))
+                    .append(",store-").append(random.nextInt(40))
+                    .append(",SKU").append(10_000 + random.nextInt(5_000))
+                    .append(',').append(1 + random.nextInt(20))
+                    .append(',').append(random.nextInt(10_000) / 100.0).append('\n');
+        }
+        return truncate(text);
+    }
+
+    private static byte[] log() {
+        Random random = new Random(42);
+        String[] levels = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+        String[] messages = {"Saved file {}", "Content {} already stored, skipping upload", "Processed blob {} as image/png",
+                "Garbage-collected blob {}", "Could not delete preview {}: timeout"};
+        StringBuilder text = new StringBuilder();
+        LocalDateTime time = LocalDateTime.of(2025, 11, 20, 9, 30);
+        while (text.length() < SIZE) {
+            time = time.plusNanos(random.nextInt(50_000_000));
+            text.append(time).append(' ').append(levels[random.nextInt(levels.length)])
+                    .append(" [http-nio-8080-exec-").append(1 + random.nextInt(200)).append("] c.e.c.d.s.StoredBlobService : ")
+                    .append(messages[random.nextInt(messages.length)].replace("{}", Long.toHexString(random.nextLong())))
+                    .append('\n');
+        }
+        return truncate(text);
+    }
+
+    private static byte[] truncate(StringBuilder text) {
+        text.setLength(SIZE);
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,444 @@
+package com.example.cloudvault.demo.benchmarks;
+
+import com.example.cloudvault.demo.CloudVaultApplication;
+import com.example.cloudvault.demo.support.LocalS3Server;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * End-to-end load test. Boots the whole application on an in-memory H2 database, with objects on
+ * {@link LocalS3Server} (the real S3Service and transfer engine against a stub with per-request latency
+ * and per-connection bandwidth) or on the local disk backend, then drives it over HTTP with virtual
+ * users. Each user registers, logs in and then runs a weighted mix of register, login, upload, list,
+ * download and delete until the run ends. Throughput and p50/p95/p99/p99.9 latency per endpoint are
+ * printed and written as JSON to {@code out}.
+ * <p>
+ * Options are {@code key=value} arguments:
+ * <ul>
+ *     <li>{@code concurrency} - virtual users, default 32</li>
+ *     <li>{@code warmup}, {@code duration} - unrecorded lead-in and measured run, default 10s and 30s</li>
+ *     <li>{@code mix} - operation weights, default {@value #DEFAULT_MIX}</li>
+ *     <li>{@code file-sizes} - upload size weights, default {@value #DEFAULT_FILE_SIZES}</li>
+ *     <li>{@code storage} - {@code s3} (stub, default) or {@code local}</li>
+ *     <li>{@code s3-latency}, {@code s3-bandwidth} - stub latency per request and bandwidth per
+ *     connection, default 10ms and 100MB per second</li>
+ *     <li>{@code virtual-threads} - spring.threads.virtual.enabled for the app, default true</li>
+ *     <li>{@code seed}, {@code out}</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    static final String DEFAULT_MIX = "register=1,login=4,upload=15,list=35,download=35,delete=10";
+    static final String DEFAULT_FILE_SIZES = "4KB=50,256KB=35,2MB=12,20MB=3";
+
+    private static final String PASSWORD = "load-test-password";
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+    // Each upload starts with random bytes so content-addressed storage never deduplicates it
+    private static final int UNIQUE_PREFIX = 16;
+
+    private final Map<String, String> options;
+    private final URI baseUri;
+    private final HttpClient client;
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final String runId = UUID.randomUUID().toString().substring(0, 8);
+    private final AtomicLong accounts = new AtomicLong();
+
+    private final Weighted<String> mix;
+    private final Weighted<Long> fileSizes;
+    private final Map<Long, byte[]> fileBodies = new HashMap<>();
+    private final Map<String, EndpointStats> stats = new ConcurrentHashMap<>();
+
+    private volatile long recordFrom;
+    private volatile long runUntil;
+
+    private LoadTest(Map<String, String> options, URI baseUri, HttpClient client) {
+        this.options = options;
+        this.baseUri = baseUri;
+        this.client = client;
+        this.mix = Weighted.parse(options.get("mix"), name -> name);
+        this.fileSizes = Weighted.parse(options.get("file-sizes"), size -> DataSize.parse(size).toBytes());
+        Random random = new Random(seed());
+        for (Long size : fileSizes.values()) {
+            byte[] body = new byte[(int) Math.max(0, size - UNIQUE_PREFIX)];
+            random.nextBytes(body);
+            fileBodies.put(size, body);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        // The stub stores request bodies as sent, so no aws-chunked checksum trailers
+        System.setProperty("aws.requestChecksumCalculation", "when_required");
+        System.setProperty("aws.responseChecksumValidation", "when_required");
+
+        Path work = Files.createTempDirectory("cloudvault-loadtest");
+        LocalS3Server s3 = null;
+        ConfigurableApplicationContext app = null;
+        try {
+            if (options.get("storage").equals("s3")) {
+                s3 = new LocalS3Server(DurationStyle.detectAndParse(options.get("s3-latency")).toMillis(),
+                        DataSize.parse(options.get("s3-bandwidth")).toBytes());
+            }
+            SpringApplicationBuilder builder = new SpringApplicationBuilder(CloudVaultApplication.class)
+                    .properties(applicationProperties(options, work, s3));
+            if (s3 != null) {
+                // The dev profile is the one that reads static credentials
+                builder.profiles("dev");
+            }
+            app = builder.run();
+            URI baseUri = URI.create("http://localhost:" + app.getEnvironment().getProperty("local.server.port"));
+            try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+                 HttpClient client = HttpClient.newBuilder()
+                         .version(HttpClient.Version.HTTP_1_1)
+                         .executor(clientThreads)
+                         .build()) {
+                new LoadTest(options, baseUri, client).run();
+            }
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+            if (s3 != null) {
+                s3.close();
+            }
+            FileSystemUtils.deleteRecursively(work);
+        }
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("concurrency", "32");
+        options.put("warmup", "10s");
+        options.put("duration", "30s");
+        options.put("mix", DEFAULT_MIX);
+        options.put("file-sizes", DEFAULT_FILE_SIZES);
+        options.put("storage", "s3");
+        options.put("s3-latency", "10ms");
+        options.put("s3-bandwidth", "100MB");
+        options.put("virtual-threads", "true");
+        options.put("seed", "42");
+        options.put("out", "target/loadtest-result.json");
+        // Maven hands all of -Dloadtest.args over as one argument
+        for (String arg : args) {
+            for (String option : arg.trim().split("\\s+")) {
+                if (option.isEmpty()) {
+                    continue;
+                }
+                int eq = option.indexOf('=');
+                if (eq < 0 || !options.containsKey(option.substring(0, eq))) {
+                    throw new IllegalArgumentException("Unknown option " + option + ", expected one of " + options.keySet());
+                }
+                options.put(option.substring(0, eq), option.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static Map<String, Object> applicationProperties(Map<String, String> options, Path work, LocalS3Server s3) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.threads.virtual.enabled", options.get("virtual-threads"));
+        properties.put("spring.datasource.url", "jdbc:h2:mem:cloudvault-loadtest;DB_CLOSE_DELAY=-1");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+        properties.put("spring.jpa.open-in-view", false);
+        properties.put("spring.servlet.multipart.max-file-size", "5GB");
+        properties.put("spring.servlet.multipart.max-request-size", "5GB");
+        properties.put("spring.servlet.multipart.file-size-threshold", 0);
+        properties.put("spring.servlet.multipart.location", work.resolve("multipart").toString());
+        properties.put("cloudvault.users.search-indexes.enabled", false);
+        properties.put("cloudvault.cache.directory", work.resolve("cache").toString());
+        properties.put("logging.level.root", "WARN");
+        if (s3 == null) {
+            properties.put("cloudvault.storage.backend", "local");
+            properties.put("cloudvault.storage.local.root", work.resolve("objects").toString());
+        } else {
+            properties.put("cloudvault.storage.backend", "s3");
+            properties.put("cloud.aws.s3.endpoint", s3.endpoint().toString());
+            properties.put("cloud.aws.region.static", "us-east-1");
+            properties.put("cloud.aws.credentials.access-key", "load-test");
+            properties.put("cloud.aws.credentials.secret-key", "load-test");
+            properties.put("aws.bucket.name", "cloudvault");
+        }
+        try {
+            Files.createDirectories(work.resolve("multipart"));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return properties;
+    }
+
+    private void run() throws Exception {
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        Duration warmup = DurationStyle.detectAndParse(options.get("warmup"));
+        Duration duration = DurationStyle.detectAndParse(options.get("duration"));
+        System.out.printf("Load test: %s%n", options);
+
+        long now = System.nanoTime();
+        recordFrom = now + warmup.toNanos();
+        runUntil = recordFrom + duration.toNanos();
+        try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                long userSeed = seed() + i;
+                users.submit(() -> new VirtualUser(new Random(userSeed)).run());
+            }
+        }
+        report(duration);
+    }
+
+    private long seed() {
+        return Long.parseLong(options.get("seed"));
+    }
+
+    private void report(Duration duration) throws IOException {
+        double seconds = duration.toNanos() / 1e9;
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        System.out.printf("%n%-10s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(stats).entrySet()) {
+            Histogram latencies = entry.getValue().latencies;
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", latencies.getTotalCount());
+            result.put("errors", entry.getValue().errors.sum());
+            result.put("throughput", latencies.getTotalCount() / seconds);
+            result.put("p50", millis(latencies, 50));
+            result.put("p95", millis(latencies, 95));
+            result.put("p99", millis(latencies, 99));
+            result.put("p999", millis(latencies, 99.9));
+            result.put("max", latencies.getMaxValue() / 1000.0);
+            endpoints.put(entry.getKey(), result);
+            System.out.printf("%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+                    result.get("requests"), result.get("errors"), result.get("throughput"), result.get("p50"),
+                    result.get("p95"), result.get("p99"), result.get("p999"), result.get("max"));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        report.put("durationSeconds", seconds);
+        report.put("endpoints", endpoints);
+        Path out = Path.of(options.get("out"));
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        jsonMapper.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), report);
+        System.out.printf("%nResults written to %s%n", out.toAbsolutePath());
+    }
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * One simulated client with its own account. It only knows the files it has seen in its last listing.
+     */
+    private final class VirtualUser {
+
+        private final Random random;
+        private final String email;
+        private final Map<Long, String> files = new LinkedHashMap<>();
+        private String token;
+
+        VirtualUser(Random random) {
+            this.random = random;
+            this.email = newEmail();
+        }
+
+        void run() {
+            try {
+                if (!register(email) || !login()) {
+                    return;
+                }
+                while (System.nanoTime() < runUntil) {
+                    switch (mix.pick(random)) {
+                        case "register" -> register(newEmail());
+                        case "login" -> login();
+                        case "list" -> list();
+                        case "download" -> {
+                            if (files.isEmpty()) {
+                                upload();
+                            } else {
+                                download();
+                            }
+                        }
+                        case "delete" -> {
+                            if (files.isEmpty()) {
+                                upload();
+                            } else {
+                                delete();
+                            }
+                        }
+                        default -> upload();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean register(String email) throws InterruptedException {
+            String body = "{\"username\":\"" + email.substring(0, email.indexOf('@')) + "\",\"email\":\"" + email
+                    + "\",\"password\":\"" + PASSWORD + "\"}";
+            return send("register", json("/api/auth/register", body), HttpResponse.BodyHandlers.discarding()) != null;
+        }
+
+        private boolean login() throws InterruptedException {
+            String body = "{\"email\":\"" + email + "\",\"password\":\"" + PASSWORD + "\"}";
+            HttpResponse<String> response = send("login", json("/api/auth/login", body), HttpResponse.BodyHandlers.ofString());
+            if (response == null) {
+                return false;
+            }
+            token = jsonMapper.readTree(response.body()).path("data").path("token").asString();
+            return true;
+        }
+
+        private void upload() throws InterruptedException {
+            long size = fileSizes.pick(random);
+            byte[] unique = new byte[(int) Math.min(size, UNIQUE_PREFIX)];
+            random.nextBytes(unique);
+            String boundary = "cloudvault-" + UUID.randomUUID();
+            byte[] head = ("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"load-"
+                    + size + ".bin\"\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+            HttpRequest request = authorized("/api/s3/upload")
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, unique, fileBodies.get(size), tail)))
+                    .build();
+            send("upload", request, HttpResponse.BodyHandlers.discarding());
+        }
+
+        private void list() throws InterruptedException {
+            HttpResponse<String> response = send("list", authorized("/api/files/my").GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response == null) {
+                return;
+            }
+            files.clear();
+            for (JsonNode file : jsonMapper.readTree(response.body()).path("files")) {
+                String link = file.path("fileLink").asString();
+                files.put(file.path("id").asLong(), link.substring(link.lastIndexOf('/') + 1));
+            }
+        }
+
+        private void download() throws InterruptedException {
+            List<String> keys = new ArrayList<>(files.values());
+            String key = keys.get(random.nextInt(keys.size()));
+            send("download", authorized("/api/s3/download/" + key).GET().build(), HttpResponse.BodyHandlers.discarding());
+        }
+
+        private void delete() throws InterruptedException {
+            List<Long> ids = new ArrayList<>(files.keySet());
+            Long id = ids.get(random.nextInt(ids.size()));
+            files.remove(id);
+            send("delete", authorized("/api/files/" + id).DELETE().build(), HttpResponse.BodyHandlers.discarding());
+        }
+
+        private HttpRequest.Builder authorized(String path) {
+            return HttpRequest.newBuilder(baseUri.resolve(path)).header("Authorization", "Bearer " + token);
+        }
+    }
+
+    private HttpRequest json(String path, String body) {
+        return HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private String newEmail() {
+        return "load-" + runId + "-" + accounts.incrementAndGet() + "@example.com";
+    }
+
+    // Only requests started inside the measured window are recorded; failures return null
+    private <T> HttpResponse<T> send(String endpoint, HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws InterruptedException {
+        long started = System.nanoTime();
+        HttpResponse<T> response;
+        try {
+            response = client.send(request, handler);
+        } catch (IOException e) {
+            response = null;
+        }
+        boolean failed = response == null || response.statusCode() >= 400;
+        if (started >= recordFrom && started < runUntil) {
+            EndpointStats endpointStats = stats.computeIfAbsent(endpoint, name -> new EndpointStats());
+            endpointStats.latencies.recordValue(Math.min(MAX_LATENCY_MICROS, (System.nanoTime() - started) / 1000));
+            if (failed) {
+                endpointStats.errors.increment();
+            }
+        }
+        return failed ? null : response;
+    }
+
+    private static final class EndpointStats {
+        final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Picks values in proportion to weights given as {@code value=weight,value=weight}.
+     */
+    private record Weighted<T>(List<T> values, int[] cumulative) {
+
+        static <T> Weighted<T> parse(String spec, java.util.function.Function<String, T> parser) {
+            List<T> values = new ArrayList<>();
+            List<Integer> cumulative = new ArrayList<>();
+            int total = 0;
+            for (String entry : spec.split(",")) {
+                String[] parts = entry.split("=");
+                int weight = Integer.parseInt(parts[1].trim());
+                if (weight <= 0) {
+                    continue;
+                }
+                total += weight;
+                values.add(parser.apply(parts[0].trim()));
+                cumulative.add(total);
+            }
+            if (values.isEmpty()) {
+                throw new IllegalArgumentException("No positive weights in " + spec);
+            }
+            return new Weighted<>(values, cumulative.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        T pick(Random random) {
+            int ticket = random.nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; i < cumulative.length; i++) {
+                if (ticket < cumulative[i]) {
+                    return values.get(i);
+                }
+            }
+            throw new IllegalStateException();
+        }
+    }
+}
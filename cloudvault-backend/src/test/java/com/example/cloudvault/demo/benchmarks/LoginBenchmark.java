@@ -0,0 +1,119 @@
+package com.example.cloudvault.demo.benchmarks;
+
+import com.example.cloudvault.demo.entities.UserCredentials;
+import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import com.example.cloudvault.demo.services.PasswordHasher;
+import com.example.cloudvault.demo.services.UserDetailServiceImpl;
+import com.example.cloudvault.demo.services.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Successful logins per second with every core busy, the old way (AuthenticationManager, then a second
+ * lookup for the token) against UserService.login (one lookup, BCrypt on the PasswordHasher pool).
+ * Divide the score by the core count for logins/sec per core. {@code lookupMicros} stands in for
+ * the users table round trip, which the old path pays twice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Threads(Threads.MAX)
+@Fork(1)
+public class LoginBenchmark {
+
+    private static final String EMAIL = "someone@example.com";
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"10"})
+    public int strength;
+
+    @Param({"0", "500"})
+    public long lookupMicros;
+
+    private AuthenticationManager authenticationManager;
+    private UserService userService;
+    private PasswordHasher passwordHasher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        UserEntity user = new UserEntity();
+        user.setUserId(1L);
+        user.setUsername("someone");
+        user.setEmail(EMAIL);
+        user.setPassword(encoder.encode(PASSWORD));
+        UserRepository userRepository = repository(user);
+
+        UserDetailServiceImpl userDetailsService = new UserDetailServiceImpl();
+        ReflectionTestUtils.setField(userDetailsService, "userRepository", userRepository);
+        DaoAuthenticationProvider provider = new DaoAuthenticationProvider(userDetailsService);
+        provider.setPasswordEncoder(encoder);
+        authenticationManager = new ProviderManager(provider);
+
+        passwordHasher = new PasswordHasher();
+        ReflectionTestUtils.setField(passwordHasher, "passwordEncoder", encoder);
+        // Room for every benchmark thread, so nothing is shed
+        ReflectionTestUtils.setField(passwordHasher, "queueCapacity", 1024);
+        ReflectionTestUtils.invokeMethod(passwordHasher, "init");
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userService, "passwordHasher", passwordHasher);
+        ReflectionTestUtils.invokeMethod(userService, "init");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(passwordHasher, "shutdown");
+    }
+
+    // What AuthController.loginPost did before: authenticate, then look the user up again
+    @Benchmark
+    public Object authenticationManager() {
+        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(EMAIL, PASSWORD));
+        return userService.findByEmail(EMAIL);
+    }
+
+    @Benchmark
+    public Object login() {
+        return userService.login(new UserCredentials(EMAIL, PASSWORD));
+    }
+
+    private UserRepository repository(UserEntity user) {
+        return (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+                new Class<?>[]{UserRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findByEmail")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    if (lookupMicros > 0) {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(lookupMicros));
+                    }
+                    return user.getEmail().equals(args[0]) ? Optional.of(user) : Optional.empty();
+                });
+    }
+}
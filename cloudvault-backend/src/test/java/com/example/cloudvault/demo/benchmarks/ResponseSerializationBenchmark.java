@@ -0,0 +1,94 @@
+package com.example.cloudvault.demo.benchmarks;
+
+import com.example.cloudvault.demo.entities.SavedFileSummary;
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.entities.UserSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON writing of the listing responses at the default and the maximum page size. {@code entities} is
+ * the shape the endpoints used to return (whole SavedFiles with their UserEntity, whole UserEntity rows),
+ * {@code summaries} the projections they return now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"entities", "summaries"})
+    public String shape;
+
+    // Same defaults as the mapper Spring MVC writes responses with
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+
+    private Map<String, Object> filesResponse;
+    private Map<String, Object> usersResponse;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime created = LocalDateTime.of(2025, 11, 20, 9, 30);
+        UserEntity owner = new UserEntity(7L, "alice", "$2a$10$" + "x".repeat(53), "alice@example.com", created, created);
+        List<SavedFiles> files = new ArrayList<>();
+        List<UserEntity> users = new ArrayList<>();
+        for (long id = 1; id <= size; id++) {
+            String name = "holiday-photo-" + id + ".jpg";
+            String link = "https://cloudvault.s3.eu-north-1.amazonaws.com/" + Long.toHexString(id * 0x9E3779B97F4A7C15L) + "0".repeat(48);
+            files.add(SavedFiles.builder().id(id).fileName(name).fileLink(link).user(owner).build());
+            users.add(new UserEntity(id, "user" + id, "$2a$10$" + "x".repeat(53), "user" + id + "@example.com", created, created));
+        }
+
+        if (shape.equals("entities")) {
+            filesResponse = Map.of("status", true, "files", files);
+            usersResponse = Map.of("status", true, "users", users);
+        } else {
+            filesResponse = new LinkedHashMap<>();
+            filesResponse.put("status", true);
+            filesResponse.put("files", files.stream()
+                    .map(file -> new SavedFileSummary(file.getId(), file.getFileName(), file.getFileLink(),
+                            "/", 1_048_576L, "image/jpeg", created))
+                    .toList());
+            filesResponse.put("nextCursor", (long) size);
+            usersResponse = new LinkedHashMap<>();
+            usersResponse.put("status", true);
+            usersResponse.put("users", users.stream()
+                    .map(user -> new UserSummary(user.getUserId(), user.getUsername(), user.getEmail()))
+                    .toList());
+            usersResponse.put("nextCursor", (long) size);
+        }
+    }
+
+    @Benchmark
+    public byte[] savedFiles() {
+        return jsonMapper.writeValueAsBytes(filesResponse);
+    }
+
+    @Benchmark
+    public byte[] users() {
+        return jsonMapper.writeValueAsBytes(usersResponse);
+    }
+}
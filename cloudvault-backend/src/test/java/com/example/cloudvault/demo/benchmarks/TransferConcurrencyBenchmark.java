@@ -0,0 +1,149 @@
+package com.example.cloudvault.demo.benchmarks;
+
+import com.example.cloudvault.demo.services.LocalStorageBackend;
+import com.example.cloudvault.demo.services.StoredObject;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time for a burst of concurrent downloads against embedded Tomcat, with its default pool of
+ * 200 platform threads against one virtual thread per request. Each request waits {@code latencyMs}
+ * before streaming, standing in for the storage round trip, then serves a file from the local backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TransferConcurrencyBenchmark {
+
+    private static final String KEY = "object";
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"200", "1000"})
+    public int concurrency;
+
+    @Param({"50"})
+    public int latencyMs;
+
+    @Param({"65536"})
+    public int objectSize;
+
+    private Path root;
+    private Tomcat tomcat;
+    private ExecutorService clientThreads;
+    private HttpClient client;
+    private URI uri;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("transfer-bench");
+        LocalStorageBackend storage = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storage, "root", root.resolve("objects"));
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost/");
+        ReflectionTestUtils.invokeMethod(storage, "init");
+        byte[] data = new byte[objectSize];
+        new Random(1).nextBytes(data);
+        storage.uploadFile(new MockMultipartFile("file", data), KEY);
+
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(root.resolve("tomcat").toString());
+        Connector connector = new Connector();
+        connector.setPort(0);
+        // Room for the whole burst in the accept queue, so only the worker model differs
+        connector.setProperty("acceptCount", String.valueOf(concurrency * 2));
+        if (threads.equals("virtual")) {
+            // What spring.threads.virtual.enabled=true configures on Spring Boot's Tomcat
+            connector.getProtocolHandler().setExecutor(new VirtualThreadExecutor("bench-vt-"));
+        }
+        tomcat.setConnector(connector);
+        Context context = tomcat.addContext("", root.toString());
+        Tomcat.addServlet(context, "download", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                try (StoredObject object = storage.downloadFile(KEY, null, null)) {
+                    response.setContentLengthLong(object.contentLength());
+                    object.content().writeTo(response.getOutputStream());
+                }
+            }
+        });
+        context.addServletMappingDecoded("/download", "download");
+        tomcat.start();
+
+        clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientThreads).build();
+        uri = URI.create("http://localhost:" + connector.getLocalPort() + "/download");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        clientThreads.close();
+        tomcat.stop();
+        tomcat.destroy();
+        FileSystemUtils.deleteRecursively(root);
+    }
+
+    @Benchmark
+    public long burst() {
+        HttpRequest request = HttpRequest.newBuilder(uri).build();
+        List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()));
+        }
+        long bytes = 0;
+        for (CompletableFuture<HttpResponse<byte[]>> response : responses) {
+            HttpResponse<byte[]> completed = response.join();
+            if (completed.statusCode() != 200) {
+                throw new IllegalStateException("Status " + completed.statusCode());
+            }
+            bytes += completed.body().length;
+        }
+        return bytes;
+    }
+}
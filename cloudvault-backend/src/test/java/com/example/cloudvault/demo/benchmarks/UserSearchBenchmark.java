@@ -0,0 +1,136 @@
+package com.example.cloudvault.demo.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of GET /api/user/get-all-users against Postgres as the users table grows.
+ * {@code previousGetAllUsers} reproduces the old path: every row and column loaded, the caller
+ * filtered out in Java. The other two run the SQL that UserRepository's page queries produce.
+ * <p>
+ * Needs a scratch database, given by CLOUDVAULT_BENCH_JDBC_URL, CLOUDVAULT_BENCH_JDBC_USER and
+ * CLOUDVAULT_BENCH_JDBC_PASSWORD. The benchmark creates and drops its own bench_users table there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserSearchBenchmark {
+
+    private static final String COLUMNS = "user_id, username, email";
+
+    @Param({"10000", "100000", "1000000"})
+    public int users;
+
+    private Connection connection;
+    private PreparedStatement allUsers;
+    private PreparedStatement firstPage;
+    private PreparedStatement search;
+    private long callerId;
+
+    @Setup
+    public void setUp() throws SQLException {
+        String url = System.getenv("CLOUDVAULT_BENCH_JDBC_URL");
+        if (url == null) {
+            throw new IllegalStateException("Set CLOUDVAULT_BENCH_JDBC_URL to a scratch Postgres database");
+        }
+        connection = DriverManager.getConnection(url,
+                System.getenv("CLOUDVAULT_BENCH_JDBC_USER"), System.getenv("CLOUDVAULT_BENCH_JDBC_PASSWORD"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_users");
+            statement.execute("CREATE TABLE bench_users (user_id bigserial PRIMARY KEY, username varchar(255) NOT NULL, "
+                    + "password varchar(255) NOT NULL, email varchar(255) NOT NULL UNIQUE, "
+                    + "created_at timestamp, updated_at timestamp)");
+            statement.execute("INSERT INTO bench_users (username, password, email, created_at, updated_at) "
+                    + "SELECT 'user' || g, repeat('x', 60), 'user' || g || '@example.com', now(), now() "
+                    + "FROM generate_series(1, " + users + ") g");
+            // Same indexes as UserSearchIndexes creates on users
+            statement.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            statement.execute("CREATE INDEX ON bench_users USING gin (lower(username) gin_trgm_ops)");
+            statement.execute("CREATE INDEX ON bench_users USING gin (lower(email) gin_trgm_ops)");
+            statement.execute("ANALYZE bench_users");
+        }
+        callerId = users / 2;
+        allUsers = connection.prepareStatement("SELECT * FROM bench_users");
+        firstPage = connection.prepareStatement("SELECT " + COLUMNS + " FROM bench_users "
+                + "WHERE user_id <> ? AND user_id > ? ORDER BY user_id LIMIT ?");
+        search = connection.prepareStatement("SELECT " + COLUMNS + " FROM bench_users "
+                + "WHERE user_id <> ? AND user_id > ? "
+                + "AND (lower(username) LIKE ? ESCAPE '!' OR lower(email) LIKE ? ESCAPE '!') "
+                + "ORDER BY user_id LIMIT ?");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS bench_users");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Object[]> previousGetAllUsers() throws SQLException {
+        List<Object[]> result = new ArrayList<>();
+        try (ResultSet rows = allUsers.executeQuery()) {
+            while (rows.next()) {
+                if (rows.getLong("user_id") != callerId) {
+                    result.add(new Object[]{rows.getLong("user_id"), rows.getString("username"),
+                            rows.getString("password"), rows.getString("email"),
+                            rows.getTimestamp("created_at"), rows.getTimestamp("updated_at")});
+                }
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Object[]> firstPage() throws SQLException {
+        firstPage.setLong(1, callerId);
+        firstPage.setLong(2, 0L);
+        firstPage.setInt(3, 51);
+        return read(firstPage);
+    }
+
+    @Benchmark
+    public List<Object[]> search() throws SQLException {
+        String pattern = "%user" + (users / 3) + "%";
+        search.setLong(1, callerId);
+        search.setLong(2, 0L);
+        search.setString(3, pattern);
+        search.setString(4, pattern);
+        search.setInt(5, 51);
+        return read(search);
+    }
+
+    private static List<Object[]> read(PreparedStatement statement) throws SQLException {
+        List<Object[]> result = new ArrayList<>();
+        try (ResultSet rows = statement.executeQuery()) {
+            while (rows.next()) {
+                result.add(new Object[]{rows.getLong(1), rows.getString(2), rows.getString(3)});
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.cloudvault.demo.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheValidatorTest {
+
+    private final CacheValidator validator = new CacheValidator("\"abc\"", Instant.parse("2025-11-20T09:30:00.250Z"));
+
+    @Test
+    void entityTagsAreComparedWeakly() {
+        assertThat(validator.notModified("\"abc\"", null)).isTrue();
+        assertThat(validator.notModified("W/\"abc\"", null)).isTrue();
+        assertThat(validator.notModified("\"old\", W/\"abc\"", null)).isTrue();
+        assertThat(validator.notModified("*", null)).isTrue();
+        assertThat(validator.notModified("\"old\"", null)).isFalse();
+        assertThat(new CacheValidator("W/\"abc\"", null).notModified("\"abc\"", null)).isTrue();
+    }
+
+    @Test
+    void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+        String later = "Thu, 20 Nov 2025 10:00:00 GMT";
+
+        assertThat(validator.notModified(null, later)).isTrue();
+        assertThat(validator.notModified("\"old\"", later)).isFalse();
+    }
+
+    @Test
+    void modificationTimesAreComparedToTheSecond() {
+        assertThat(validator.notModified(null, "Thu, 20 Nov 2025 09:30:00 GMT")).isTrue();
+        assertThat(validator.notModified(null, "Thu, 20 Nov 2025 09:29:59 GMT")).isFalse();
+        assertThat(validator.notModified(null, "yesterday")).isFalse();
+        assertThat(new CacheValidator("\"abc\"", null).notModified(null, "Thu, 20 Nov 2025 09:30:00 GMT")).isFalse();
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.Folder;
+import com.example.cloudvault.demo.entities.FolderListing;
+import com.example.cloudvault.demo.entities.FolderSummary;
+import com.example.cloudvault.demo.entities.SavedFileSummary;
+import com.example.cloudvault.demo.entities.SubtreePage;
+import com.example.cloudvault.demo.repositories.FolderRepository;
+import com.example.cloudvault.demo.repositories.SavedFilesRepository;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FolderServiceTest {
+
+    private FolderRepository folderRepository;
+    private SavedFilesRepository savedFilesRepository;
+    private StorageQuotaService storageQuotaService;
+    private FolderService folderService;
+
+    @BeforeEach
+    void setUp() {
+        folderRepository = mock(FolderRepository.class);
+        savedFilesRepository = mock(SavedFilesRepository.class);
+        folderService = new FolderService();
+        ReflectionTestUtils.setField(folderService, "folderRepository", folderRepository);
+        ReflectionTestUtils.setField(folderService, "savedFilesRepository", savedFilesRepository);
+        ReflectionTestUtils.setField(folderService, "userRepository", mock(UserRepository.class));
+        storageQuotaService = mock(StorageQuotaService.class);
+        ReflectionTestUtils.setField(folderService, "storageQuotaService", storageQuotaService);
+        ReflectionTestUtils.setField(folderService, "transactionTemplate",
+                new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(folderService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(folderService, "maxPageSize", 3);
+    }
+
+    @Test
+    void pathsAreNormalizedAndSplit() {
+        assertThat(FolderService.normalize(null)).isEqualTo("/");
+        assertThat(FolderService.normalize("photos//2025")).isEqualTo("/photos/2025/");
+        assertThat(FolderService.parentOf("/photos/2025/")).isEqualTo("/photos/");
+        assertThat(FolderService.parentOf("/photos/")).isEqualTo("/");
+        assertThat(FolderService.nameOf("/photos/2025/")).isEqualTo("2025");
+        // Sorts after "/photos/" and everything under it, before "/photos0" and "/photosx/"
+        assertThat(FolderService.upperBound("/photos/")).isEqualTo("/photos0");
+        assertThatThrownBy(() -> FolderService.normalize("/photos/../secrets"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void onlyMissingFoldersAreCreated() {
+        when(folderRepository.existsByPath(7L, "/a/b/c/")).thenReturn(false);
+        when(folderRepository.existsByPath(7L, "/a/b/")).thenReturn(false);
+        when(folderRepository.existsByPath(7L, "/a/")).thenReturn(true);
+
+        folderService.ensure(7L, "/a/b/c/");
+
+        verify(folderRepository).save(argThat(folder -> folder.getPath().equals("/a/b/")
+                && folder.getParentPath().equals("/a/") && folder.getName().equals("b")));
+        verify(folderRepository).save(argThat(folder -> folder.getPath().equals("/a/b/c/")));
+        verify(folderRepository, never()).existsByPath(7L, "/");
+        verify(storageQuotaService).touch(7L);
+    }
+
+    @Test
+    void listingPagesFilesAndOnlyListsSubfoldersOnce() {
+        when(folderRepository.existsByPath(7L, "/docs/")).thenReturn(true);
+        when(folderRepository.findChildren(7L, "/docs/")).thenReturn(List.of(new FolderSummary(3L, "old", "/docs/old/")));
+        when(savedFilesRepository.findPageInFolder(7L, "/docs/", 0L, Limit.of(3))).thenReturn(rows("/docs/", 10, 11, 12));
+        when(savedFilesRepository.findPageInFolder(7L, "/docs/", 11L, Limit.of(3))).thenReturn(rows("/docs/", 12));
+
+        FolderListing first = folderService.list(7L, "/docs/", null, null).orElseThrow();
+        FolderListing second = folderService.list(7L, "/docs/", first.nextCursor(), null).orElseThrow();
+
+        assertThat(first.folders()).extracting(FolderSummary::name).containsExactly("old");
+        assertThat(first.files()).extracting(SavedFileSummary::id).containsExactly(10L, 11L);
+        assertThat(first.nextCursor()).isEqualTo(11L);
+        assertThat(second.folders()).isEmpty();
+        assertThat(second.nextCursor()).isNull();
+        assertThat(folderService.list(7L, "/missing/", null, null)).isEmpty();
+    }
+
+    @Test
+    void subtreeCursorResumesAfterTheLastFolderAndId() {
+        when(savedFilesRepository.findPageInSubtree(7L, "/docs/", "/docs0", 0L, Limit.of(3)))
+                .thenReturn(List.of(row(10, "/docs/"), row(4, "/docs/a/"), row(5, "/docs/a/")));
+        when(savedFilesRepository.findPageInSubtree(7L, "/docs/a/", "/docs0", 4L, Limit.of(3)))
+                .thenReturn(List.of(row(5, "/docs/a/")));
+
+        SubtreePage first = folderService.listSubtree(7L, "/docs/", null, null);
+        SubtreePage second = folderService.listSubtree(7L, "/docs/", first.nextCursor(), null);
+
+        assertThat(first.nextCursor()).isEqualTo("4:/docs/a/");
+        assertThat(second.files()).extracting(SavedFileSummary::id).containsExactly(5L);
+        assertThat(second.nextCursor()).isNull();
+        assertThatThrownBy(() -> folderService.listSubtree(7L, "/docs/", "4:/other/", null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void moveRewritesPathsUnderTheFolder() {
+        Folder folder = Folder.builder().id(3L).path("/docs/old/").parentPath("/docs/").name("old").build();
+        when(folderRepository.findByPath(7L, "/docs/old/")).thenReturn(Optional.of(folder));
+        when(folderRepository.existsByPath(eq(7L), anyString())).thenReturn(false);
+        when(folderRepository.existsByPath(7L, "/archive/")).thenReturn(true);
+
+        assertThat(folderService.move(7L, "/docs/old/", "/archive/2024/")).isTrue();
+
+        verify(folderRepository).moveDescendants(7L, "/docs/old/", "/docs/old0", "/archive/2024/", 11);
+        verify(savedFilesRepository).moveSubtree(eq(7L), eq("/docs/old/"), eq("/docs/old0"), eq("/archive/2024/"),
+                eq(11), any());
+        assertThat(folder.getPath()).isEqualTo("/archive/2024/");
+        assertThat(folder.getParentPath()).isEqualTo("/archive/");
+        assertThat(folder.getName()).isEqualTo("2024");
+        // Listings cached before the move no longer revalidate
+        verify(storageQuotaService).touch(7L);
+    }
+
+    @Test
+    void parentsOfTheTargetAreCreatedOutsideTheMoveTransaction() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        ReflectionTestUtils.setField(folderService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        Folder folder = Folder.builder().id(3L).path("/docs/old/").parentPath("/docs/").name("old").build();
+        when(folderRepository.findByPath(7L, "/docs/old/")).thenReturn(Optional.of(folder));
+        when(folderRepository.save(any())).thenThrow(new DataIntegrityViolationException("duplicate")).thenReturn(folder);
+
+        assertThat(folderService.move(7L, "/docs/old/", "/archive/2024/")).isTrue();
+
+        // A concurrent insert of the parent is shrugged off before the move's transaction begins
+        InOrder order = inOrder(folderRepository, transactionManager);
+        order.verify(folderRepository).save(argThat(created -> created.getPath().equals("/archive/")));
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(folderRepository).moveDescendants(7L, "/docs/old/", "/docs/old0", "/archive/2024/", 11);
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void moveRefusesExistingTargetsAndItsOwnSubtree() {
+        Folder folder = Folder.builder().id(3L).path("/docs/").parentPath("/").name("docs").build();
+        when(folderRepository.findByPath(7L, "/docs/")).thenReturn(Optional.of(folder));
+        when(folderRepository.existsByPath(7L, "/papers/")).thenReturn(true);
+
+        assertThatThrownBy(() -> folderService.move(7L, "/docs/", "/papers/"))
+                .isInstanceOf(FolderConflictException.class);
+        assertThatThrownBy(() -> folderService.move(7L, "/docs/", "/docs/inner/"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(folderService.move(7L, "/missing/", "/elsewhere/")).isFalse();
+        verify(savedFilesRepository, never()).moveSubtree(any(), any(), any(), any(), anyInt(), any());
+        verify(storageQuotaService, never()).touch(any());
+    }
+
+    private static List<SavedFileSummary> rows(String folder, long... ids) {
+        return LongStream.of(ids).mapToObj(id -> row(id, folder)).toList();
+    }
+
+    private static SavedFileSummary row(long id, String folder) {
+        return new SavedFileSummary(id, "file-" + id, "link-" + id, folder, 1024L, "text/plain", null);
+    }
+}
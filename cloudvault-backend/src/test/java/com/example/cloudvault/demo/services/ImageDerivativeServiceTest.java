@@ -0,0 +1,204 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.repositories.StoredBlobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageDerivativeServiceTest {
+
+    @TempDir
+    Path root;
+
+    private LocalStorageBackend storageBackend;
+    private ObjectCache objectCache;
+    private StoredBlobRepository storedBlobRepository;
+    private ImageDerivativeService imageDerivativeService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storage, "root", root.resolve("objects"));
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost:8080/api/s3/download/");
+        storage.init();
+        storageBackend = spy(storage);
+
+        objectCache = new ObjectCache();
+        ReflectionTestUtils.setField(objectCache, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(objectCache, "enabled", true);
+        ReflectionTestUtils.setField(objectCache, "directory", root.resolve("cache"));
+        ReflectionTestUtils.setField(objectCache, "maxSize", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(objectCache, "maxObjectSize", DataSize.ofMegabytes(1));
+        objectCache.init();
+
+        storedBlobRepository = mock(StoredBlobRepository.class);
+        imageDerivativeService = new ImageDerivativeService();
+        ReflectionTestUtils.setField(imageDerivativeService, "storedBlobRepository", storedBlobRepository);
+        ReflectionTestUtils.setField(imageDerivativeService, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(imageDerivativeService, "objectCache", objectCache);
+        ReflectionTestUtils.setField(imageDerivativeService, "maxSourceSize", DataSize.ofMegabytes(32));
+        ReflectionTestUtils.setField(imageDerivativeService, "maxConcurrentRenders", 2);
+        imageDerivativeService.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        // Cache fills run behind reads, none may still be writing when the directory is removed
+        objectCache.shutdown();
+    }
+
+    @Test
+    void opaqueImagesBecomeJpegsAndTransparentOnesStayPng() throws IOException {
+        Path opaque = root.resolve("opaque.png");
+        Files.write(opaque, png(4000, 1000, BufferedImage.TYPE_INT_RGB));
+        Path transparent = root.resolve("transparent.png");
+        Files.write(transparent, png(100, 200, BufferedImage.TYPE_INT_ARGB));
+
+        ImageDerivativeService.Rendition preview = ImageDerivativeService.render(opaque, ImageDerivative.PREVIEW);
+        assertThat(preview.contentType()).isEqualTo("image/jpeg");
+        assertThat(preview.width()).isEqualTo(4000);
+        assertThat(preview.height()).isEqualTo(1000);
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(preview.content()));
+        assertThat(scaled.getWidth()).isEqualTo(1280);
+        assertThat(scaled.getHeight()).isEqualTo(320);
+
+        // Smaller than the derivative, so only re-encoded
+        ImageDerivativeService.Rendition thumbnail = ImageDerivativeService.render(transparent, ImageDerivative.THUMBNAIL);
+        assertThat(thumbnail.contentType()).isEqualTo("image/png");
+        assertThat(ImageIO.read(new ByteArrayInputStream(thumbnail.content())).getHeight()).isEqualTo(200);
+
+        Path text = root.resolve("notes.txt");
+        Files.writeString(text, "not an image");
+        assertThat(ImageDerivativeService.render(text, ImageDerivative.PREVIEW)).isNull();
+    }
+
+    @Test
+    void concurrentFirstRequestsRenderOnce() throws Exception {
+        StoredBlob blob = stored("photo", png(2000, 1500, BufferedImage.TYPE_INT_RGB), "image/png");
+        String key = ImageDerivative.PREVIEW.key(blob.getSha256());
+        CountDownLatch gate = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            gate.await();
+            return invocation.callRealMethod();
+        }).when(storageBackend).uploadBytes(eq(key), any(), anyString());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                reads.add(executor.submit(() -> {
+                    try (StoredObject object = imageDerivativeService.open(blob, ImageDerivative.PREVIEW)) {
+                        return object.openDecoded().readAllBytes();
+                    }
+                }));
+            }
+            // Every other request is waiting on the render before it is allowed to store its result
+            await().atMost(Duration.ofSeconds(10)).until(() -> waiting(key) == 7);
+            gate.countDown();
+
+            for (Future<byte[]> read : reads) {
+                BufferedImage image = ImageIO.read(new ByteArrayInputStream(read.get(10, TimeUnit.SECONDS)));
+                assertThat(image.getWidth()).isEqualTo(1280);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(storageBackend, times(1)).uploadBytes(eq(key), any(), eq("image/jpeg"));
+        assertThat(imageDerivativeService.validator(blob, ImageDerivative.PREVIEW).eTag()).isNotNull();
+    }
+
+    @Test
+    void contentThatIsNoImageHasNoDerivatives() throws IOException {
+        StoredBlob text = stored("text", "hello".getBytes(StandardCharsets.UTF_8), "text/plain");
+        StoredBlob broken = stored("broken", "not really a png".getBytes(StandardCharsets.UTF_8), "image/png");
+
+        assertThatThrownBy(() -> imageDerivativeService.open(text, ImageDerivative.THUMBNAIL))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+        assertThatThrownBy(() -> imageDerivativeService.open(broken, ImageDerivative.PREVIEW))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+        // Remembered, the original is not fetched again
+        assertThatThrownBy(() -> imageDerivativeService.open(broken, ImageDerivative.THUMBNAIL))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+
+        verify(storageBackend, never()).uploadBytes(startsWith("thumbnail-"), any(), anyString());
+        verify(storageBackend, never()).uploadBytes(startsWith("preview-"), any(), anyString());
+        verify(storageBackend, never()).downloadFile(eq("text"), any(), any());
+        // One read to render and one to fill the cache behind it, none for the second derivative
+        verify(storageBackend, timeout(5000).times(2)).downloadFile(eq("broken"), any(), any());
+        verify(storageBackend, times(1)).downloadToFile(eq("broken"), any(), anyLong());
+    }
+
+    @Test
+    void derivativeOfBlobCollectedMeanwhileIsRemoved() throws IOException {
+        StoredBlob blob = stored("photo", png(300, 300, BufferedImage.TYPE_INT_RGB), "image/png");
+        when(storedBlobRepository.findById(blob.getId())).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> imageDerivativeService.open(blob, ImageDerivative.THUMBNAIL))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+
+        assertThat(root.resolve("objects").resolve(ImageDerivative.THUMBNAIL.key(blob.getSha256()))).doesNotExist();
+    }
+
+    @SuppressWarnings("unchecked")
+    private long waiting(String key) {
+        Map<String, CompletableFuture<Boolean>> rendering =
+                (Map<String, CompletableFuture<Boolean>>) ReflectionTestUtils.getField(imageDerivativeService, "rendering");
+        CompletableFuture<Boolean> render = rendering.get(key);
+        return render == null ? 0 : render.getNumberOfDependents();
+    }
+
+    private StoredBlob stored(String key, byte[] content, String contentType) throws IOException {
+        storageBackend.uploadBytes(key, content, contentType);
+        StoredBlob blob = StoredBlob.builder().id((long) key.hashCode()).sha256(key + "-sha").storageKey(key)
+                .size((long) content.length).contentType(contentType).refCount(1L).build();
+        when(storedBlobRepository.findById(blob.getId())).thenReturn(Optional.of(blob));
+        return blob;
+    }
+
+    private static byte[] png(int width, int height, int type) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, type), "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class InProcessUploadQueueTest {
+
+    private final UploadCompletedEvent event = new UploadCompletedEvent(5L, 1L, "key");
+
+    private UploadProcessor uploadProcessor;
+    private InProcessUploadQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        uploadProcessor = mock(UploadProcessor.class);
+        queue = new InProcessUploadQueue();
+        ReflectionTestUtils.setField(queue, "uploadProcessor", uploadProcessor);
+        ReflectionTestUtils.setField(queue, "workers", 2);
+        ReflectionTestUtils.setField(queue, "queueCapacity", 100);
+        ReflectionTestUtils.setField(queue, "maxAttempts", 3);
+        ReflectionTestUtils.setField(queue, "retryBackoff", Duration.ofMillis(10));
+        queue.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        queue.shutdown();
+    }
+
+    @Test
+    void transientFailureIsRetried() throws IOException {
+        doThrow(new IOException("storage hiccup")).doNothing().when(uploadProcessor).process(event);
+
+        queue.submit(event);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> (long) queue.stats().get("processed") == 1);
+        verify(uploadProcessor, times(2)).process(event);
+        assertThat(queue.stats()).containsEntry("retried", 1L).containsEntry("deadLettered", 0L);
+    }
+
+    @Test
+    void persistentFailureIsDeadLettered() throws IOException {
+        doThrow(new IOException("corrupt")).when(uploadProcessor).process(event);
+
+        queue.submit(event);
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> (long) queue.stats().get("deadLettered") == 1);
+        verify(uploadProcessor, times(3)).process(event);
+        assertThat(queue.deadLetters()).singleElement()
+                .satisfies(entry -> assertThat(entry).containsEntry("event", event).containsEntry("attempts", 3));
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.cloudvault.demo.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalStorageBackendTest {
+
+    @TempDir
+    Path root;
+
+    private LocalStorageBackend storage;
+    private byte[] data;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storage, "root", root);
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost:8080/api/s3/download/");
+        storage.init();
+
+        data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+    }
+
+    @Test
+    void uploadAndDownloadRoundTrip() throws IOException {
+        String url = storage.uploadFile(new MockMultipartFile("file", "clip.mp4", "video/mp4", data), "abc123");
+
+        assertThat(url).isEqualTo("http://localhost:8080/api/s3/download/abc123");
+        assertThat(root.resolve("abc123")).hasBinaryContent(data);
+        try (Stream<Path> files = Files.list(root)) {
+            assertThat(files).containsExactly(root.resolve("abc123"));
+        }
+        try (StoredObject object = storage.downloadFile("abc123", null, null)) {
+            assertThat(object.contentLength()).isEqualTo(data.length);
+            assertThat(object.contentRange()).isNull();
+            assertThat(object.eTag()).startsWith("\"");
+            assertThat(read(object)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void chunksWrittenInAnyOrderAppearOnlyOnceCompleted() throws IOException {
+        int chunkSize = 1024 * 1024;
+        String uploadId = storage.startChunkedUpload("upload-1", "video/mp4");
+        for (int index : new int[]{3, 1, 0, 2}) {
+            int offset = index * chunkSize;
+            byte[] chunk = Arrays.copyOfRange(data, offset, Math.min(data.length, offset + chunkSize));
+            storage.uploadChunk("upload-1", uploadId, index, offset, () -> new ByteArrayInputStream(chunk), chunk.length);
+        }
+        assertThat(root.resolve("upload-1")).doesNotExist();
+
+        storage.completeChunkedUpload("upload-1", uploadId, List.of("", "", "", ""));
+
+        assertThat(root.resolve("upload-1")).hasBinaryContent(data);
+        try (StoredObject object = storage.downloadFile("upload-1", null, null)) {
+            assertThat(object.contentType()).isEqualTo("video/mp4");
+        }
+        // Nothing left to abort, and a late chunk finds no upload
+        storage.abortChunkedUpload("upload-1", uploadId);
+        assertThatThrownBy(() -> storage.uploadChunk("upload-1", uploadId, 0, 0,
+                () -> new ByteArrayInputStream(new byte[1]), 1)).isInstanceOf(StorageObjectNotFoundException.class);
+    }
+
+    @Test
+    void rangeIsServedFromTheRequestedOffset() throws IOException {
+        storage.uploadFile(new MockMultipartFile("file", data), "abc123");
+
+        try (StoredObject object = storage.downloadFile("abc123", "bytes=100-199", null)) {
+            assertThat(object.contentLength()).isEqualTo(100);
+            assertThat(object.contentRange()).isEqualTo("bytes 100-199/" + data.length);
+            assertThat(read(object)).isEqualTo(Arrays.copyOfRange(data, 100, 200));
+        }
+        try (StoredObject object = storage.downloadFile("abc123", "bytes=-10", null)) {
+            assertThat(read(object)).isEqualTo(Arrays.copyOfRange(data, data.length - 10, data.length));
+        }
+        assertThatThrownBy(() -> storage.downloadFile("abc123", "bytes=" + data.length + "-", null))
+                .isInstanceOf(RangeNotSatisfiableException.class);
+    }
+
+    @Test
+    void staleIfRangeFallsBackToFullObject() throws IOException {
+        storage.uploadFile(new MockMultipartFile("file", data), "abc123");
+        String eTag;
+        try (StoredObject object = storage.downloadFile("abc123", null, null)) {
+            eTag = object.eTag();
+        }
+
+        try (StoredObject object = storage.downloadFile("abc123", "bytes=0-9", eTag)) {
+            assertThat(object.contentRange()).isNotNull();
+        }
+        try (StoredObject object = storage.downloadFile("abc123", "bytes=0-9", "\"old-etag\"")) {
+            assertThat(object.contentRange()).isNull();
+            assertThat(object.contentLength()).isEqualTo(data.length);
+        }
+    }
+
+    @Test
+    void validatorMatchesWhatADownloadReturns() throws IOException {
+        storage.uploadFile(new MockMultipartFile("file", data), "abc123");
+
+        CacheValidator validator = storage.validator("abc123");
+
+        try (StoredObject object = storage.downloadFile("abc123", null, null)) {
+            assertThat(validator.eTag()).isEqualTo(object.eTag());
+            assertThat(validator.lastModified()).isEqualTo(object.lastModified());
+        }
+        assertThatThrownBy(() -> storage.validator("missing")).isInstanceOf(StorageObjectNotFoundException.class);
+    }
+
+    @Test
+    void keysOutsideTheRootAreNotFound() throws IOException {
+        Files.writeString(root.getParent().resolve("secret.txt"), "secret");
+
+        assertThatThrownBy(() -> storage.downloadFile("../secret.txt", null, null))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+        assertThatThrownBy(() -> storage.downloadFile("missing", null, null))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+    }
+
+    @Test
+    void deleteRemovesTheObject() throws IOException {
+        storage.uploadFile(new MockMultipartFile("file", data), "abc123");
+
+        storage.deleteFile("abc123");
+
+        assertThat(root.resolve("abc123")).doesNotExist();
+        assertThatThrownBy(() -> storage.downloadFile("abc123", null, null))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+    }
+
+    private static byte[] read(StoredObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        object.content().writeTo(out);
+        return out.toByteArray();
+    }
+}
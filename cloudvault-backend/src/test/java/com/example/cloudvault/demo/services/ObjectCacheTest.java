@@ -0,0 +1,289 @@
+package com.example.cloudvault.demo.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpRange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ObjectCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    private StorageBackend storageBackend;
+    private ObjectCache objectCache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageBackend = mock(StorageBackend.class);
+        when(storageBackend.downloadFile(anyString(), any(), any())).thenAnswer(invocation -> {
+            String key = invocation.getArgument(0);
+            fetches.incrementAndGet();
+            gate.await();
+            byte[] data = objects.get(key);
+            if (data == null) {
+                throw new StorageObjectNotFoundException(key);
+            }
+            String range = invocation.getArgument(1);
+            String contentRange = null;
+            if (range != null) {
+                HttpRange httpRange = HttpRange.parseRanges(range).get(0);
+                int start = (int) httpRange.getRangeStart(data.length);
+                int end = (int) httpRange.getRangeEnd(data.length);
+                contentRange = "bytes " + start + "-" + end + "/" + data.length;
+                data = Arrays.copyOfRange(data, start, end + 1);
+            }
+            return new StoredObject(data.length, "application/octet-stream", "\"" + key + "\"", Instant.EPOCH,
+                    contentRange, StoredObject.Content.of(new ByteArrayInputStream(data)));
+        });
+        when(storageBackend.downloadToFile(anyString(), any(), anyLong())).thenCallRealMethod();
+
+        objectCache = new ObjectCache();
+        ReflectionTestUtils.setField(objectCache, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(objectCache, "enabled", true);
+        ReflectionTestUtils.setField(objectCache, "directory", directory);
+        ReflectionTestUtils.setField(objectCache, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(objectCache, "maxObjectSize", DataSize.ofKilobytes(512));
+        objectCache.init();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        // No fill may still be writing when the directory is removed
+        objectCache.shutdown();
+    }
+
+    @Test
+    void repeatedReadsAreServedFromDisk() throws IOException {
+        byte[] data = put("hot", 100_000);
+
+        assertThat(read("hot", null)).isEqualTo(data);
+        awaitCached("hot");
+        assertThat(read("hot", null)).isEqualTo(data);
+        assertThat(read("hot", "bytes=10-19")).isEqualTo(Arrays.copyOfRange(data, 10, 20));
+
+        // The miss and the fill behind it, nothing after
+        assertThat(fetches.get()).isEqualTo(2);
+        assertThat(objectCache.stats()).containsEntry("hits", 2L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void missesAreStreamedWithoutWaitingForTheFill() throws IOException {
+        byte[] data = put("video", 400_000);
+        CountDownLatch fillGate = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            fillGate.await();
+            return invocation.callRealMethod();
+        }).when(storageBackend).downloadToFile(anyString(), any(), anyLong());
+
+        // Ranged reads of an object that is still being copied go to the backend for just their range
+        for (int i = 0; i < 5; i++) {
+            assertThat(read("video", "bytes=1000-1999")).isEqualTo(Arrays.copyOfRange(data, 1000, 2000));
+        }
+        verify(storageBackend, timeout(5000).times(1)).downloadToFile(eq("video"), any(), anyLong());
+        fillGate.countDown();
+        awaitCached("video");
+
+        assertThat(read("video", "bytes=0-9")).isEqualTo(Arrays.copyOfRange(data, 0, 10));
+        assertThat(objectCache.stats()).containsEntry("hits", 1L).containsEntry("misses", 5L);
+    }
+
+    @Test
+    void hitsAreHandedToTheResponseMemoryMapped() throws IOException {
+        byte[] data = put("mapped", 300_000);
+        read("mapped", null);
+        awaitCached("mapped");
+
+        List<ByteBuffer> written = new ArrayList<>();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        ServletOutputStream response = new ServletOutputStream() {
+            @Override
+            public void write(ByteBuffer buffer) {
+                written.add(buffer);
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                received.writeBytes(bytes);
+            }
+
+            @Override
+            public void write(int b) {
+                throw new AssertionError("Copied through the heap");
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener listener) {
+            }
+        };
+        try (StoredObject object = objectCache.downloadFile("mapped", "bytes=1000-", null)) {
+            object.content().writeTo(response);
+        }
+
+        assertThat(received.toByteArray()).isEqualTo(Arrays.copyOfRange(data, 1000, data.length));
+        assertThat(written).isNotEmpty().allMatch(buffer -> buffer instanceof MappedByteBuffer);
+    }
+
+    @Test
+    void concurrentMissesShareOneFill() throws Exception {
+        byte[] data = put("shared", 200_000);
+        gate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> reads = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                reads.add(executor.submit(() -> read("shared", null)));
+            }
+            // Every reader has missed before any of them gets its bytes
+            await().atMost(Duration.ofSeconds(5)).until(() -> (long) objectCache.stats().get("misses") == 8);
+            gate.countDown();
+
+            for (Future<byte[]> read : reads) {
+                assertThat(read.get(5, TimeUnit.SECONDS)).isEqualTo(data);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        awaitCached("shared");
+        verify(storageBackend, times(1)).downloadToFile(eq("shared"), any(), anyLong());
+        assertThat(fetches.get()).isEqualTo(9);
+    }
+
+    @Test
+    void evictionKeepsFilesWithinTheBudget() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            put("object-" + i, 300_000);
+            read("object-" + i, null);
+        }
+
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() -> {
+            assertThat(cachedBytes()).isLessThanOrEqualTo(DataSize.ofMegabytes(1).toBytes());
+            assertThat((long) objectCache.stats().get("evictions")).isPositive();
+        });
+    }
+
+    @Test
+    void oversizedObjectsBypassTheCache() throws IOException {
+        byte[] data = put("huge", 600_000);
+
+        assertThat(read("huge", "bytes=0-99")).isEqualTo(Arrays.copyOfRange(data, 0, 100));
+        assertThat(read("huge", null)).isEqualTo(data);
+
+        // The first response tells the size, so no fill is started and later reads skip the lookup
+        assertThat(fetches.get()).isEqualTo(2);
+        assertThat(objectCache.stats()).containsEntry("bypassed", 1L);
+        verify(storageBackend, never()).downloadToFile(anyString(), any(), anyLong());
+        assertThat(cachedBytes()).isZero();
+    }
+
+    @Test
+    void validatorsOfCachedObjectsNeedNoRequest() throws IOException {
+        put("hot", 100_000);
+        put("cold", 100_000);
+        read("hot", null);
+        awaitCached("hot");
+        when(storageBackend.validator("cold")).thenReturn(new CacheValidator("\"cold\"", Instant.EPOCH));
+
+        assertThat(objectCache.validator("hot")).isEqualTo(new CacheValidator("\"hot\"", Instant.EPOCH));
+        assertThat(objectCache.validator("cold").eTag()).isEqualTo("\"cold\"");
+
+        verify(storageBackend, never()).validator("hot");
+        verify(storageBackend).validator("cold");
+    }
+
+    @Test
+    void invalidateDropsTheLocalCopy() throws IOException {
+        put("deleted", 100_000);
+        read("deleted", null);
+        awaitCached("deleted");
+
+        objectCache.invalidate("deleted");
+        objects.remove("deleted");
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> cachedBytes() == 0);
+        assertThatThrownBy(() -> read("deleted", null)).isInstanceOf(StorageObjectNotFoundException.class);
+        assertThat(fetches.get()).isEqualTo(3);
+    }
+
+    private byte[] put(String key, int size) {
+        byte[] data = new byte[size];
+        new Random(key.hashCode()).nextBytes(data);
+        objects.put(key, data);
+        return data;
+    }
+
+    private byte[] read(String key, String range) throws IOException {
+        try (StoredObject object = objectCache.downloadFile(key, range, null)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            object.content().writeTo(out);
+            return out.toByteArray();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void awaitCached(String key) {
+        AsyncCache<String, ?> cache = (AsyncCache<String, ?>) ReflectionTestUtils.getField(objectCache, "cache");
+        await().atMost(Duration.ofSeconds(5)).until(() -> {
+            CompletableFuture<?> future = cache.asMap().get(key);
+            return future != null && future.isDone();
+        });
+    }
+
+    private long cachedBytes() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+}
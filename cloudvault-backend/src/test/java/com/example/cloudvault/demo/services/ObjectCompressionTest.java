@@ -0,0 +1,106 @@
+package com.example.cloudvault.demo.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ObjectCompressionTest {
+
+    @TempDir
+    Path root;
+
+    private LocalStorageBackend storage;
+    private SimpleMeterRegistry meterRegistry;
+    private ObjectCompression compression;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storage, "root", root);
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost:8080/api/s3/download/");
+        storage.init();
+
+        meterRegistry = new SimpleMeterRegistry();
+        compression = new ObjectCompression();
+        ReflectionTestUtils.setField(compression, "storageBackend", storage);
+        ReflectionTestUtils.setField(compression, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(compression, "enabled", true);
+        ReflectionTestUtils.setField(compression, "codecName", "zstd");
+        ReflectionTestUtils.setField(compression, "contentTypes", new String[]{"text/*", "application/json"});
+        ReflectionTestUtils.setField(compression, "minSize", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(compression, "minSaving", 0.1);
+        ReflectionTestUtils.invokeMethod(compression, "init");
+    }
+
+    @Test
+    void compressibleContentIsStoredEncodedAndReadsBackDecoded() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"file-").append(i).append(".txt\",\"shared\":false},");
+        }
+        byte[] data = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+
+        String encoding = compression.upload(new MockMultipartFile("file", "files.json", "application/json", data),
+                "abc123", "application/json; charset=utf-8");
+
+        assertThat(encoding).isEqualTo("zstd");
+        assertThat(Files.size(root.resolve("abc123"))).isLessThan(data.length / 4);
+        try (StoredObject object = storage.downloadFile("abc123", null, null);
+             InputStream in = object.openDecoded()) {
+            assertThat(object.contentEncoding()).isEqualTo("zstd");
+            assertThat(object.contentType()).isEqualTo("application/json; charset=utf-8");
+            assertThat(in.readAllBytes()).isEqualTo(data);
+        }
+        assertThat(meterRegistry.get("cloudvault.compression.bytes").tag("stage", "raw").counter().count())
+                .isEqualTo(data.length);
+    }
+
+    @Test
+    void incompressibleContentIsStoredAsUploaded() throws IOException {
+        byte[] data = new byte[64 * 1024];
+        new Random(42).nextBytes(data);
+
+        String encoding = compression.upload(new MockMultipartFile("file", data), "abc123", "text/plain");
+
+        assertThat(encoding).isNull();
+        assertThat(root.resolve("abc123")).hasBinaryContent(data);
+        try (StoredObject object = storage.downloadFile("abc123", null, null)) {
+            assertThat(object.contentEncoding()).isNull();
+        }
+        assertThat(meterRegistry.get("cloudvault.compression.objects").tag("outcome", "incompressible").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void onlyListedTypesAboveTheMinimumSizeAreCandidates() {
+        assertThat(compression.isCandidate("text/csv", 4096)).isTrue();
+        assertThat(compression.isCandidate("application/json", 4096)).isTrue();
+        assertThat(compression.isCandidate("image/png", 4096)).isFalse();
+        assertThat(compression.isCandidate("text/csv", 100)).isFalse();
+        assertThat(compression.isCandidate("not a type", 4096)).isFalse();
+    }
+
+    @Test
+    void acceptEncodingHonoursQualityValues() {
+        assertThat(ContentCodec.GZIP.acceptedBy("gzip, deflate, br")).isTrue();
+        assertThat(ContentCodec.ZSTD.acceptedBy("gzip, deflate, br")).isFalse();
+        assertThat(ContentCodec.GZIP.acceptedBy("gzip;q=0, *")).isFalse();
+        assertThat(ContentCodec.ZSTD.acceptedBy("*;q=0.5")).isTrue();
+        assertThat(ContentCodec.GZIP.acceptedBy(null)).isFalse();
+        assertThatThrownBy(() -> ContentCodec.forEncoding("br")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.cloudvault.demo.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHasherTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private PasswordHasher passwordHasher;
+
+    @BeforeEach
+    void setUp() {
+        passwordHasher = new PasswordHasher();
+        ReflectionTestUtils.setField(passwordHasher, "passwordEncoder", new BlockingEncoder());
+        ReflectionTestUtils.setField(passwordHasher, "threads", 1);
+        ReflectionTestUtils.setField(passwordHasher, "queueCapacity", 2);
+        passwordHasher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        passwordHasher.shutdown();
+    }
+
+    @Test
+    void fullQueueShedsAtOnceAndQueuedWorkStillCompletes() throws Exception {
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Boolean>> accepted = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                accepted.add(callers.submit(() -> passwordHasher.matches("secret", "secret")));
+            }
+            while (passwordHasher.active() + passwordHasher.queued() < 3) {
+                Thread.sleep(5);
+            }
+
+            // One running and two queued; the next caller is turned away without waiting
+            assertThatThrownBy(() -> passwordHasher.matches("secret", "secret"))
+                    .isInstanceOf(PasswordHashingBusyException.class)
+                    .extracting("retryAfterSeconds").isEqualTo(1L);
+            assertThat(passwordHasher.stats()).containsEntry("rejected", 1L).containsEntry("queued", 2);
+
+            release.countDown();
+            for (Future<Boolean> result : accepted) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isTrue();
+            }
+        }
+    }
+
+    // Holds every hash until the test lets go, so the pool fills up deterministically
+    private final class BlockingEncoder implements PasswordEncoder {
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.support.LocalS3Server;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Utilities;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3ServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private S3Client s3Client;
+    private S3TransferEngine transferEngine;
+    private S3Service s3Service;
+    private MeterRegistry meterRegistry;
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        s3Client = mock(S3Client.class);
+        transferEngine = mock(S3TransferEngine.class);
+        when(s3Client.utilities()).thenReturn(S3Utilities.builder().region(Region.EU_NORTH_1).build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            drain(invocation.<RequestBody>getArgument(1).contentStreamProvider().newStream());
+            return PutObjectResponse.builder().build();
+        });
+        // Consume the stream on the calling thread like the engine's part reader does
+        doAnswer(invocation -> {
+            assertThat(drain(invocation.getArgument(4))).isEqualTo(invocation.<Long>getArgument(3));
+            return null;
+        }).when(transferEngine).upload(anyString(), anyString(), isNull(), anyLong(), any(InputStream.class));
+
+        meterRegistry = new SimpleMeterRegistry();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+        StorageMetrics storageMetrics = new StorageMetrics();
+        ReflectionTestUtils.setField(storageMetrics, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(storageMetrics, "observationRegistry", observationRegistry);
+        storageMetrics.init();
+
+        s3Service = new S3Service();
+        ReflectionTestUtils.setField(s3Service, "storageMetrics", storageMetrics);
+        ReflectionTestUtils.setField(s3Service, "s3Client", s3Client);
+        ReflectionTestUtils.setField(s3Service, "transferEngine", transferEngine);
+        ReflectionTestUtils.setField(s3Service, "bucketName", "bucket");
+        ReflectionTestUtils.setField(s3Service, "multipartThreshold", DataSize.ofMegabytes(16));
+        ReflectionTestUtils.setField(s3Service, "s3Presigner", S3Presigner.builder()
+                .region(Region.EU_NORTH_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .build());
+        ReflectionTestUtils.setField(s3Service, "presignTtl", Duration.ofMinutes(15));
+    }
+
+    @Test
+    void smallFileIsStreamedInSinglePut() throws IOException {
+        s3Service.uploadFile(new GeneratedFile("small.bin", DataSize.ofMegabytes(1).toBytes()), "small.bin");
+
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(transferEngine, never()).upload(anyString(), anyString(), isNull(), anyLong(), any(InputStream.class));
+        assertThat(bytesSent.get()).isEqualTo(DataSize.ofMegabytes(1).toBytes());
+    }
+
+    @Test
+    void largeFileGoesThroughTransferEngine() throws IOException {
+        long size = DataSize.ofMegabytes(100).toBytes() + 123;
+
+        String url = s3Service.uploadFile(new GeneratedFile("large.bin", size), "large.bin");
+
+        assertThat(url).endsWith("/large.bin");
+        verify(transferEngine).upload(eq("large.bin"), eq("application/octet-stream"), isNull(), eq(size), any(InputStream.class));
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertThat(bytesSent.get()).isEqualTo(size);
+    }
+
+    @Test
+    void heapPerUploadDoesNotGrowWithFileSize() throws IOException {
+        // The real engine against a local S3 that drops what it receives, so only our side holds bytes
+        try (LocalS3Server server = new LocalS3Server(0, DataSize.ofGigabytes(1).toBytes());
+             S3AsyncClient s3AsyncClient = S3AsyncClient.builder()
+                     .endpointOverride(server.endpoint())
+                     .forcePathStyle(true)
+                     .region(Region.US_EAST_1)
+                     .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                     .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                     .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED)
+                     .build()) {
+            server.discardContent();
+            S3TransferEngine engine = new S3TransferEngine();
+            ReflectionTestUtils.setField(engine, "s3AsyncClient", s3AsyncClient);
+            ReflectionTestUtils.setField(engine, "bucketName", "bucket");
+            ReflectionTestUtils.setField(engine, "partSize", DataSize.ofMegabytes(8));
+            ReflectionTestUtils.setField(engine, "concurrencyPerTransfer", 4);
+            ReflectionTestUtils.setField(engine, "maxInFlight", DataSize.ofMegabytes(256));
+            engine.init();
+            ReflectionTestUtils.setField(s3Service, "transferEngine", engine);
+
+            // The first upload also fills the engine's part buffers
+            long smallUpload = allocatedDuring(DataSize.ofMegabytes(64).toBytes());
+            long hugeUpload = allocatedDuring(DataSize.ofMegabytes(512).toBytes());
+
+            // Parts are read on this thread: an 8x larger file must reuse the buffers, not allocate its size
+            assertThat(smallUpload).isLessThan(DataSize.ofMegabytes(64).toBytes());
+            assertThat(hugeUpload).isLessThan(DataSize.ofMegabytes(16).toBytes());
+            assertThat(server.requestCount()).isEqualTo(2 + 8 + 2 + 64);
+        }
+    }
+
+    @Test
+    void rangeIsPassedThroughToRangedGet() {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(objectStream());
+
+        s3Service.downloadFile("video.mp4", "bytes=100-199", "\"etag\"");
+
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client).getObject(request.capture());
+        assertThat(request.getValue().range()).isEqualTo("bytes=100-199");
+        assertThat(request.getValue().ifMatch()).isEqualTo("\"etag\"");
+    }
+
+    @Test
+    void staleIfRangeFallsBackToFullObject() {
+        S3Exception preconditionFailed = (S3Exception) S3Exception.builder().statusCode(412).build();
+        when(s3Client.getObject(any(GetObjectRequest.class)))
+                .thenThrow(preconditionFailed)
+                .thenReturn(objectStream());
+
+        s3Service.downloadFile("video.mp4", "bytes=100-199", "\"old-etag\"");
+
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(s3Client, times(2)).getObject(request.capture());
+        assertThat(request.getAllValues().get(1).range()).isNull();
+        assertThat(request.getAllValues().get(1).ifMatch()).isNull();
+    }
+
+    @Test
+    void largeObjectsAreCopiedToDiskWithParallelRangedGets() throws IOException {
+        Path target = tempDir.resolve("large.bin");
+        Files.write(target, new byte[10]);
+        long size = DataSize.ofMegabytes(100).toBytes();
+        when(s3Client.headObject(any(Consumer.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(size).contentType("video/mp4").eTag("\"etag\"").build());
+
+        try (StoredObject object = s3Service.downloadToFile("large.bin", target, size)) {
+            assertThat(object.contentType()).isEqualTo("video/mp4");
+            assertThat(object.eTag()).isEqualTo("\"etag\"");
+        }
+        assertThat(s3Service.downloadToFile("large.bin", target, size - 1)).isNull();
+
+        verify(transferEngine, times(1)).downloadToFile("large.bin", "\"etag\"", size, target);
+        verify(s3Client, never()).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void presignedUploadIsShortLivedAndBoundToContentChecksum() {
+        PresignedPutObjectRequest presigned = s3Service.presignUpload("abc123", "application/pdf", "c2hhMjU2");
+
+        assertThat(presigned.url().getPath()).isEqualTo("/abc123");
+        assertThat(presigned.url().getQuery()).contains("X-Amz-Expires=900");
+        assertThat(presigned.signedHeaders()).containsKeys("content-type", "x-amz-checksum-sha256");
+    }
+
+    @Test
+    void bulkDeleteIsBatchedAndReportsFailedKeys() {
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenAnswer(invocation -> {
+            DeleteObjectsRequest request = invocation.getArgument(0);
+            // Fail the first key of each batch
+            return DeleteObjectsResponse.builder()
+                    .errors(S3Error.builder().key(request.delete().objects().get(0).key()).code("AccessDenied").build())
+                    .build();
+        });
+        List<String> keys = IntStream.range(0, 2500).mapToObj(i -> "key-" + i).toList();
+
+        List<String> failed = s3Service.deleteFiles(keys);
+
+        ArgumentCaptor<DeleteObjectsRequest> requests = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, times(3)).deleteObjects(requests.capture());
+        assertThat(requests.getAllValues()).extracting(request -> request.delete().objects().size())
+                .containsExactly(1000, 1000, 500);
+        assertThat(requests.getAllValues()).allMatch(request -> request.delete().quiet());
+        assertThat(failed).containsExactly("key-0", "key-1000", "key-2000");
+    }
+
+    @Test
+    void operationsAreTimedByOutcomeAndTheirBytesCounted() throws IOException {
+        s3Service.uploadFile(new GeneratedFile("small.bin", 1000), "small.bin");
+        when(s3Client.getObject(any(GetObjectRequest.class)))
+                .thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().contentLength(300L).build(),
+                        new ByteArrayInputStream(new byte[300])))
+                .thenThrow(NoSuchKeyException.builder().build());
+
+        try (StoredObject object = s3Service.downloadFile("small.bin", null, null)) {
+            object.content().writeTo(new ByteArrayOutputStream());
+        }
+        assertThatThrownBy(() -> s3Service.downloadFile("missing.bin", null, null))
+                .isInstanceOf(StorageObjectNotFoundException.class);
+
+        assertThat(meterRegistry.get("cloudvault.storage").tags("operation", "put", "outcome", "success").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("cloudvault.storage").tags("operation", "get", "outcome", "success").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("cloudvault.storage").tags("operation", "get", "outcome", "not_found").timer().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("cloudvault.storage.bytes").tag("direction", "upload").counter().count())
+                .isEqualTo(1000);
+        assertThat(meterRegistry.get("cloudvault.storage.bytes").tag("direction", "download").counter().count())
+                .isEqualTo(300);
+        assertThat(meterRegistry.get("cloudvault.storage.throughput").tag("direction", "download").summary().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("cloudvault.storage.transfers.active").gauges())
+                .allMatch(gauge -> gauge.value() == 0);
+    }
+
+    private static ResponseInputStream<GetObjectResponse> objectStream() {
+        return new ResponseInputStream<>(GetObjectResponse.builder().contentLength(0L).build(), InputStream.nullInputStream());
+    }
+
+    private long allocatedDuring(long size) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        s3Service.uploadFile(new GeneratedFile("file.bin", size), "file.bin");
+        return threads.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    private long drain(InputStream stream) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        try (InputStream in = stream) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+            }
+        }
+        bytesSent.addAndGet(total);
+        return total;
+    }
+
+    /**
+     * A multipart file whose content is generated on read and that refuses to be buffered.
+     */
+    private record GeneratedFile(String name, long size) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return name;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            throw new AssertionError("upload must not buffer the whole file");
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                private long position;
+
+                @Override
+                public int read() {
+                    return position < size ? (int) (position++ & 0xFF) : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (position >= size) {
+                        return -1;
+                    }
+                    int n = (int) Math.min(len, size - position);
+                    position += n;
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) {
+                    long skipped = Math.min(n, size - position);
+                    position += skipped;
+                    return skipped;
+                }
+            };
+        }
+
+        @Override
+        public void transferTo(File dest) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void transferTo(Path dest) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
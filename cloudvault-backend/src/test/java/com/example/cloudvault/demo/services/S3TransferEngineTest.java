@@ -0,0 +1,153 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.support.LocalS3Server;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class S3TransferEngineTest {
+
+    private static final String BUCKET = "bucket";
+    private static final int PART_SIZE = (int) DataSize.ofMegabytes(1).toBytes();
+
+    private LocalS3Server server;
+    private S3AsyncClient s3AsyncClient;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // 20ms per request and 16MB/s per connection, roughly a long-haul link to a remote region
+        server = new LocalS3Server(20, DataSize.ofMegabytes(16).toBytes());
+        s3AsyncClient = S3AsyncClient.builder()
+                .endpointOverride(server.endpoint())
+                .forcePathStyle(true)
+                .region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("test", "test")))
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED)
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder().maxConcurrency(64))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3AsyncClient.close();
+        server.close();
+    }
+
+    @Test
+    void uploadAndDownloadRoundTrip() throws IOException {
+        byte[] data = randomBytes(10 * PART_SIZE + 12345);
+        S3TransferEngine engine = engine(4, DataSize.ofMegabytes(64));
+
+        engine.upload("big.bin", "application/octet-stream", null, data.length, new ByteArrayInputStream(data));
+        assertThat(server.object(BUCKET, "big.bin")).isEqualTo(data);
+
+        Path target = tempDir.resolve("big.bin");
+        download(engine, "big.bin", target);
+        assertThat(Files.readAllBytes(target)).isEqualTo(data);
+    }
+
+    @Test
+    void inFlightBudgetCapsParallelParts() throws IOException {
+        byte[] data = randomBytes(8 * PART_SIZE);
+        // Eight slots per transfer, but the shared budget only covers two parts
+        S3TransferEngine engine = engine(8, DataSize.ofMegabytes(2));
+
+        server.resetCounters();
+        engine.upload("capped.bin", "application/octet-stream", null, data.length, new ByteArrayInputStream(data));
+
+        assertThat(server.peakActiveRequests()).isLessThanOrEqualTo(2);
+        assertThat(server.object(BUCKET, "capped.bin")).isEqualTo(data);
+    }
+
+    @Test
+    void partBuffersAreReusedAcrossPartsAndUploads() throws IOException {
+        byte[] data = randomBytes(8 * PART_SIZE + 100);
+        S3TransferEngine engine = engine(2, DataSize.ofMegabytes(64));
+
+        engine.upload("first.bin", "application/octet-stream", null, data.length, new ByteArrayInputStream(data));
+        engine.upload("second.bin", "application/octet-stream", null, data.length, new ByteArrayInputStream(data));
+
+        // Two parts in flight at a time, so two buffers served all eighteen parts
+        assertThat((Queue<?>) ReflectionTestUtils.getField(engine, "partBuffers")).hasSizeLessThanOrEqualTo(2);
+        assertThat(server.object(BUCKET, "first.bin")).isEqualTo(data);
+        assertThat(server.object(BUCKET, "second.bin")).isEqualTo(data);
+    }
+
+    @Test
+    void throughputScalesWithConcurrency() throws IOException {
+        byte[] data = randomBytes(16 * PART_SIZE);
+        Map<Integer, Double> uploadMbPerSecond = new LinkedHashMap<>();
+        Map<Integer, Double> downloadMbPerSecond = new LinkedHashMap<>();
+
+        for (int concurrency : new int[]{1, 2, 4, 8}) {
+            S3TransferEngine engine = engine(concurrency, DataSize.ofMegabytes(256));
+            String key = "throughput-" + concurrency + ".bin";
+
+            long started = System.nanoTime();
+            engine.upload(key, "application/octet-stream", null, data.length, new ByteArrayInputStream(data));
+            uploadMbPerSecond.put(concurrency, megabytesPerSecond(data.length, started));
+
+            started = System.nanoTime();
+            download(engine, key, tempDir.resolve(key));
+            downloadMbPerSecond.put(concurrency, megabytesPerSecond(data.length, started));
+        }
+
+        System.out.printf("upload MB/s by concurrency: %s%ndownload MB/s by concurrency: %s%n",
+                uploadMbPerSecond, downloadMbPerSecond);
+        assertThat(uploadMbPerSecond.get(8)).isGreaterThan(uploadMbPerSecond.get(1) * 3);
+        assertThat(downloadMbPerSecond.get(8)).isGreaterThan(downloadMbPerSecond.get(1) * 3);
+    }
+
+    private void download(S3TransferEngine engine, String key, Path target) throws IOException {
+        HeadObjectResponse head = s3AsyncClient.headObject(builder -> builder.bucket(BUCKET).key(key)).join();
+        engine.downloadToFile(key, head.eTag(), head.contentLength(), target);
+    }
+
+    private S3TransferEngine engine(int concurrencyPerTransfer, DataSize maxInFlight) {
+        S3TransferEngine engine = new S3TransferEngine();
+        ReflectionTestUtils.setField(engine, "s3AsyncClient", s3AsyncClient);
+        ReflectionTestUtils.setField(engine, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(engine, "partSize", DataSize.ofBytes(PART_SIZE));
+        ReflectionTestUtils.setField(engine, "concurrencyPerTransfer", concurrencyPerTransfer);
+        ReflectionTestUtils.setField(engine, "maxInFlight", maxInFlight);
+        engine.init();
+        return engine;
+    }
+
+    private static double megabytesPerSecond(long bytes, long startedNanos) {
+        double seconds = (System.nanoTime() - startedNanos) / 1e9;
+        return Math.round(bytes / 1048576.0 / seconds * 10) / 10.0;
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
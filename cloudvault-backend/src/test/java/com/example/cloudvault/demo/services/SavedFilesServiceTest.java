@@ -0,0 +1,161 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.FileDeleteResult;
+import com.example.cloudvault.demo.entities.OwnedFile;
+import com.example.cloudvault.demo.entities.SavedFileSummary;
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.SavedFilesPage;
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.repositories.SavedFilesRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SavedFilesServiceTest {
+
+    private SavedFilesRepository savedFilesRepository;
+    private StoredBlobService storedBlobService;
+    private StorageQuotaService storageQuotaService;
+    private FolderService folderService;
+    private PlatformTransactionManager transactionManager;
+    private SavedFilesService savedFilesService;
+
+    @BeforeEach
+    void setUp() {
+        savedFilesRepository = mock(SavedFilesRepository.class);
+        savedFilesService = new SavedFilesService();
+        storedBlobService = mock(StoredBlobService.class);
+        storageQuotaService = mock(StorageQuotaService.class);
+        ReflectionTestUtils.setField(savedFilesService, "savedFilesRepository", savedFilesRepository);
+        ReflectionTestUtils.setField(savedFilesService, "storedBlobService", storedBlobService);
+        ReflectionTestUtils.setField(savedFilesService, "storageQuotaService", storageQuotaService);
+        folderService = mock(FolderService.class);
+        ReflectionTestUtils.setField(savedFilesService, "folderService", folderService);
+        transactionManager = mock(PlatformTransactionManager.class);
+        ReflectionTestUtils.setField(savedFilesService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(savedFilesService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(savedFilesService, "maxPageSize", 3);
+    }
+
+    @Test
+    void listingValidatorDependsOnTheRequestedListing() {
+        when(storageQuotaService.filesVersion(7L)).thenReturn(4L);
+
+        String firstPage = savedFilesService.listingValidator(7L, "folder", "/docs/", null, null).eTag();
+
+        assertThat(savedFilesService.listingValidator(7L, "folder", "/docs/", null, null).eTag()).isEqualTo(firstPage);
+        assertThat(firstPage).startsWith("\"files-7-4-");
+        assertThat(Set.of(firstPage,
+                savedFilesService.listingValidator(7L, "folder", "/docs/", 11L, null).eTag(),
+                savedFilesService.listingValidator(7L, "folder", "/docs/", null, 50).eTag(),
+                savedFilesService.listingValidator(7L, "folder", "/photos/", null, null).eTag(),
+                savedFilesService.listingValidator(7L, "tree", "/docs/", null, null).eTag(),
+                savedFilesService.listingValidator(7L, "recent", null, null).eTag())).hasSize(6);
+    }
+
+    @Test
+    void fileIsMovedAfterItsFolderIsCreatedOutsideTheTransaction() {
+        SavedFiles file = SavedFiles.builder().id(3L).fileName("a.txt").folderPath("/").build();
+        when(savedFilesRepository.findOwnedById(3L, 7L)).thenReturn(Optional.of(file));
+
+        Optional<SavedFiles> updated = savedFilesService.updateFile(7L, 3L, "b.txt", "/new/");
+
+        assertThat(updated).containsSame(file);
+        assertThat(file.getFileName()).isEqualTo("b.txt");
+        assertThat(file.getFolderPath()).isEqualTo("/new/");
+        // A concurrent insert of the folder would otherwise abort the update's transaction
+        InOrder order = inOrder(folderService, transactionManager);
+        order.verify(folderService).ensure(7L, "/new/");
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(transactionManager).commit(any());
+
+        assertThat(savedFilesService.updateFile(7L, 4L, null, "/elsewhere/")).isEmpty();
+        verify(folderService, never()).ensure(7L, "/elsewhere/");
+    }
+
+    @Test
+    void fullPageCarriesTheLastIdAsCursor() {
+        when(savedFilesRepository.findPageByUser(7L, 0L, Limit.of(3))).thenReturn(rows(10, 11, 12));
+
+        SavedFilesPage page = savedFilesService.getFilesByUser(7L, null, null);
+
+        assertThat(page.files()).extracting(SavedFileSummary::id).containsExactly(10L, 11L);
+        assertThat(page.nextCursor()).isEqualTo(11L);
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        when(savedFilesRepository.findPageByUser(7L, 11L, Limit.of(3))).thenReturn(rows(12));
+
+        SavedFilesPage page = savedFilesService.getFilesByUser(7L, 11L, null);
+
+        assertThat(page.files()).extracting(SavedFileSummary::id).containsExactly(12L);
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    @Test
+    void limitIsClampedToTheMaximum() {
+        when(savedFilesRepository.findPageByUser(eq(7L), anyLong(), eq(Limit.of(4)))).thenReturn(rows(1, 2, 3, 4));
+
+        SavedFilesPage page = savedFilesService.getFilesByUser(7L, null, 50);
+
+        assertThat(page.files()).hasSize(3);
+        assertThat(page.nextCursor()).isEqualTo(3L);
+    }
+
+    @Test
+    void bulkDeleteOnlyTouchesTheCallersFiles() {
+        // 3 belongs to someone else, 4 predates deduplication, 1 and 2 share content
+        when(savedFilesRepository.findOwned(7L, List.of(1L, 2L, 3L, 4L)))
+                .thenReturn(List.of(new OwnedFile(1L, 10L, 100L), new OwnedFile(2L, 10L, 100L),
+                        new OwnedFile(4L, null, 50L)));
+
+        List<FileDeleteResult> results = savedFilesService.deleteFiles(7L, List.of(1L, 2L, 3L, 4L, 1L));
+
+        assertThat(results).containsExactly(FileDeleteResult.deleted(1L), FileDeleteResult.deleted(2L),
+                FileDeleteResult.notFound(3L), FileDeleteResult.deleted(4L));
+        verify(savedFilesRepository).deleteAllByIdInBatch(Set.of(1L, 2L, 4L));
+        verify(storedBlobService).releaseAll(Map.of(10L, 2L));
+        verify(storageQuotaService).release(7L, 250L, 3L);
+    }
+
+    @Test
+    void singleDeleteOnlyFindsTheCallersFile() {
+        SavedFiles own = SavedFiles.builder().id(1L).size(100L).blob(StoredBlob.builder().id(10L).build()).build();
+        when(savedFilesRepository.findOwnedWithBlob(1L, 7L)).thenReturn(Optional.of(own));
+        when(savedFilesRepository.findOwnedWithBlob(2L, 7L)).thenReturn(Optional.empty());
+
+        assertThat(savedFilesService.deleteFile(7L, 2L)).isFalse();
+        verify(savedFilesRepository, never()).delete(any(SavedFiles.class));
+
+        assertThat(savedFilesService.deleteFile(7L, 1L)).isTrue();
+        verify(savedFilesRepository).delete(own);
+        verify(storedBlobService).release(10L);
+        verify(storageQuotaService).release(7L, 100L, 1);
+    }
+
+    private static List<SavedFileSummary> rows(long... ids) {
+        return LongStream.of(ids).mapToObj(id -> new SavedFileSummary(id, "file-" + id, "link-" + id, "/", 1024L,
+                "text/plain", null)).toList();
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StorageUsage;
+import com.example.cloudvault.demo.entities.UsageTotals;
+import com.example.cloudvault.demo.repositories.SavedFilesRepository;
+import com.example.cloudvault.demo.repositories.StorageUsageRepository;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StorageQuotaServiceTest {
+
+    private static final long QUOTA = DataSize.ofMegabytes(10).toBytes();
+
+    private StorageUsageRepository storageUsageRepository;
+    private SavedFilesRepository savedFilesRepository;
+    private UserRepository userRepository;
+    private StorageQuotaService storageQuotaService;
+
+    @BeforeEach
+    void setUp() {
+        storageUsageRepository = mock(StorageUsageRepository.class);
+        savedFilesRepository = mock(SavedFilesRepository.class);
+        userRepository = mock(UserRepository.class);
+        storageQuotaService = new StorageQuotaService();
+        ReflectionTestUtils.setField(storageQuotaService, "storageUsageRepository", storageUsageRepository);
+        ReflectionTestUtils.setField(storageQuotaService, "savedFilesRepository", savedFilesRepository);
+        ReflectionTestUtils.setField(storageQuotaService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(storageQuotaService, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(storageQuotaService, "enabled", true);
+        ReflectionTestUtils.setField(storageQuotaService, "defaultSize", DataSize.ofMegabytes(10));
+        ReflectionTestUtils.setField(storageQuotaService, "reconcileBatchSize", 2);
+        ReflectionTestUtils.invokeMethod(storageQuotaService, "init");
+    }
+
+    @Test
+    void checkIsOneReadAgainstTheUsersQuota() {
+        when(storageUsageRepository.findById(7L)).thenReturn(Optional.of(usage(7L, QUOTA - 100, null)));
+        when(storageUsageRepository.findById(8L)).thenReturn(Optional.of(usage(8L, QUOTA - 100, -1L)));
+
+        assertThatNoException().isThrownBy(() -> storageQuotaService.check(7L, 100));
+        assertThatThrownBy(() -> storageQuotaService.check(7L, 101)).isInstanceOf(QuotaExceededException.class);
+        // A negative override is unlimited
+        assertThatNoException().isThrownBy(() -> storageQuotaService.check(8L, QUOTA));
+    }
+
+    @Test
+    void firstCheckCreatesTheRowFromExistingFiles() {
+        when(storageUsageRepository.findById(7L)).thenReturn(Optional.empty());
+        when(savedFilesRepository.totalsByUser(7L)).thenReturn(new UsageTotals(3L, 5000L));
+        when(storageUsageRepository.saveAndFlush(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        storageQuotaService.check(7L, 100);
+
+        verify(storageUsageRepository).saveAndFlush(argThat(usage -> usage.getUsedBytes() == 5000L
+                && usage.getFileCount() == 3L));
+    }
+
+    @Test
+    void chargeRefusesWhatDoesNotFit() {
+        when(storageUsageRepository.charge(7L, 100, 1, QUOTA)).thenReturn(1);
+        when(storageUsageRepository.charge(7L, QUOTA, 1, QUOTA)).thenReturn(0);
+        when(storageUsageRepository.existsById(7L)).thenReturn(true);
+
+        storageQuotaService.charge(7L, 100);
+        assertThatThrownBy(() -> storageQuotaService.charge(7L, QUOTA)).isInstanceOf(QuotaExceededException.class);
+        verify(storageUsageRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void disabledQuotaStillCounts() {
+        ReflectionTestUtils.setField(storageQuotaService, "enabled", false);
+        when(storageUsageRepository.findById(7L)).thenReturn(Optional.of(usage(7L, QUOTA, null)));
+        when(storageUsageRepository.add(7L, QUOTA, 1)).thenReturn(1);
+
+        storageQuotaService.check(7L, QUOTA);
+        storageQuotaService.charge(7L, QUOTA);
+
+        verify(storageUsageRepository).add(7L, QUOTA, 1);
+    }
+
+    @Test
+    void reconcileRecountsDriftedUsersUnderTheirLock() {
+        StorageUsage drifted = usage(1L, 900L, null);
+        StorageUsage accurate = usage(2L, 400L, null);
+        when(userRepository.findIdsAfter(0L, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(userRepository.findIdsAfter(2L, Limit.of(2))).thenReturn(List.of());
+        when(storageUsageRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(drifted));
+        when(storageUsageRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(accurate));
+        when(savedFilesRepository.totalsByUser(1L)).thenReturn(new UsageTotals(2L, 700L));
+        when(savedFilesRepository.totalsByUser(2L)).thenReturn(new UsageTotals(1L, 400L));
+
+        storageQuotaService.reconcile();
+
+        assertThat(drifted.getUsedBytes()).isEqualTo(700L);
+        assertThat(drifted.getFileCount()).isEqualTo(2L);
+        assertThat(accurate.getUsedBytes()).isEqualTo(400L);
+        assertThat(accurate.getReconciled_at()).isNotNull();
+    }
+
+    private static StorageUsage usage(Long userId, long usedBytes, Long quotaBytes) {
+        return StorageUsage.builder().userId(userId).usedBytes(usedBytes).fileCount(1L).quotaBytes(quotaBytes).build();
+    }
+}
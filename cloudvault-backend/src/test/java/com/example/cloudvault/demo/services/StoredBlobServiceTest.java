@@ -0,0 +1,185 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.repositories.StoredBlobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StoredBlobServiceTest {
+
+    // SHA-256 of "hello"
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    private StoredBlobRepository storedBlobRepository;
+    private StorageBackend storageBackend;
+    private ObjectCache objectCache;
+    private StoredBlobService storedBlobService;
+
+    @BeforeEach
+    void setUp() {
+        storedBlobRepository = mock(StoredBlobRepository.class);
+        storageBackend = mock(StorageBackend.class);
+        objectCache = mock(ObjectCache.class);
+        storedBlobService = new StoredBlobService();
+        ReflectionTestUtils.setField(storedBlobService, "storedBlobRepository", storedBlobRepository);
+        ReflectionTestUtils.setField(storedBlobService, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(storedBlobService, "objectCache", objectCache);
+        // Disabled, so uploads reach the backend as they are
+        ObjectCompression objectCompression = new ObjectCompression();
+        ReflectionTestUtils.setField(objectCompression, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(storedBlobService, "objectCompression", objectCompression);
+    }
+
+    @Test
+    void knownContentSkipsTheUpload() throws IOException {
+        StoredBlob existing = blob(2L);
+        when(storedBlobRepository.acquireLive(HELLO_SHA256)).thenReturn(1);
+        when(storedBlobRepository.findBySha256(HELLO_SHA256)).thenReturn(Optional.of(existing));
+
+        StoredBlob stored = storedBlobService.store(hello());
+
+        assertThat(stored).isSameAs(existing);
+        verify(storageBackend, never()).uploadFile(any(), anyString());
+    }
+
+    @Test
+    void newContentIsUploadedUnderItsHash() throws IOException {
+        when(storedBlobRepository.acquireLive(HELLO_SHA256)).thenReturn(0);
+        when(storedBlobRepository.save(any(StoredBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        StoredBlob stored = storedBlobService.store(hello());
+
+        verify(storageBackend).uploadFile(any(), eq(HELLO_SHA256));
+        assertThat(stored.getSha256()).isEqualTo(HELLO_SHA256);
+        assertThat(stored.getStorageKey()).isEqualTo(HELLO_SHA256);
+        assertThat(stored.getRefCount()).isEqualTo(1L);
+        assertThat(stored.getSize()).isEqualTo(5L);
+        assertThat(stored.getContentEncoding()).isEqualTo("identity");
+    }
+
+    @Test
+    void encodingOfStoredContentIsRecordedAndWinsOverBackendMetadata() throws IOException {
+        ObjectCompression objectCompression = mock(ObjectCompression.class);
+        ReflectionTestUtils.setField(storedBlobService, "objectCompression", objectCompression);
+        when(objectCompression.upload(any(), eq(HELLO_SHA256), anyString())).thenReturn("gzip");
+        when(storedBlobRepository.acquireLive(HELLO_SHA256)).thenReturn(0);
+        when(storedBlobRepository.save(any(StoredBlob.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        StoredBlob stored = storedBlobService.store(hello());
+
+        assertThat(stored.getContentEncoding()).isEqualTo("gzip");
+        // A backend that could not keep the encoding, such as a filesystem without xattrs, reports none
+        StoredObject fromBackend = new StoredObject(25, "text/plain", "\"tag\"", null, null,
+                StoredObject.Content.of(InputStream.nullInputStream()));
+        assertThat(fromBackend.withEncodingOf(stored).contentEncoding()).isEqualTo("gzip");
+        // A blob from before the encoding was recorded goes by the backend's
+        assertThat(new StoredObject(5, "text/plain", "\"tag\"", null, null, "gzip",
+                StoredObject.Content.of(InputStream.nullInputStream())).withEncodingOf(blob(1L)).contentEncoding())
+                .isEqualTo("gzip");
+    }
+
+    @Test
+    void deadBlobIsTakenOverWithTheEncodingOfTheNewUpload() throws IOException {
+        // Left at zero references by a failed delete, stored compressed under a chunked upload's key back then
+        StoredBlob dead = StoredBlob.builder().id(1L).sha256(HELLO_SHA256).storageKey("chunked-old").size(5L)
+                .contentEncoding("zstd").refCount(0L).build();
+        StoredBlob revived = StoredBlob.builder().id(1L).sha256(HELLO_SHA256).storageKey(HELLO_SHA256).size(5L)
+                .contentEncoding("identity").refCount(1L).build();
+        when(storedBlobRepository.acquireLive(HELLO_SHA256)).thenReturn(0);
+        when(storedBlobRepository.findBySha256(HELLO_SHA256)).thenReturn(Optional.of(dead));
+        when(storedBlobRepository.takeOver(1L, HELLO_SHA256, "identity")).thenReturn(1);
+        when(storedBlobRepository.findById(1L)).thenReturn(Optional.of(revived));
+
+        StoredBlob stored = storedBlobService.store(hello());
+
+        assertThat(stored).isSameAs(revived);
+        verify(storedBlobRepository).takeOver(1L, HELLO_SHA256, "identity");
+        verify(storageBackend).deleteFile("chunked-old");
+        verify(storedBlobRepository, never()).save(any(StoredBlob.class));
+    }
+
+    @Test
+    void lastReferenceDeletesObjectAndRow() {
+        StoredBlob unreferenced = blob(0L);
+        when(storedBlobRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(unreferenced));
+
+        storedBlobService.release(1L);
+
+        verify(storedBlobRepository).release(1L);
+        verify(storageBackend).deleteFile(HELLO_SHA256);
+        verify(objectCache).invalidate(HELLO_SHA256);
+        // Derivatives are not tracked on the row, every one that may exist goes
+        verify(storageBackend).deleteFile(ImageDerivative.THUMBNAIL.key(HELLO_SHA256));
+        verify(storageBackend).deleteFile(ImageDerivative.PREVIEW.key(HELLO_SHA256));
+        verify(storedBlobRepository).delete(unreferenced);
+    }
+
+    @Test
+    void blobWhoseObjectCannotBeDeletedKeepsItsRow() {
+        StoredBlob unreferenced = blob(0L);
+        when(storedBlobRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(unreferenced));
+        doThrow(new IllegalStateException("storage unavailable")).when(storageBackend).deleteFile(HELLO_SHA256);
+
+        // Does not throw, so the caller's delete still commits
+        storedBlobService.release(1L);
+
+        verify(objectCache).invalidate(HELLO_SHA256);
+        verify(storedBlobRepository, never()).delete(any(StoredBlob.class));
+    }
+
+    @Test
+    void sharedBlobSurvivesRelease() {
+        when(storedBlobRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(blob(1L)));
+
+        storedBlobService.release(1L);
+
+        verify(storageBackend, never()).deleteFile(anyString());
+        verify(storedBlobRepository, never()).delete(any(StoredBlob.class));
+    }
+
+    @Test
+    void releaseAllCollectsUnreferencedBlobsInOneBatch() {
+        StoredBlob gone = StoredBlob.builder().id(1L).sha256("a").storageKey("a").refCount(0L).build();
+        StoredBlob stuck = StoredBlob.builder().id(2L).sha256("b").storageKey("b").refCount(0L).build();
+        when(storedBlobRepository.findUnreferencedForUpdate(any())).thenReturn(List.of(gone, stuck));
+        when(storageBackend.deleteFiles(List.of("a", "thumbnail-a", "preview-a", "b", "thumbnail-b", "preview-b")))
+                .thenReturn(List.of("b"));
+
+        storedBlobService.releaseAll(Map.of(1L, 1L, 2L, 1L, 3L, 2L));
+
+        verify(storedBlobRepository).releaseAll(argThat(ids -> ids.containsAll(List.of(1L, 2L)) && ids.size() == 2), eq(1L));
+        verify(storedBlobRepository).releaseAll(List.of(3L), 2L);
+        verify(objectCache).invalidate("a");
+        verify(objectCache).invalidate("b");
+        // The object that could not be deleted keeps its row
+        verify(storedBlobRepository).deleteAllByIdInBatch(List.of(1L));
+    }
+
+    private static MockMultipartFile hello() {
+        return new MockMultipartFile("file", "hello.txt", "text/plain", "hello".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static StoredBlob blob(long refCount) {
+        return StoredBlob.builder().id(1L).sha256(HELLO_SHA256).storageKey(HELLO_SHA256).size(5L).refCount(refCount).build();
+    }
+}
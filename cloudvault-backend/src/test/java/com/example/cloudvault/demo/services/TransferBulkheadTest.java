@@ -0,0 +1,152 @@
+package com.example.cloudvault.demo.services;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TransferBulkheadTest {
+
+    @TempDir
+    Path directory;
+
+    private TransferBulkhead bulkhead;
+
+    @BeforeEach
+    void setUp() {
+        bulkhead = bulkhead(3, 2, Duration.ofMillis(50));
+    }
+
+    @Test
+    void userOverTheirShareIsTurnedAwayAtOnce() {
+        TransferBulkhead.Permit first = bulkhead.acquire(1L);
+        TransferBulkhead.Permit second = bulkhead.acquire(1L);
+
+        assertThatThrownBy(() -> bulkhead.acquire(1L)).isInstanceOf(TransferLimitException.class);
+        // Someone else still gets the slot that is left
+        bulkhead.acquire(2L).close();
+
+        first.close();
+        first.close();
+        bulkhead.acquire(1L).close();
+        second.close();
+
+        assertThat(bulkhead.stats())
+                .containsEntry("inFlight", 0)
+                .containsEntry("activeUsers", 0)
+                .containsEntry("rejected", 1L);
+    }
+
+    @Test
+    void fullNodeRejectsAfterWaitingAndGivesBackTheUserSlot() throws Exception {
+        bulkhead.acquire(1L);
+        bulkhead.acquire(2L);
+        TransferBulkhead.Permit anonymous = bulkhead.acquire(null);
+
+        assertThatThrownBy(() -> bulkhead.acquire(3L))
+                .isInstanceOf(TransferLimitException.class)
+                .extracting("retryAfterSeconds").isEqualTo(1L);
+        assertThat(bulkhead.stats()).containsEntry("activeUsers", 2);
+
+        // A waiter gets the slot as soon as one frees up
+        bulkhead = bulkhead(1, 1, Duration.ofSeconds(5));
+        TransferBulkhead.Permit held = bulkhead.acquire(1L);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<TransferBulkhead.Permit> waiting = executor.submit(() -> bulkhead.acquire(2L));
+            Thread.sleep(50);
+            held.close();
+            waiting.get(5, TimeUnit.SECONDS).close();
+        }
+        anonymous.close();
+    }
+
+    // Blocking on a synchronized monitor pins the carrier in Java 21, so hot paths must not do it
+    @Test
+    void transferPathsDoNotPinCarrierThreads() throws Exception {
+        LocalStorageBackend storage = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storage, "root", Files.createDirectory(directory.resolve("objects")));
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost:8080/api/s3/download/");
+        storage.init();
+
+        ObjectCache objectCache = new ObjectCache();
+        ReflectionTestUtils.setField(objectCache, "storageBackend", storage);
+        ReflectionTestUtils.setField(objectCache, "enabled", true);
+        ReflectionTestUtils.setField(objectCache, "directory", directory.resolve("cache"));
+        ReflectionTestUtils.setField(objectCache, "maxSize", DataSize.ofMegabytes(16));
+        ReflectionTestUtils.setField(objectCache, "maxObjectSize", DataSize.ofMegabytes(1));
+        objectCache.init();
+
+        bulkhead = bulkhead(16, 64, Duration.ofSeconds(5));
+        byte[] data = new byte[256 * 1024];
+        new Random(7).nextBytes(data);
+
+        Path recordingFile = directory.resolve("pinned.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<byte[]>> reads = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    String key = "object-" + (i % 8);
+                    long userId = i % 4;
+                    reads.add(executor.submit(() -> {
+                        try (TransferBulkhead.Permit permit = bulkhead.acquire(userId)) {
+                            storage.uploadFile(new MockMultipartFile("file", data), key);
+                            try (StoredObject object = objectCache.downloadFile(key, null, null)) {
+                                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                                object.content().writeTo(out);
+                                return out.toByteArray();
+                            }
+                        }
+                    }));
+                }
+                for (Future<byte[]> read : reads) {
+                    assertThat(read.get(30, TimeUnit.SECONDS)).isEqualTo(data);
+                }
+            }
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+        // Fills behind the reads must be done before the directory is removed
+        objectCache.shutdown();
+
+        List<String> pinned = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            pinned.add(String.valueOf(event.getStackTrace()));
+        }
+        assertThat(pinned).isEmpty();
+        assertThat(bulkhead.stats()).containsEntry("inFlight", 0).containsEntry("rejected", 0L);
+    }
+
+    private static TransferBulkhead bulkhead(int maxConcurrent, int maxPerUser, Duration maxWait) {
+        TransferBulkhead bulkhead = new TransferBulkhead();
+        ReflectionTestUtils.setField(bulkhead, "maxConcurrent", maxConcurrent);
+        ReflectionTestUtils.setField(bulkhead, "maxPerUser", maxPerUser);
+        ReflectionTestUtils.setField(bulkhead, "maxWait", maxWait);
+        bulkhead.init();
+        return bulkhead;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.entities.UploadCompletedEvent;
+import com.example.cloudvault.demo.repositories.StoredBlobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadProcessorTest {
+
+    private StoredBlobRepository storedBlobRepository;
+    private StorageBackend storageBackend;
+    private UploadProcessor uploadProcessor;
+
+    @BeforeEach
+    void setUp() {
+        storedBlobRepository = mock(StoredBlobRepository.class);
+        storageBackend = mock(StorageBackend.class);
+        uploadProcessor = new UploadProcessor();
+        ReflectionTestUtils.setField(uploadProcessor, "storedBlobRepository", storedBlobRepository);
+        ReflectionTestUtils.setField(uploadProcessor, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(uploadProcessor, "previewMaxSize", DataSize.ofMegabytes(32));
+    }
+
+    @Test
+    void imageGetsDimensionsAndThumbnail() throws Exception {
+        byte[] png = png(1024, 512);
+        StoredBlob blob = stored(png);
+        when(storedBlobRepository.recordProcessing(eq(1L), any(), any(), any(), any(), any(), any())).thenReturn(1);
+
+        uploadProcessor.process(new UploadCompletedEvent(5L, 1L, blob.getStorageKey()));
+
+        // An opaque image, so the thumbnail is a JPEG
+        String previewKey = ImageDerivative.THUMBNAIL.key(blob.getSha256());
+        ArgumentCaptor<byte[]> preview = ArgumentCaptor.forClass(byte[].class);
+        verify(storageBackend).uploadBytes(eq(previewKey), preview.capture(), eq("image/jpeg"));
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(preview.getValue()));
+        assertThat(thumbnail.getWidth()).isEqualTo(256);
+        assertThat(thumbnail.getHeight()).isEqualTo(128);
+        verify(storedBlobRepository).recordProcessing(eq(1L), eq("image/png"), eq(1024), eq(512), eq(previewKey),
+                any(Long.class), any(LocalDateTime.class));
+    }
+
+    @Test
+    void documentIsSniffedWithoutPreview() throws Exception {
+        byte[] pdf = "%PDF-1.7\n%%EOF\n".getBytes(StandardCharsets.US_ASCII);
+        StoredBlob blob = stored(pdf);
+
+        uploadProcessor.process(new UploadCompletedEvent(5L, 1L, blob.getStorageKey()));
+
+        verify(storageBackend, never()).uploadBytes(anyString(), any(), anyString());
+        verify(storedBlobRepository).recordProcessing(eq(1L), eq("application/pdf"), isNull(), isNull(), isNull(),
+                eq(crc32(pdf)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void imageOverPreviewMaxSizeIsProcessedWithoutThumbnail() throws Exception {
+        byte[] png = png(1024, 512);
+        StoredBlob blob = stored(png);
+        ReflectionTestUtils.setField(uploadProcessor, "previewMaxSize", DataSize.ofBytes(png.length - 1));
+
+        uploadProcessor.process(new UploadCompletedEvent(5L, 1L, blob.getStorageKey()));
+
+        verify(storageBackend, never()).uploadBytes(anyString(), any(), anyString());
+        verify(storedBlobRepository).recordProcessing(eq(1L), eq("image/png"), isNull(), isNull(), isNull(),
+                eq(crc32(png)), any(LocalDateTime.class));
+    }
+
+    @Test
+    void contentNotMatchingItsHashFailsTheEvent() throws Exception {
+        StoredBlob blob = stored("%PDF-1.7\n%%EOF\n".getBytes(StandardCharsets.US_ASCII));
+        blob.setSha256("0".repeat(64));
+
+        assertThatThrownBy(() -> uploadProcessor.process(new UploadCompletedEvent(5L, 1L, blob.getStorageKey())))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("expected " + blob.getSha256());
+
+        verify(storedBlobRepository, never()).recordProcessing(any(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void processedBlobIsSkipped() throws IOException {
+        StoredBlob blob = StoredBlob.builder().id(1L).sha256("a").storageKey("a").refCount(1L)
+                .processedAt(LocalDateTime.now()).build();
+        when(storedBlobRepository.findById(1L)).thenReturn(Optional.of(blob));
+
+        uploadProcessor.process(new UploadCompletedEvent(5L, 1L, "a"));
+
+        verify(storageBackend, never()).downloadFile(anyString(), any(), any());
+    }
+
+    @Test
+    void previewOfBlobCollectedMeanwhileIsRemoved() throws Exception {
+        StoredBlob blob = stored(png(64, 64));
+        when(storedBlobRepository.recordProcessing(eq(1L), any(), any(), any(), any(), any(), any())).thenReturn(0);
+
+        uploadProcessor.process(new UploadCompletedEvent(5L, 1L, blob.getStorageKey()));
+
+        verify(storageBackend).deleteFile(ImageDerivative.THUMBNAIL.key(blob.getSha256()));
+    }
+
+    private StoredBlob stored(byte[] content) throws IOException, NoSuchAlgorithmException {
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        StoredBlob blob = StoredBlob.builder().id(1L).sha256(sha256).storageKey(sha256)
+                .size((long) content.length).refCount(1L).build();
+        when(storedBlobRepository.findById(1L)).thenReturn(Optional.of(blob));
+        when(storageBackend.downloadFile(sha256, null, null)).thenAnswer(invocation ->
+                new StoredObject(content.length, "application/octet-stream", "\"e\"", Instant.EPOCH, null,
+                        StoredObject.Content.of(new ByteArrayInputStream(content))));
+        return blob;
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static long crc32(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.StoredBlob;
+import com.example.cloudvault.demo.entities.UploadChunk;
+import com.example.cloudvault.demo.entities.UploadSession;
+import com.example.cloudvault.demo.repositories.UploadChunkRepository;
+import com.example.cloudvault.demo.repositories.UploadSessionRepository;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadSessionServiceTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @TempDir
+    Path root;
+
+    private LocalStorageBackend storage;
+    private UploadSessionRepository uploadSessionRepository;
+    private StoredBlobService storedBlobService;
+    private SavedFilesService savedFilesService;
+    private UploadSessionService uploadSessionService;
+    private UploadSession session;
+    private final List<UploadChunk> chunks = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        LocalStorageBackend storage = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storage, "root", root);
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost:8080/api/s3/download/");
+        storage.init();
+        this.storage = spy(storage);
+
+        // Sessions and chunks live in memory, as far as the service can tell they are rows
+        uploadSessionRepository = mock(UploadSessionRepository.class);
+        when(uploadSessionRepository.save(any())).thenAnswer(invocation -> session = invocation.getArgument(0));
+        when(uploadSessionRepository.findOwned(anyString(), eq(7L))).thenAnswer(invocation -> Optional.ofNullable(session)
+                .filter(current -> current.getId().equals(invocation.getArgument(0))));
+        when(uploadSessionRepository.claim(anyString(), any())).thenAnswer(invocation -> {
+            if (session.isCompleting()) {
+                return 0;
+            }
+            session.setCompleting(true);
+            return 1;
+        });
+        when(uploadSessionRepository.unclaim(anyString())).thenAnswer(invocation -> {
+            session.setCompleting(false);
+            return 1;
+        });
+        UploadChunkRepository uploadChunkRepository = mock(UploadChunkRepository.class);
+        when(uploadChunkRepository.save(any())).thenAnswer(invocation -> {
+            // A chunk sent again is the row found for it, updated in place
+            if (!chunks.contains(invocation.<UploadChunk>getArgument(0))) {
+                chunks.add(invocation.getArgument(0));
+            }
+            return invocation.getArgument(0);
+        });
+        when(uploadChunkRepository.findChunk(anyString(), anyInt())).thenAnswer(invocation -> chunks.stream()
+                .filter(chunk -> chunk.getChunkIndex().equals(invocation.getArgument(1))).findFirst());
+        when(uploadChunkRepository.findBySession(anyString())).thenAnswer(invocation -> chunks.stream()
+                .sorted(Comparator.comparing(UploadChunk::getChunkIndex)).toList());
+        when(uploadChunkRepository.findIndexesBySession(anyString())).thenAnswer(invocation -> chunks.stream()
+                .map(UploadChunk::getChunkIndex).sorted().toList());
+
+        storedBlobService = mock(StoredBlobService.class);
+        when(storedBlobService.isUnreferenced(anyString())).thenReturn(true);
+        savedFilesService = mock(SavedFilesService.class);
+
+        uploadSessionService = new UploadSessionService();
+        ReflectionTestUtils.setField(uploadSessionService, "uploadSessionRepository", uploadSessionRepository);
+        ReflectionTestUtils.setField(uploadSessionService, "uploadChunkRepository", uploadChunkRepository);
+        ReflectionTestUtils.setField(uploadSessionService, "userRepository", mock(UserRepository.class));
+        ReflectionTestUtils.setField(uploadSessionService, "storageBackend", this.storage);
+        ReflectionTestUtils.setField(uploadSessionService, "storedBlobService", storedBlobService);
+        ReflectionTestUtils.setField(uploadSessionService, "savedFilesService", savedFilesService);
+        ReflectionTestUtils.setField(uploadSessionService, "storageQuotaService", mock(StorageQuotaService.class));
+        ReflectionTestUtils.setField(uploadSessionService, "defaultChunkSize", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(uploadSessionService, "maxChunkSize", DataSize.ofMegabytes(64));
+        ReflectionTestUtils.setField(uploadSessionService, "ttl", Duration.ofHours(24));
+    }
+
+    @Test
+    void chunkSizeIsRaisedToWhatStorageAccepts() throws IOException {
+        UploadSession small = uploadSessionService.create(7L, "a.bin", "/", "application/octet-stream",
+                20L * MB, 1024L, null);
+        assertThat(small.getChunkSize()).isEqualTo(5L * MB);
+        assertThat(small.chunkCount()).isEqualTo(4);
+        assertThat(small.chunkLength(3)).isEqualTo(5L * MB);
+
+        // 10,000 parts at most
+        UploadSession huge = uploadSessionService.create(7L, "b.bin", "/", "application/octet-stream",
+                200_000L * MB, null, null);
+        assertThat(huge.getChunkSize()).isEqualTo(20L * MB);
+
+        assertThatThrownBy(() -> uploadSessionService.create(7L, "c.bin", "/", "application/octet-stream",
+                1_000_000L * MB, null, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void chunksInAnyOrderCompleteIntoOneHashedFile() throws Exception {
+        byte[] data = random(12 * MB + 100);
+        UploadSession created = uploadSessionService.create(7L, "video.mp4", "/clips/", "video/mp4", data.length,
+                5L * MB, sha256(data));
+        StoredBlob blob = StoredBlob.builder().id(1L).sha256(sha256(data)).storageKey(created.getStorageKey()).build();
+        when(storedBlobService.registerAt(sha256(data), data.length, "video/mp4", created.getStorageKey())).thenReturn(blob);
+        when(savedFilesService.saveFile(eq(7L), any(), eq("video.mp4"), eq(blob), eq("/clips/")))
+                .thenReturn(SavedFiles.builder().id(42L).build());
+
+        put(created, data, 2);
+        put(created, data, 0);
+        assertThat(uploadSessionService.receivedRanges(created)).containsExactly("0-5242879", "10485760-12583011");
+        assertThatThrownBy(() -> uploadSessionService.complete(7L, created.getId()))
+                .isInstanceOf(IllegalStateException.class);
+        verify(uploadSessionRepository).unclaim(created.getId());
+
+        put(created, data, 1);
+        assertThat(uploadSessionService.receivedRanges(created)).containsExactly("0-12583011");
+        Optional<SavedFiles> saved = uploadSessionService.complete(7L, created.getId());
+
+        assertThat(saved).map(SavedFiles::getId).contains(42L);
+        assertThat(root.resolve(created.getStorageKey())).hasBinaryContent(data);
+        verify(uploadSessionRepository).deleteById(created.getId());
+    }
+
+    @Test
+    void chunksMustBeAlignedAndWhole() throws IOException {
+        UploadSession created = uploadSessionService.create(7L, "a.bin", "/", "application/octet-stream",
+                6L * MB, 5L * MB, null);
+
+        assertThatThrownBy(() -> uploadSessionService.putChunk(7L, created.getId(), 100,
+                new ByteArrayInputStream(new byte[100]))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> uploadSessionService.putChunk(7L, created.getId(), 5L * MB,
+                new ByteArrayInputStream(new byte[MB + 1]))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(chunks).isEmpty();
+        assertThat(uploadSessionService.putChunk(7L, "no-such-session", 0, new ByteArrayInputStream(new byte[0])))
+                .isFalse();
+    }
+
+    @Test
+    void contentNotMatchingTheAnnouncedDigestIsDiscarded() throws Exception {
+        byte[] data = random(MB);
+        UploadSession created = uploadSessionService.create(7L, "a.bin", "/", "application/octet-stream",
+                data.length, null, sha256(new byte[]{1}));
+        put(created, data, 0);
+
+        assertThatThrownBy(() -> uploadSessionService.complete(7L, created.getId()))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(root.resolve(created.getStorageKey())).doesNotExist();
+        verify(storedBlobService, never()).registerAt(any(), anyLong(), any(), any());
+        verify(uploadSessionRepository).deleteById(created.getId());
+    }
+
+    @Test
+    void completionWaitsForChunkWritesInProgress() throws Exception {
+        byte[] data = random(6 * MB);
+        UploadSession created = uploadSessionService.create(7L, "a.bin", "/", "application/octet-stream",
+                data.length, 5L * MB, null);
+        put(created, data, 0);
+        put(created, data, 1);
+        when(storedBlobService.registerAt(any(), anyLong(), any(), any())).thenAnswer(invocation ->
+                StoredBlob.builder().id(1L).sha256(invocation.getArgument(0)).storageKey(created.getStorageKey()).build());
+        when(savedFilesService.saveFile(eq(7L), any(), eq("a.bin"), any(), eq("/")))
+                .thenReturn(SavedFiles.builder().id(42L).build());
+
+        // The last chunk is sent again with other bytes, and its write is held up in storage
+        byte[] resent = Arrays.copyOf(data, data.length);
+        Arrays.fill(resent, 5 * MB, resent.length, (byte) 7);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return invocation.callRealMethod();
+        }).when(storage).uploadChunk(anyString(), anyString(), eq(1), anyLong(), any(), anyLong());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> chunk = executor.submit(() -> {
+                put(created, resent, 1);
+                return null;
+            });
+            assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+            Future<Optional<SavedFiles>> completion = executor.submit(() -> uploadSessionService.complete(7L, created.getId()));
+
+            Thread.sleep(200);
+            assertThat(completion).isNotDone();
+            verify(uploadSessionRepository, never()).claim(anyString(), any());
+
+            release.countDown();
+            chunk.get(10, TimeUnit.SECONDS);
+            completion.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        // The blob's digest is that of the bytes the object ended up with
+        assertThat(root.resolve(created.getStorageKey())).hasBinaryContent(resent);
+        verify(storedBlobService).registerAt(sha256(resent), resent.length, "application/octet-stream",
+                created.getStorageKey());
+        // And once claimed, nothing more is taken
+        assertThatThrownBy(() -> put(created, data, 1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void expiredSessionsAreNotFound() throws IOException {
+        UploadSession created = uploadSessionService.create(7L, "a.bin", "/", "application/octet-stream",
+                MB, null, null);
+        created.setExpiresAt(LocalDateTime.now().minusSeconds(1));
+
+        assertThat(uploadSessionService.find(7L, created.getId())).isEmpty();
+    }
+
+    private void put(UploadSession session, byte[] data, int index) throws IOException {
+        int offset = (int) (index * session.getChunkSize());
+        byte[] chunk = Arrays.copyOfRange(data, offset, (int) Math.min(data.length, offset + session.getChunkSize()));
+        assertThat(uploadSessionService.putChunk(7L, session.getId(), offset, new ByteArrayInputStream(chunk))).isTrue();
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static String sha256(byte[] data) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.config.CachingConfig;
+import com.example.cloudvault.demo.entities.AuthenticatedUser;
+import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.CacheManager;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringJUnitConfig(classes = {CachingConfig.class, UserService.class, UserDetailServiceImpl.class})
+class UserCachingTest {
+
+    @MockitoBean
+    private UserRepository userRepository;
+
+    @MockitoBean
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserDetailServiceImpl userDetailService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private UserEntity user;
+
+    @BeforeEach
+    void setUp() {
+        user = new UserEntity(7L, "alice", "hash", "alice@example.com", null, null);
+        when(userRepository.findByEmail("alice@example.com")).thenReturn(Optional.of(user));
+        // The context, and so the caches, are shared between tests
+        cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+    }
+
+    @Test
+    void principalIsLoadedOnce() {
+        AuthenticatedUser first = userDetailService.loadAuthenticatedUser("alice@example.com");
+        AuthenticatedUser second = userDetailService.loadAuthenticatedUser("alice@example.com");
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getUserId()).isEqualTo(7L);
+        assertThat(second.getPassword()).isNull();
+        verify(userRepository, times(1)).findByEmail("alice@example.com");
+    }
+
+    @Test
+    void savingAUserEvictsCachedEntries() {
+        userDetailService.loadAuthenticatedUser("alice@example.com");
+        userService.findByEmail("alice@example.com");
+
+        userService.saveUser(user);
+        userDetailService.loadAuthenticatedUser("alice@example.com");
+
+        verify(userRepository, times(3)).findByEmail("alice@example.com");
+    }
+
+    @Test
+    void unknownUsersAreNotCached() {
+        assertThatThrownBy(() -> userDetailService.loadAuthenticatedUser("bob@example.com"))
+                .isInstanceOf(UsernameNotFoundException.class);
+        assertThat(userService.findByEmail("bob@example.com")).isNull();
+        assertThat(userService.findByEmail("bob@example.com")).isNull();
+
+        verify(userRepository, times(3)).findByEmail("bob@example.com");
+    }
+}
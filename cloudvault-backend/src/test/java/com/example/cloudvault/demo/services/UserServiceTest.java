@@ -0,0 +1,117 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.UserCredentials;
+import com.example.cloudvault.demo.entities.UserEntity;
+import com.example.cloudvault.demo.entities.UserSummary;
+import com.example.cloudvault.demo.entities.UsersPage;
+import com.example.cloudvault.demo.repositories.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+
+    private UserRepository userRepository;
+    private UserService userService;
+    private PasswordHasher passwordHasher;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        passwordHasher = new PasswordHasher();
+        ReflectionTestUtils.setField(passwordHasher, "passwordEncoder", new BCryptPasswordEncoder(5));
+        ReflectionTestUtils.setField(passwordHasher, "threads", 2);
+        ReflectionTestUtils.setField(passwordHasher, "queueCapacity", 4);
+        passwordHasher.init();
+        userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userService, "passwordHasher", passwordHasher);
+        ReflectionTestUtils.setField(userService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(userService, "maxPageSize", 10);
+        userService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHasher.shutdown();
+    }
+
+    @Test
+    void loginLooksTheUserUpOnceAndRejectsWrongPasswordsAndUnknownEmails() {
+        UserEntity user = user("a@example.com", new BCryptPasswordEncoder(5).encode("secret"));
+        when(userRepository.findByEmail("a@example.com")).thenReturn(Optional.of(user));
+        when(userRepository.findByEmail("nobody@example.com")).thenReturn(Optional.empty());
+
+        assertThat(userService.login(new UserCredentials("a@example.com", "secret"))).isSameAs(user);
+        assertThat(userService.login(new UserCredentials("a@example.com", "wrong"))).isNull();
+        assertThat(userService.login(new UserCredentials("nobody@example.com", "secret"))).isNull();
+
+        verify(userRepository, times(2)).findByEmail("a@example.com");
+        verify(userRepository, never()).updatePassword(anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    void loginRehashesPasswordsMadeWithALowerWorkFactor() {
+        String weak = new BCryptPasswordEncoder(4).encode("secret");
+        UserEntity user = user("a@example.com", weak);
+        when(userRepository.findByEmail("a@example.com")).thenReturn(Optional.of(user));
+        when(userRepository.updatePassword(eq(1L), eq(weak), anyString())).thenReturn(1);
+
+        assertThat(userService.login(new UserCredentials("a@example.com", "secret"))).isSameAs(user);
+
+        assertThat(user.getPassword()).startsWith("$2a$05$");
+        assertThat(new BCryptPasswordEncoder(5).matches("secret", user.getPassword())).isTrue();
+        verify(userRepository).updatePassword(1L, weak, user.getPassword());
+    }
+
+    @Test
+    void blankSearchPagesThroughEveryoneButTheCaller() {
+        when(userRepository.findPageExcluding(7L, 0L, Limit.of(3))).thenReturn(List.of(user(1), user(2), user(3)));
+
+        UsersPage page = userService.searchUsers(7L, "  ", null, null);
+
+        assertThat(page.users()).extracting(UserSummary::userId).containsExactly(1L, 2L);
+        assertThat(page.nextCursor()).isEqualTo(2L);
+        verify(userRepository, never()).searchPageExcluding(anyLong(), anyString(), anyLong(), any());
+    }
+
+    @Test
+    void searchIsLowerCasedAndEscaped() {
+        when(userRepository.searchPageExcluding(7L, "%a!_b!%c!!%", 5L, Limit.of(3))).thenReturn(List.of(user(9)));
+
+        UsersPage page = userService.searchUsers(7L, " A_b%C! ", 5L, null);
+
+        assertThat(page.users()).extracting(UserSummary::userId).containsExactly(9L);
+        assertThat(page.nextCursor()).isNull();
+    }
+
+    private static UserEntity user(String email, String hash) {
+        UserEntity user = new UserEntity();
+        user.setUserId(1L);
+        user.setEmail(email);
+        user.setUsername("a");
+        user.setPassword(hash);
+        return user;
+    }
+
+    private static UserSummary user(long id) {
+        return new UserSummary(id, "user" + id, "user" + id + "@example.com");
+    }
+}
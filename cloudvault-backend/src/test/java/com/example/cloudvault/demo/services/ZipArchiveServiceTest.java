@@ -0,0 +1,148 @@
+package com.example.cloudvault.demo.services;
+
+import com.example.cloudvault.demo.entities.SavedFiles;
+import com.example.cloudvault.demo.entities.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ZipArchiveServiceTest {
+
+    @TempDir
+    Path root;
+
+    private LocalStorageBackend storage;
+    private ZipArchiveService zipArchiveService;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storage, "root", root);
+        ReflectionTestUtils.setField(storage, "publicUrl", "http://localhost:8080/api/s3/download/");
+        storage.init();
+
+        // Disabled, so every read goes to the backend
+        ObjectCache objectCache = new ObjectCache();
+        ReflectionTestUtils.setField(objectCache, "storageBackend", storage);
+        ReflectionTestUtils.setField(objectCache, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.invokeMethod(objectCache, "init");
+
+        zipArchiveService = new ZipArchiveService();
+        ReflectionTestUtils.setField(zipArchiveService, "objectCache", objectCache);
+        ReflectionTestUtils.setField(zipArchiveService, "prefetchEntries", 2);
+        ReflectionTestUtils.setField(zipArchiveService, "prefetchSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(zipArchiveService, "storedTypes", new String[]{"image/jpeg", "video/*"});
+        ReflectionTestUtils.invokeMethod(zipArchiveService, "init");
+    }
+
+    @Test
+    void filesAreArchivedWholeWithStoredEntriesForCompressedTypes() throws IOException {
+        byte[] text = "hello zip\n".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+        byte[] photo = random(200_000, 1);
+        byte[] unprocessedPhoto = random(5_000, 2);
+        byte[] video = random(1_000_000, 3);
+        List<SavedFiles> files = List.of(
+                file("notes.txt", text, "text/plain", false),
+                file("photo.jpg", photo, "image/jpeg", true),
+                file("photo.jpg", unprocessedPhoto, "image/jpeg", false),
+                file("clip.mp4", video, "video/mp4", true),
+                file("../../empty.txt", new byte[0], "text/plain", true));
+
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        unzip(write(files), entries, contents);
+
+        assertThat(entries.keySet()).containsExactly("notes.txt", "photo.jpg", "photo (2).jpg", "clip.mp4", "empty.txt");
+        assertThat(contents.get("notes.txt")).isEqualTo(text);
+        assertThat(contents.get("photo.jpg")).isEqualTo(photo);
+        assertThat(contents.get("photo (2).jpg")).isEqualTo(unprocessedPhoto);
+        assertThat(contents.get("clip.mp4")).isEqualTo(video);
+        assertThat(contents.get("empty.txt")).isEmpty();
+        assertThat(entries.get("notes.txt").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+        assertThat(entries.get("photo.jpg").getMethod()).isEqualTo(ZipEntry.STORED);
+        // No CRC yet, so deflated without compression instead
+        assertThat(entries.get("photo (2).jpg").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+        assertThat(entries.get("clip.mp4").getMethod()).isEqualTo(ZipEntry.STORED);
+    }
+
+    @Test
+    void compressedObjectsAreDecodedIntoTheArchive() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            csv.append(i).append(",item-").append(i % 97).append(',').append(i * 31 % 1000).append('\n');
+        }
+        byte[] data = csv.toString().getBytes(StandardCharsets.UTF_8);
+        SavedFiles file = file("items.csv", data, "text/csv", true);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = ContentCodec.GZIP.encode(compressed, 0)) {
+            out.write(data);
+        }
+        byte[] stored = compressed.toByteArray();
+        storage.uploadFile(() -> new ByteArrayInputStream(stored), stored.length, file.getBlob().getStorageKey(),
+                "text/csv", "gzip");
+
+        Map<String, byte[]> contents = new LinkedHashMap<>();
+        unzip(write(List.of(file)), new LinkedHashMap<>(), contents);
+
+        assertThat(contents.get("items.csv")).isEqualTo(data);
+    }
+
+    private byte[] write(List<SavedFiles> files) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zipArchiveService.write(files, out);
+        return out.toByteArray();
+    }
+
+    private SavedFiles file(String name, byte[] content, String contentType, boolean processed) throws IOException {
+        long id = nextId++;
+        String key = "blob-" + id;
+        storage.uploadFile(new MockMultipartFile("file", content), key);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        StoredBlob blob = StoredBlob.builder().id(id).sha256(key).storageKey(key).size((long) content.length)
+                .contentType(contentType).refCount(1L).created_at(LocalDateTime.of(2025, 11, 20, 9, 30))
+                .crc32(processed ? crc.getValue() : null).build();
+        return SavedFiles.builder().id(id).fileName(name).fileLink(key).blob(blob).build();
+    }
+
+    private static void unzip(byte[] archive, Map<String, ZipEntry> entries, Map<String, byte[]> contents) throws IOException {
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            List<String> names = new ArrayList<>();
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                names.add(entry.getName());
+                entries.put(entry.getName(), entry);
+                contents.put(entry.getName(), in.readAllBytes());
+            }
+            assertThat(names).doesNotHaveDuplicates();
+        }
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
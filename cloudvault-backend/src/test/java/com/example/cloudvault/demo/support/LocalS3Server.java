@@ -0,0 +1,367 @@
+package com.example.cloudvault.demo.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Minimal in-process S3 stand-in for tests: path-style PUT/GET (with Range)/HEAD/DELETE and
+ * multipart upload. Every request pays a fixed latency and each connection is throttled to a
+ * fixed bandwidth, which is what makes parallel transfers measurably faster than sequential ones.
+ */
+public class LocalS3Server implements AutoCloseable {
+
+    private static final int CHUNK = 64 * 1024;
+
+    private final long latencyMillis;
+    private final long bytesPerSecondPerConnection;
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Map<String, String> uploadEncodings = new ConcurrentHashMap<>();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger peakActiveRequests = new AtomicInteger();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private volatile boolean discardContent;
+
+    public LocalS3Server(long latencyMillis, long bytesPerSecondPerConnection) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.bytesPerSecondPerConnection = bytesPerSecondPerConnection;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    public byte[] object(String bucket, String key) {
+        StoredObject object = objects.get(bucket + "/" + key);
+        return object == null ? null : object.data();
+    }
+
+    public Set<String> keys() {
+        return objects.keySet();
+    }
+
+    public void putObject(String bucket, String key, byte[] data) {
+        objects.put(bucket + "/" + key, StoredObject.of(data, "\"" + md5(data) + "\"", null));
+    }
+
+    public String contentEncoding(String bucket, String key) {
+        StoredObject object = objects.get(bucket + "/" + key);
+        return object == null ? null : object.contentEncoding();
+    }
+
+    /**
+     * Accepts uploads without keeping their bytes, for tests that push more data than the heap holds.
+     * Objects uploaded from then on read back empty.
+     */
+    public void discardContent() {
+        discardContent = true;
+    }
+
+    public int peakActiveRequests() {
+        return peakActiveRequests.get();
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    public void resetCounters() {
+        peakActiveRequests.set(0);
+        requestCount.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        peakActiveRequests.accumulateAndGet(activeRequests.incrementAndGet(), Math::max);
+        try (exchange) {
+            sleep(latencyMillis);
+            String path = exchange.getRequestURI().getRawPath().substring(1);
+            String objectKey = URLDecoder.decode(path, StandardCharsets.UTF_8);
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if (method.equals("POST") && query.containsKey("uploads")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new ConcurrentHashMap<>());
+                String contentEncoding = contentEncoding(exchange);
+                if (contentEncoding != null) {
+                    uploadEncodings.put(uploadId, contentEncoding);
+                }
+                xml(exchange, 200, "<InitiateMultipartUploadResult><Key>" + objectKey + "</Key><UploadId>"
+                        + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+            } else if (method.equals("PUT") && query.containsKey("uploadId")) {
+                Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+                if (parts == null) {
+                    error(exchange, 404, "NoSuchUpload");
+                    return;
+                }
+                byte[] data = body(exchange);
+                parts.put(Integer.parseInt(query.get("partNumber")), data);
+                exchange.getResponseHeaders().set("ETag", "\"" + md5(data) + "\"");
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                exchange.getRequestBody().readAllBytes();
+                Map<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+                String contentEncoding = uploadEncodings.remove(query.get("uploadId"));
+                if (parts == null) {
+                    error(exchange, 404, "NoSuchUpload");
+                    return;
+                }
+                ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+                for (byte[] part : new TreeMap<>(parts).values()) {
+                    assembled.write(part);
+                }
+                String eTag = "\"" + md5(assembled.toByteArray()) + "-" + parts.size() + "\"";
+                objects.put(objectKey, StoredObject.of(assembled.toByteArray(), eTag, contentEncoding));
+                xml(exchange, 200, "<CompleteMultipartUploadResult><Key>" + objectKey + "</Key><ETag>"
+                        + eTag.replace("\"", "&quot;") + "</ETag></CompleteMultipartUploadResult>");
+            } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+                uploads.remove(query.get("uploadId"));
+                uploadEncodings.remove(query.get("uploadId"));
+                exchange.sendResponseHeaders(204, -1);
+            } else if (method.equals("PUT")) {
+                byte[] data = body(exchange);
+                StoredObject object = StoredObject.of(data, "\"" + md5(data) + "\"", contentEncoding(exchange));
+                objects.put(objectKey, object);
+                exchange.getResponseHeaders().set("ETag", object.eTag());
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("HEAD")) {
+                StoredObject object = objects.get(objectKey);
+                if (object == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                headers(exchange, object);
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.data().length));
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("GET")) {
+                get(exchange, objectKey);
+            } else if (method.equals("DELETE")) {
+                objects.remove(objectKey);
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                error(exchange, 405, "MethodNotAllowed");
+            }
+        } finally {
+            activeRequests.decrementAndGet();
+        }
+    }
+
+    private void get(HttpExchange exchange, String objectKey) throws IOException {
+        StoredObject object = objects.get(objectKey);
+        if (object == null) {
+            error(exchange, 404, "NoSuchKey");
+            return;
+        }
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch != null && !ifMatch.equals(object.eTag())) {
+            error(exchange, 412, "PreconditionFailed");
+            return;
+        }
+        byte[] data = object.data();
+        int start = 0;
+        int end = data.length - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        headers(exchange, object);
+        if (range != null) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            if (bounds[0].isEmpty()) {
+                start = Math.max(0, data.length - Integer.parseInt(bounds[1]));
+            } else {
+                start = Integer.parseInt(bounds[0]);
+                if (!bounds[1].isEmpty()) {
+                    end = Math.min(end, Integer.parseInt(bounds[1]));
+                }
+            }
+            if (start >= data.length) {
+                error(exchange, 416, "InvalidRange");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+        }
+        int length = end - start + 1;
+        exchange.sendResponseHeaders(range != null ? 206 : 200, length == 0 ? -1 : length);
+        writeThrottled(exchange.getResponseBody(), data, start, length);
+    }
+
+    private void headers(HttpExchange exchange, StoredObject object) {
+        exchange.getResponseHeaders().set("ETag", object.eTag());
+        exchange.getResponseHeaders().set("Last-Modified", object.lastModified());
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        if (object.contentEncoding() != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", object.contentEncoding());
+        }
+    }
+
+    // The object's own encoding, without the aws-chunked framing of the request body
+    private static String contentEncoding(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if (header == null) {
+            return null;
+        }
+        String encoding = Arrays.stream(header.split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty() && !value.equals("aws-chunked"))
+                .collect(Collectors.joining(","));
+        return encoding.isEmpty() ? null : encoding;
+    }
+
+    // Over plain HTTP the SDK signs streaming bodies chunk by chunk: "<hex size>;chunk-signature=...\r\n<data>\r\n"
+    private byte[] body(HttpExchange exchange) throws IOException {
+        if (discardContent) {
+            drainThrottled(exchange.getRequestBody());
+            return new byte[0];
+        }
+        byte[] raw = readThrottled(exchange.getRequestBody());
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        if (encoding == null || !encoding.contains("aws-chunked")) {
+            return raw;
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        int position = 0;
+        while (position < raw.length) {
+            int lineEnd = position;
+            while (raw[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            String header = new String(raw, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";")[0].trim(), 16);
+            if (size == 0) {
+                break;
+            }
+            decoded.write(raw, lineEnd + 2, size);
+            position = lineEnd + 2 + size + 2;
+        }
+        return decoded.toByteArray();
+    }
+
+    private byte[] readThrottled(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[CHUNK];
+        long started = System.nanoTime();
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+            total += n;
+            throttle(started, total);
+        }
+        return out.toByteArray();
+    }
+
+    private void drainThrottled(InputStream in) throws IOException {
+        byte[] buffer = new byte[CHUNK];
+        long started = System.nanoTime();
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            total += n;
+            throttle(started, total);
+        }
+    }
+
+    private void writeThrottled(OutputStream out, byte[] data, int offset, int length) throws IOException {
+        long started = System.nanoTime();
+        for (int written = 0; written < length; ) {
+            int n = Math.min(CHUNK, length - written);
+            out.write(data, offset + written, n);
+            written += n;
+            throttle(started, written);
+        }
+    }
+
+    private void throttle(long startedNanos, long bytes) {
+        long expectedMillis = bytes * 1000 / bytesPerSecondPerConnection;
+        long elapsedMillis = (System.nanoTime() - startedNanos) / 1_000_000;
+        sleep(expectedMillis - elapsedMillis);
+    }
+
+    private static void xml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void error(HttpExchange exchange, int status, String code) throws IOException {
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>");
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static String md5(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record StoredObject(byte[] data, String eTag, String lastModified, String contentEncoding) {
+        static StoredObject of(byte[] data, String eTag, String contentEncoding) {
+            return new StoredObject(data, eTag,
+                    DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)), contentEncoding);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.cloudvault.demo.utils;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtUtilTest {
+
+    @Test
+    void verifyReturnsSubjectAndExpiryFromOneParse() {
+        JwtUtil jwtUtil = jwtUtil(0);
+        String token = jwtUtil.generateToken("someone@example.com");
+
+        JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+
+        assertThat(verified.subject()).isEqualTo("someone@example.com");
+        assertThat(verified.expiration()).isInTheFuture();
+        assertThat(verified.claims().getIssuedAt()).isNotNull();
+    }
+
+    @Test
+    void tamperedAndExpiredTokensAreRejected() {
+        JwtUtil jwtUtil = jwtUtil(100);
+        String token = jwtUtil.generateToken("someone@example.com");
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThatThrownBy(() -> jwtUtil.verify(tampered)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> jwtUtil.verify(token(jwtUtil, -60_000))).isInstanceOf(ExpiredJwtException.class);
+        assertThatThrownBy(() -> jwtUtil.verify(Jwts.builder().subject("x").signWith(key(jwtUtil)).compact()))
+                .isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void cachedTokenStopsVerifyingOnceExpired() throws InterruptedException {
+        JwtUtil jwtUtil = jwtUtil(100);
+        String token = token(jwtUtil, 2_000);
+
+        JwtUtil.VerifiedToken first = jwtUtil.verify(token);
+        assertThat(jwtUtil.verify(token)).isSameAs(first);
+
+        Thread.sleep(first.expiration().getTime() - System.currentTimeMillis() + 100);
+        assertThatThrownBy(() -> jwtUtil.verify(token)).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    private static String token(JwtUtil jwtUtil, long expiresInMillis) {
+        return Jwts.builder()
+                .subject("someone@example.com")
+                .expiration(new Date(System.currentTimeMillis() + expiresInMillis))
+                .signWith(key(jwtUtil))
+                .compact();
+    }
+
+    private static SecretKey key(JwtUtil jwtUtil) {
+        return (SecretKey) ReflectionTestUtils.getField(jwtUtil, "signingKey");
+    }
+
+    private static JwtUtil jwtUtil(long cacheMaxSize) {
+        JwtUtil jwtUtil = new JwtUtil();
+        ReflectionTestUtils.setField(jwtUtil, "cacheMaxSize", cacheMaxSize);
+        ReflectionTestUtils.invokeMethod(jwtUtil, "init");
+        return jwtUtil;
+    }
+}
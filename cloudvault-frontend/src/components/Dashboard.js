@@ -79,27 +79,37 @@ const Dashboard = () => {
     }
   };
 
-  const handleDownload = async (file) => {
+  // Storage key of a file, taken from its link
+  const fileKey = (file) => {
+    // Extract key from S3 URL
+    // URL format: https://bucket.s3.region.amazonaws.com/key or https://s3.region.amazonaws.com/bucket/key
+    let key = file.fileLink;
     try {
-      setError('');
-      // Extract key from S3 URL
-      // URL format: https://bucket.s3.region.amazonaws.com/key or https://s3.region.amazonaws.com/bucket/key
-      let key = file.fileLink;
-      try {
-        const url = new URL(file.fileLink);
-        // Get the pathname and remove leading slash
+      const url = new URL(file.fileLink);
+      // Get the pathname and remove leading slash
+      key = url.pathname.substring(1);
+      // Local storage links point at the download endpoint itself
+      if (key.startsWith('api/s3/download/')) {
+        key = decodeURIComponent(key.substring('api/s3/download/'.length));
+      }
+      // If pathname is empty, try to get from the hostname pattern
+      if (!key && url.hostname.includes('.s3.')) {
+        const parts = url.hostname.split('.');
+        // For bucket.s3.region format, the key is in the pathname
         key = url.pathname.substring(1);
-        // If pathname is empty, try to get from the hostname pattern
-        if (!key && url.hostname.includes('.s3.')) {
-          const parts = url.hostname.split('.');
-          // For bucket.s3.region format, the key is in the pathname
-          key = url.pathname.substring(1);
-        }
-      } catch (e) {
-        // If URL parsing fails, try to extract from string
-        const urlParts = file.fileLink.split('/');
-        key = urlParts[urlParts.length - 1];
       }
+    } catch (e) {
+      // If URL parsing fails, try to extract from string
+      const urlParts = file.fileLink.split('/');
+      key = urlParts[urlParts.length - 1];
+    }
+    return key;
+  };
+
+  const handleDownload = async (file) => {
+    try {
+      setError('');
+      const key = fileKey(file);
       
       if (!key) {
         throw new Error('Could not extract file key from URL');
@@ -108,7 +118,7 @@ const Dashboard = () => {
       const blob = await fileAPI.downloadFile(key);
       
       // Extract filename for download
-      const filename = key.split('/').pop() || 'download';
+      const filename = file.fileName || key.split('/').pop() || 'download';
       
       // Create download link
       const url = window.URL.createObjectURL(blob);
@@ -177,6 +187,9 @@ const Dashboard = () => {
     return url.split('/').pop();
   };
 
+  // Objects are stored under their content hash, so the name comes from the file record
+  const displayName = (file) => file.fileName || displayName(file);
+
   const handleCopyLink = async (fileLink) => {
     try {
       await navigator.clipboard.writeText(fileLink);
@@ -258,13 +271,20 @@ const Dashboard = () => {
                 {files.map((file) => (
                   <div key={file.id} className="file-card">
                     <div className="file-preview" onClick={() => handleView(file)}>
-                      {getFileType(file.fileLink) === 'image' ? (
+                      {getFileType(displayName(file)) === 'image' ? (
                         <>
                           <img
-                            src={file.fileLink}
-                            alt={getFileName(file.fileLink)}
+                            src={fileAPI.derivativeUrl(fileKey(file), 'thumbnail')}
+                            alt={displayName(file)}
                             className="file-preview-image"
+                            loading="lazy"
                             onError={(e) => {
+                              // No thumbnail for this format, the original may still display
+                              if (!e.target.dataset.original) {
+                                e.target.dataset.original = 'true';
+                                e.target.src = file.fileLink;
+                                return;
+                              }
                               e.target.style.display = 'none';
                               const iconDiv = e.target.parentElement.querySelector('.file-icon');
                               if (iconDiv) iconDiv.style.display = 'flex';
@@ -276,14 +296,14 @@ const Dashboard = () => {
                         </>
                       ) : (
                         <div className="file-icon">
-                          {getFileType(file.fileLink) === 'video' ? '🎥' : 
-                           getFileType(file.fileLink) === 'pdf' ? '📄' : '📁'}
+                          {getFileType(displayName(file)) === 'video' ? '🎥' : 
+                           getFileType(displayName(file)) === 'pdf' ? '📄' : '📁'}
                         </div>
                       )}
                     </div>
                     <div className="file-info">
-                      <h3 className="file-name" title={getFileName(file.fileLink)}>
-                        {getFileName(file.fileLink)}
+                      <h3 className="file-name" title={displayName(file)}>
+                        {displayName(file)}
                       </h3>
                     </div>
                     <div className="file-actions">
@@ -362,22 +382,28 @@ const Dashboard = () => {
               ✕
             </button>
             <div className="viewer-body">
-              {getFileType(viewingFile.fileLink) === 'image' ? (
+              {getFileType(displayName(viewingFile)) === 'image' ? (
                 <img
-                  src={viewingFile.fileLink}
-                  alt={getFileName(viewingFile.fileLink)}
+                  src={fileAPI.derivativeUrl(fileKey(viewingFile), 'preview')}
+                  alt={displayName(viewingFile)}
                   className="viewer-image"
+                  onError={(e) => {
+                    if (!e.target.dataset.original) {
+                      e.target.dataset.original = 'true';
+                      e.target.src = viewingFile.fileLink;
+                    }
+                  }}
                 />
-              ) : getFileType(viewingFile.fileLink) === 'video' ? (
+              ) : getFileType(displayName(viewingFile)) === 'video' ? (
                 <video
                   src={viewingFile.fileLink}
                   controls
                   className="viewer-video"
                 />
-              ) : getFileType(viewingFile.fileLink) === 'pdf' ? (
+              ) : getFileType(displayName(viewingFile)) === 'pdf' ? (
                 <iframe
                   src={viewingFile.fileLink}
-                  title={getFileName(viewingFile.fileLink)}
+                  title={displayName(viewingFile)}
                   className="viewer-iframe"
                 />
               ) : (
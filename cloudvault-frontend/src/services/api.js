@@ -68,8 +68,15 @@ export const authAPI = {
 export const fileAPI = {
   getMyFiles: async () => {
     try {
-      const response = await api.get('/api/files/my');
-      return response.data;
+      // The listing is paged; follow nextCursor until the last page
+      const files = [];
+      let after;
+      do {
+        const response = await api.get('/api/files/my', { params: { after, limit: 500 } });
+        files.push(...response.data.files);
+        after = response.data.nextCursor;
+      } while (after != null);
+      return { status: true, files };
     } catch (error) {
       throw new Error(
         error.response?.data?.message || 'Failed to fetch files. Please try again.'
@@ -114,6 +121,9 @@ export const fileAPI = {
     }
   },
 
+  // Downscaled image, variant is 'thumbnail' or 'preview'; needs no token, like the download link
+  derivativeUrl: (key, variant) => `${API_BASE_URL}/api/s3/${variant}/${encodeURIComponent(key)}`,
+
   deleteFile: async (fileId) => {
     try {
       const response = await api.delete(`/api/s3/delete/${fileId}`);